@@ -9,6 +9,7 @@ import fi.dy.masa.litematica.selection.CornerSelectionMode;
 import fi.dy.masa.litematica.util.BlockInfoAlignment;
 import fi.dy.masa.litematica.util.InventoryUtils;
 import fi.dy.masa.litematica.util.ReplaceBehavior;
+import fi.dy.masa.litematica.util.SchematicLodMode;
 import fi.dy.masa.malilib.config.IConfigHandler;
 import fi.dy.masa.malilib.config.options.ConfigBoolean;
 import fi.dy.masa.malilib.config.options.ConfigColor;
@@ -42,12 +43,21 @@ public class Configs implements IConfigHandler
         public static final ConfigBoolean       PICK_BLOCK_IGNORE_NBT   = new ConfigBoolean(    "pickBlockIgnoreNBT", true, "Ignores the NBT data on the expected vs. found items for pick block.\nAllows the pick block to work for example with renamed items.");
         public static final ConfigString        PICK_BLOCKABLE_SLOTS    = new ConfigString(     "pickBlockableSlots", "1,2,3,4,5", "The hotbar slots that are allowed to be\nused for the schematic pick block");
         public static final ConfigBoolean       PLACEMENT_RESTRICTION   = new ConfigBoolean(    "placementRestriction", false, "When enabled, the use key can only be used\nwhen holding the correct item for the targeted position,\nand the targeted position must have a missing block in the schematic", "Placement Restriction");
+        public static final ConfigBoolean       RENDER_COMPILE_WHEN_IDLE = new ConfigBoolean(   "renderMainThreadCompileWhenIdle", false, "If enabled, then the main thread only compiles schematic chunks\nwhen there are no pending chunk uploads and the frame\nstill has time left. With worker threads, this also lets\nthe main thread help the workers during its idle time.\nWithout worker threads, this keeps the chunk compiling\nfrom eating into the frame time.");
         public static final ConfigBoolean       RENDER_MATERIALS_IN_GUI = new ConfigBoolean(    "renderMaterialListInGuis", true, "Whether or not the material list should\nbe rendered inside GUIs");
+        public static final ConfigInteger       RENDER_MESH_CACHE_SIZE  = new ConfigInteger(    "renderMeshCacheSize", 64, 0, 4096, "The maximum memory in MB used for caching the compiled\nschematic sub-chunk meshes. The cached meshes get re-used\nwhen a sub-chunk with identical contents gets rebuilt, for example\nafter changing the render distance, reloading the renderers\nor toggling the rendering of a placement. 0 disables the cache.\nChanges take effect when the renderers get reloaded (F3 + A).");
+        public static final ConfigInteger       RENDER_THREAD_COUNT     = new ConfigInteger(    "renderThreadCount", -1, -1, 64, "The number of worker threads used to compile the\nschematic render chunks. If -1, then the count is chosen\nautomatically from the CPU core count and the available memory.\nIf 0, then the chunks are compiled on the main thread.\nChanges take effect when the renderers get reloaded (F3 + A).");
         public static final ConfigBoolean       RENDER_THREAD_NO_TIMEOUT = new ConfigBoolean(   "renderThreadNoTimeout", true, "Removes the timeout from the rendering worker threads.\nIf you get very stuttery rendering when moving around\nor dealing with large schematics, try disabling this. It will however make\nthe schematic rendering a lot slower in some cases.");
+        public static final ConfigInteger       RENDER_THREAD_PRIORITY  = new ConfigInteger(    "renderThreadPriority", 5, 1, 10, "The thread priority of the schematic render worker threads,\nfrom 1 (lowest) to 10 (highest). The default is 5 (normal).\nChanges take effect when the renderers get reloaded (F3 + A).");
         public static final ConfigOptionList    SELECTION_CORNERS_MODE  = new ConfigOptionList( "selectionCornersMode", CornerSelectionMode.CORNERS, "The Area Selection corners mode to use (Corners, or Expand)");
+        public static final ConfigInteger       SCHEMATIC_CHUNK_SWAP_LIMIT = new ConfigInteger( "schematicChunkSwapLimit", 8, 1, 1024, "The maximum number of populated schematic world chunks\nthat are swapped in per game tick, when using\nthe threaded population (schematicChunkThreads > 0)");
+        public static final ConfigInteger       SCHEMATIC_CHUNK_THREADS = new ConfigInteger(    "schematicChunkThreads", 0, 0, 16, "The number of worker threads used to populate the\nschematic world chunks from the placements.\nIf 0, then the chunks are populated on the main thread.");
         public static final ConfigBoolean       SIGN_TEXT_PASTE         = new ConfigBoolean(    "signTextPaste", true, "Automatically set the text in the sign GUIs from the schematic");
+        public static final ConfigInteger       TASK_MAX_TICK_TIME      = new ConfigInteger(    "taskMaxTickTime", 45, 2, 1000, "The maximum time in milliseconds per game tick that\nthe schematic world population and the tasks\n(saving, counting, filling, verification etc.) can use in total");
+        public static final ConfigInteger       TASK_TARGET_FPS         = new ConfigInteger(    "taskTargetFps", 30, 5, 1000, "The target frame rate while the schematic world population\nand the tasks are running. The per-tick time budget is reduced\nwhenever the tasks make a frame take longer than this target allows.");
         public static final ConfigString        TOOL_ITEM               = new ConfigString(     "toolItem", "minecraft:stick", "The item to use as the \"tool\" for selections etc.");
         public static final ConfigBoolean       TOOL_ITEM_ENABLED       = new ConfigBoolean(    "toolItemEnabled", true, "If true, then the \"tool\" item can be used to control selections etc.", "Tool Item Enabled");
+        public static final ConfigInteger       VERIFIER_THREADS        = new ConfigInteger(    "verifierThreads", 0, 0, 16, "The number of worker threads used by the Schematic Verifier.\nIf above 0, then snapshots of the chunks are captured on the\nmain thread, and they are compared on the worker threads.\nIf 0, then the chunks are verified on the main thread.");
 
         public static final ConfigInteger       PLACE_DISTANCE          = new ConfigInteger(    "schem_placeDistance", 5, "Ported from Schematica, used in the printer. :)");
         public static final ConfigInteger       TIMEOUT                 = new ConfigInteger(    "schem_timeout", 10, "Ported from Schematica, used in the printer. :)");
@@ -71,6 +81,7 @@ public class Configs implements IConfigHandler
                 PICK_BLOCK_ENABLED,
                 PICK_BLOCK_IGNORE_NBT,
                 PLACEMENT_RESTRICTION,
+                RENDER_COMPILE_WHEN_IDLE,
                 RENDER_MATERIALS_IN_GUI,
                 RENDER_THREAD_NO_TIMEOUT,
                 SIGN_TEXT_PASTE,
@@ -83,7 +94,15 @@ public class Configs implements IConfigHandler
                 PASTE_COMMAND_LIMIT,
                 PASTE_COMMAND_SETBLOCK,
                 PICK_BLOCKABLE_SLOTS,
+                RENDER_MESH_CACHE_SIZE,
+                RENDER_THREAD_COUNT,
+                RENDER_THREAD_PRIORITY,
+                SCHEMATIC_CHUNK_SWAP_LIMIT,
+                SCHEMATIC_CHUNK_THREADS,
+                TASK_MAX_TICK_TIME,
+                TASK_TARGET_FPS,
                 TOOL_ITEM,
+                VERIFIER_THREADS,
 
                 PLACE_DISTANCE,
                 TIMEOUT,
@@ -104,6 +123,7 @@ public class Configs implements IConfigHandler
         public static final ConfigBoolean       ENABLE_SCHEMATIC_RENDERING          = new ConfigBoolean("enableSchematicRendering", true, "Enable rendering the schematic and overlay", "Schematic Rendering");
         public static final ConfigDouble        GHOST_BLOCK_ALPHA                   = new ConfigDouble( "ghostBlockAlpha", 0.5, 0, 1, "The alpha value of the ghost blocks,\nwhen rendering them as translucent");
         public static final ConfigBoolean       IGNORE_FLUIDS_AS_EXTRA              = new ConfigBoolean("ignoreFluidsAsExtra", false, "If enabled, then any fluid blocks are ignored\nas \"extra blocks\" ie. where the schematic has air");
+        public static final ConfigBoolean       OVERLAY_GREEDY_MESHING              = new ConfigBoolean("overlayGreedyMeshing", false, "If enabled, then the schematic overlay sides and outlines\nof the same type are merged into larger quads and lines\nwithin each sub-chunk. This greatly reduces the amount\nof overlay geometry on large uniform areas.\nThe model-based overlays of missing blocks are not merged.");
         public static final ConfigBoolean       OVERLAY_REDUCED_INNER_SIDES         = new ConfigBoolean("overlayReducedInnerSides", false, "If enabled, then the adjacent/touching inner sides\nfor the block overlays are removed/not rendered");
         public static final ConfigDouble        PLACEMENT_BOX_SIDE_ALPHA            = new ConfigDouble( "placementBoxSideAlpha", 0.2, 0, 1, "The alpha value of the sub-region boxes' side");
         public static final ConfigBoolean       RENDER_AREA_SELECTION_BOX_SIDES     = new ConfigBoolean("renderAreaSelectionBoxSides", true, "If enabled, then the area selection boxes will\nhave their side quads rendered");
@@ -115,6 +135,8 @@ public class Configs implements IConfigHandler
         public static final ConfigBoolean       RENDER_PLACEMENT_ENCLOSING_BOX      = new ConfigBoolean("renderPlacementEnclosingBox", true, "If enabled, then an enclosing box is rendered around\nall the sub-regions in a schematic (placement)");
         public static final ConfigBoolean       RENDER_PLACEMENT_ENCLOSING_BOX_SIDES= new ConfigBoolean("renderPlacementEnclosingBoxSides", false, "If enabled, then the enclosing box around\na schematic placement will have its side quads rendered");
         public static final ConfigBoolean       RENDER_TRANSLUCENT_INNER_SIDES      = new ConfigBoolean("renderTranslucentBlockInnerSides", false, "If enabled, then the model sides are also rendered\nfor inner sides in the translucent mode");
+        public static final ConfigInteger       SCHEMATIC_LOD_DISTANCE              = new ConfigInteger("schematicLodDistance", 0, 0, 64, "The horizontal distance in chunks, beyond which the schematic\nsub-chunks are rendered as coarse colored boxes instead of\nthe full block models. The overlay and the tile entities are\nnot rendered for those sub-chunks. 0 disables the LOD rendering.");
+        public static final ConfigOptionList    SCHEMATIC_LOD_MODE                  = new ConfigOptionList("schematicLodMode", SchematicLodMode.CELLS_2, "The type of the coarse boxes used for the far away\nschematic sub-chunks, see schematicLodDistance.\nEither one box per block column, or cells of 2x2x2 or 4x4x4 blocks.");
         public static final ConfigBoolean       SCHEMATIC_OVERLAY_ENABLE_OUTLINES   = new ConfigBoolean("schematicOverlayEnableOutlines",  true, "Enables rendering a wire frame outline for\nthe schematic block overlay", "Schematic Overlay Outlines");
         public static final ConfigBoolean       SCHEMATIC_OVERLAY_ENABLE_SIDES      = new ConfigBoolean("schematicOverlayEnableSides",     true, "Enables rendering translucent boxes/sides for\nthe schematic block overlay", "Schematic Overlay Sides");
         public static final ConfigBoolean       SCHEMATIC_OVERLAY_MODEL_OUTLINE     = new ConfigBoolean("schematicOverlayModelOutline",    true, "If enabled, then the schematic overlay will use the\nblock model quads/vertices instead of the\ntraditional full block overlay");
@@ -137,6 +159,7 @@ public class Configs implements IConfigHandler
                 ENABLE_SCHEMATIC_BLOCKS,
                 ENABLE_SCHEMATIC_OVERLAY,
                 IGNORE_FLUIDS_AS_EXTRA,
+                OVERLAY_GREEDY_MESHING,
                 OVERLAY_REDUCED_INNER_SIDES,
                 RENDER_AREA_SELECTION_BOX_SIDES,
                 RENDER_BLOCKS_AS_TRANSLUCENT,
@@ -160,6 +183,8 @@ public class Configs implements IConfigHandler
 
                 GHOST_BLOCK_ALPHA,
                 PLACEMENT_BOX_SIDE_ALPHA,
+                SCHEMATIC_LOD_DISTANCE,
+                SCHEMATIC_LOD_MODE,
                 SCHEMATIC_OVERLAY_OUTLINE_WIDTH,
                 SCHEMATIC_OVERLAY_OUTLINE_WIDTH_THROUGH
         );
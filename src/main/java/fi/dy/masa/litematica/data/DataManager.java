@@ -25,6 +25,7 @@ import fi.dy.masa.litematica.materials.MaterialListBase;
 import fi.dy.masa.litematica.materials.MaterialListHudRenderer;
 import fi.dy.masa.litematica.render.infohud.InfoHud;
 import fi.dy.masa.litematica.scheduler.TaskScheduler;
+import fi.dy.masa.litematica.schematic.SchematicMetadataCache;
 import fi.dy.masa.litematica.schematic.placement.SchematicPlacementManager;
 import fi.dy.masa.litematica.schematic.projects.SchematicProjectsManager;
 import fi.dy.masa.litematica.schematic.verifier.SchematicVerifier;
@@ -54,7 +55,6 @@ public class DataManager implements IDirectoryCache
     private static IConfigGuiTab configGuiTab = GuiConfigs.VISUALS;
     private static boolean createPlacementOnLoad = true;
     private static boolean canSave;
-    private static long clientTickStart;
 
     private final SelectionManager selectionManager = new SelectionManager();
     private final SchematicPlacementManager schematicPlacementManager = new SchematicPlacementManager();
@@ -79,16 +79,6 @@ public class DataManager implements IDirectoryCache
         return INSTANCE;
     }
 
-    public static void onClientTickStart()
-    {
-        clientTickStart = System.nanoTime();
-    }
-
-    public static long getClientTickStartTime()
-    {
-        return clientTickStart;
-    }
-
     public static ItemStack getToolItem()
     {
         return toolItem;
@@ -245,6 +235,7 @@ public class DataManager implements IDirectoryCache
     {
         save(false);
         MaterialCache.getInstance().writeToFile();
+        SchematicMetadataCache.getInstance().writeToFile();
     }
 
     public static void save(boolean forceSave)
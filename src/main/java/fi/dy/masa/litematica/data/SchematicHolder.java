@@ -3,14 +3,20 @@ package fi.dy.masa.litematica.data;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
+import fi.dy.masa.litematica.scheduler.TaskScheduler;
+import fi.dy.masa.litematica.scheduler.tasks.TaskLoadSchematic;
 import fi.dy.masa.litematica.schematic.LitematicaSchematic;
 
 public class SchematicHolder
 {
     private static final SchematicHolder INSTANCE = new SchematicHolder();
     private final List<LitematicaSchematic> schematics = new ArrayList<>();
+    private final Map<File, TaskLoadSchematic> pendingLoads = new HashMap<>();
 
     public static SchematicHolder getInstance()
     {
@@ -20,6 +26,15 @@ public class SchematicHolder
     public void clearLoadedSchematics()
     {
         this.schematics.clear();
+
+        // Stopping the tasks calls their cancel listeners, which remove them from the map
+        List<TaskLoadSchematic> tasks = new ArrayList<>(this.pendingLoads.values());
+        this.pendingLoads.clear();
+
+        for (TaskLoadSchematic task : tasks)
+        {
+            TaskScheduler.getInstanceClient().removeTask(task);
+        }
     }
 
     public List<LitematicaSchematic> getAllOf(File file)
@@ -58,6 +73,39 @@ public class SchematicHolder
         return schematic;
     }
 
+    /**
+     * Gets the already loaded schematic for the given file, or otherwise loads it
+     * on a worker thread. The listener is called on the main thread once the schematic
+     * is available, with a null value if the loading failed or got cancelled. If the schematic is
+     * already loaded, then the listener gets called immediately.
+     */
+    public void getOrLoadAsync(File file, Consumer<LitematicaSchematic> listener)
+    {
+        for (LitematicaSchematic schematic : this.schematics)
+        {
+            if (file.equals(schematic.getFile()))
+            {
+                listener.accept(schematic);
+                return;
+            }
+        }
+
+        TaskLoadSchematic task = this.pendingLoads.get(file);
+
+        if (task == null || task.isCancelled() || task.isDone())
+        {
+            final TaskLoadSchematic newTask = new TaskLoadSchematic(file, false);
+            newTask.addLoadListener((schematic) -> this.pendingLoads.remove(file, newTask));
+            newTask.addCancelListener(() -> this.pendingLoads.remove(file, newTask));
+            this.pendingLoads.put(file, newTask);
+            TaskScheduler.getInstanceClient().scheduleTask(newTask, 1);
+            task = newTask;
+        }
+
+        task.addLoadListener(listener);
+        task.addCancelListener(() -> listener.accept(null));
+    }
+
     public void addSchematic(LitematicaSchematic schematic, boolean allowDuplicates)
     {
         if (allowDuplicates || this.schematics.contains(schematic) == false)
@@ -2,10 +2,13 @@ package fi.dy.masa.litematica.gui;
 
 import java.io.File;
 import java.util.Collection;
+import javax.annotation.Nullable;
 import fi.dy.masa.litematica.data.DataManager;
 import fi.dy.masa.litematica.data.SchematicHolder;
 import fi.dy.masa.litematica.gui.GuiMainMenu.ButtonListenerChangeMenu;
 import fi.dy.masa.litematica.materials.MaterialListSchematic;
+import fi.dy.masa.litematica.scheduler.TaskScheduler;
+import fi.dy.masa.litematica.scheduler.tasks.TaskLoadSchematic;
 import fi.dy.masa.litematica.schematic.LitematicaSchematic;
 import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
 import fi.dy.masa.litematica.schematic.placement.SchematicPlacementManager;
@@ -24,6 +27,7 @@ import fi.dy.masa.malilib.gui.widgets.WidgetFileBrowserBase.DirectoryEntry;
 import fi.dy.masa.malilib.util.GuiUtils;
 import fi.dy.masa.malilib.util.InfoUtils;
 import fi.dy.masa.malilib.util.StringUtils;
+import net.minecraft.client.Minecraft;
 import net.minecraft.util.math.BlockPos;
 
 public class GuiSchematicLoad extends GuiSchematicBrowserBase
@@ -141,9 +145,21 @@ public class GuiSchematicLoad extends GuiSchematicBrowserBase
                 return;
             }
 
+            FileType fileType = FileType.fromFile(entry.getFullPath());
+
+            if (fileType == FileType.LITEMATICA_SCHEMATIC && this.type == Type.LOAD_SCHEMATIC)
+            {
+                // Large schematics are read and decoded on a worker thread, and the placement gets created once it's done
+                final boolean enabled = GuiBase.isShiftDown() == false;
+                final boolean createPlacement = DataManager.getCreatePlacementOnLoad();
+                TaskLoadSchematic task = new TaskLoadSchematic(file, true);
+                task.addLoadListener((loadedSchematic) -> onSchematicLoaded(loadedSchematic, file, createPlacement, enabled));
+                TaskScheduler.getInstanceClient().scheduleTask(task, 1);
+                return;
+            }
+
             this.gui.setNextMessageType(MessageType.ERROR);
             LitematicaSchematic schematic = null;
-            FileType fileType = FileType.fromFile(entry.getFullPath());
             boolean warnType = false;
 
             if (fileType == FileType.LITEMATICA_SCHEMATIC)
@@ -209,6 +225,29 @@ public class GuiSchematicLoad extends GuiSchematicBrowserBase
             }
         }
 
+        private static void onSchematicLoaded(@Nullable LitematicaSchematic schematic, File file, boolean createPlacement, boolean enabled)
+        {
+            Minecraft mc = Minecraft.getMinecraft();
+
+            if (schematic == null || mc.player == null)
+            {
+                return;
+            }
+
+            InfoUtils.showGuiOrInGameMessage(MessageType.SUCCESS, "litematica.info.schematic_load.schematic_loaded", file.getName());
+
+            if (createPlacement)
+            {
+                BlockPos pos = new BlockPos(mc.player.getPositionVector());
+                String name = schematic.getMetadata().getName();
+
+                SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
+                SchematicPlacement placement = SchematicPlacement.createFor(schematic, pos, name, enabled, enabled);
+                manager.addSchematicPlacement(placement, true);
+                manager.setSelectedSchematicPlacement(placement);
+            }
+        }
+
         public enum Type
         {
             LOAD_SCHEMATIC  ("litematica.gui.button.load_schematic_to_memory"),
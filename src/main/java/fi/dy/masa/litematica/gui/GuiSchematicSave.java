@@ -130,6 +130,7 @@ public class GuiSchematicSave extends GuiSchematicSaveBase implements ICompletio
                 schematic.getMetadata().clearModifiedSinceSaved();
 
                 this.getListWidget().refreshEntries();
+                this.getListWidget().clearSchematicMetadataCache();
                 this.addMessage(MessageType.SUCCESS, "litematica.message.schematic_saved_as", fileName);
             }
         }
@@ -12,6 +12,7 @@ import fi.dy.masa.litematica.gui.GuiSchematicBrowserBase;
 import fi.dy.masa.litematica.gui.Icons;
 import fi.dy.masa.litematica.schematic.LitematicaSchematic;
 import fi.dy.masa.litematica.schematic.SchematicMetadata;
+import fi.dy.masa.litematica.schematic.SchematicMetadataCache;
 import fi.dy.masa.malilib.gui.interfaces.ISelectionListener;
 import fi.dy.masa.malilib.gui.widgets.WidgetFileBrowserBase;
 import fi.dy.masa.malilib.render.RenderUtils;
@@ -54,6 +55,7 @@ public class WidgetSchematicBrowser extends WidgetFileBrowserBase
         super.onGuiClosed();
 
         this.clearPreviewImages();
+        SchematicMetadataCache.getInstance().writeToFileAsync();
     }
 
     private void clearPreviewImages()
@@ -211,11 +213,10 @@ public class WidgetSchematicBrowser extends WidgetFileBrowserBase
         {
             if (entry.getName().endsWith(LitematicaSchematic.FILE_EXTENSION))
             {
-                LitematicaSchematic schematic = LitematicaSchematic.createFromFile(entry.getDirectory(), entry.getName());
+                meta = SchematicMetadataCache.getInstance().getMetadata(file);
 
-                if (schematic != null)
+                if (meta != null)
                 {
-                    meta = schematic.getMetadata();
                     this.createPreviewImage(file, meta);
                 }
             }
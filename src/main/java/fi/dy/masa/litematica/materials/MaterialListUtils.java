@@ -12,7 +12,6 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.ItemStack;
-import net.minecraft.util.math.Vec3i;
 
 public class MaterialListUtils
 {
@@ -31,22 +30,7 @@ public class MaterialListUtils
 
             if (container != null)
             {
-                Vec3i size = container.getSize();
-                final int sizeX = size.getX();
-                final int sizeY = size.getY();
-                final int sizeZ = size.getZ();
-
-                for (int y = 0; y < sizeY; ++y)
-                {
-                    for (int z = 0; z < sizeZ; ++z)
-                    {
-                        for (int x = 0; x < sizeX; ++x)
-                        {
-                            IBlockState state = container.get(x, y, z);
-                            countsTotal.addTo(state, 1);
-                        }
-                    }
-                }
+                container.addBlockStateCountsTo(countsTotal);
             }
         }
 
@@ -5,7 +5,7 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import fi.dy.masa.litematica.config.Configs;
-import fi.dy.masa.litematica.data.DataManager;
+import fi.dy.masa.litematica.scheduler.TickBudget;
 import fi.dy.masa.litematica.util.WorldUtils;
 import net.minecraft.client.Minecraft;
 
@@ -28,6 +28,12 @@ public abstract class MixinMinecraft
     @Inject(method = "runTick()V", at = @At("HEAD"))
     private void onRunTickStart(CallbackInfo ci)
     {
-        DataManager.onClientTickStart();
+        TickBudget.getInstance().onClientTickStart();
+    }
+
+    @Inject(method = "runGameLoop()V", at = @At("HEAD"))
+    private void onRunGameLoopStart(CallbackInfo ci)
+    {
+        TickBudget.getInstance().onFrameStart();
     }
 }
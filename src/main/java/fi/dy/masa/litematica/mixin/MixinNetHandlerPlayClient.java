@@ -5,6 +5,7 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import fi.dy.masa.litematica.config.Configs;
+import fi.dy.masa.litematica.schematic.verifier.SchematicVerifier;
 import fi.dy.masa.litematica.util.SchematicWorldRefresher;
 import net.minecraft.client.network.NetHandlerPlayClient;
 import net.minecraft.network.play.server.SPacketChunkData;
@@ -16,6 +17,8 @@ public abstract class MixinNetHandlerPlayClient
     @Inject(method = "handleChunkData", at = @At("RETURN"))
     private void onChunkData(SPacketChunkData packetIn, CallbackInfo ci)
     {
+        SchematicVerifier.markVerifierChunkChanges(packetIn.getChunkX(), packetIn.getChunkZ());
+
         if (Configs.Visuals.ENABLE_RENDERING.getBooleanValue() &&
             Configs.Visuals.ENABLE_SCHEMATIC_RENDERING.getBooleanValue())
         {
@@ -4,6 +4,11 @@ import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.util.BlockRenderLayer;
 import fi.dy.masa.litematica.render.schematic.RenderChunkSchematicVbo.OverlayRenderType;
 
+/**
+ * The buffers used by one compile task. The buffers start out small, since most schematic
+ * sub-chunks only need a fraction of a full chunk's worth of geometry, and grow as needed.
+ * The grown buffers are then reused across compiles via {@link BufferBuilderCachePool}.
+ */
 public class BufferBuilderCache
 {
     private final BufferBuilder[] worldRenderers;
@@ -14,14 +19,14 @@ public class BufferBuilderCache
         this.worldRenderers = new BufferBuilder[BlockRenderLayer.values().length];
         this.overlayBufferBuilders = new BufferBuilder[OverlayRenderType.values().length];
 
-        this.worldRenderers[BlockRenderLayer.SOLID.ordinal()] = new BufferBuilder(2097152);
-        this.worldRenderers[BlockRenderLayer.CUTOUT.ordinal()] = new BufferBuilder(131072);
-        this.worldRenderers[BlockRenderLayer.CUTOUT_MIPPED.ordinal()] = new BufferBuilder(131072);
-        this.worldRenderers[BlockRenderLayer.TRANSLUCENT.ordinal()] = new BufferBuilder(262144);
+        this.worldRenderers[BlockRenderLayer.SOLID.ordinal()] = new BufferBuilder(131072);
+        this.worldRenderers[BlockRenderLayer.CUTOUT.ordinal()] = new BufferBuilder(16384);
+        this.worldRenderers[BlockRenderLayer.CUTOUT_MIPPED.ordinal()] = new BufferBuilder(16384);
+        this.worldRenderers[BlockRenderLayer.TRANSLUCENT.ordinal()] = new BufferBuilder(32768);
 
         for (int i = 0; i < this.overlayBufferBuilders.length; ++i)
         {
-            this.overlayBufferBuilders[i] = new BufferBuilder(262144);
+            this.overlayBufferBuilders[i] = new BufferBuilder(32768);
         }
     }
 
@@ -39,4 +44,24 @@ public class BufferBuilderCache
     {
         return this.overlayBufferBuilders[type.ordinal()];
     }
+
+    /**
+     * @return the total capacity of the direct buffers of this cache, in bytes
+     */
+    public long getAllocatedBytes()
+    {
+        long bytes = 0;
+
+        for (BufferBuilder buffer : this.worldRenderers)
+        {
+            bytes += buffer.getByteBuffer().capacity();
+        }
+
+        for (BufferBuilder buffer : this.overlayBufferBuilders)
+        {
+            bytes += buffer.getByteBuffer().capacity();
+        }
+
+        return bytes;
+    }
 }
@@ -0,0 +1,170 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of BufferBuilderCaches, which grows on demand up to the given maximum size,
+ * and releases the caches that have stayed unused for a while.
+ * The most recently used caches are handed out first, so that the (already grown)
+ * direct buffers of the active caches get reused, and the idle ones end up at the
+ * tail of the pool where they get released from.
+ */
+public class BufferBuilderCachePool
+{
+    /** How often the idle caches get trimmed */
+    private static final long TRIM_INTERVAL_NANOS = 5000000000L;
+    /** The number of idle caches to always keep around */
+    private static final int MIN_IDLE = 1;
+
+    private final Deque<BufferBuilderCache> freeCaches = new ArrayDeque<>();
+    private final int maxSize;
+    private int allocated;
+    private int lowWaterMark;
+    private long lastTrimTime = System.nanoTime();
+
+    public BufferBuilderCachePool(int maxSize)
+    {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Takes a free cache from the pool, or creates a new one if the pool is not at its maximum size yet.
+     * Otherwise waits until a cache gets returned to the pool.
+     */
+    public BufferBuilderCache allocate() throws InterruptedException
+    {
+        synchronized (this.freeCaches)
+        {
+            while (true)
+            {
+                BufferBuilderCache cache = this.freeCaches.pollFirst();
+
+                if (cache != null)
+                {
+                    this.lowWaterMark = Math.min(this.lowWaterMark, this.freeCaches.size());
+                    return cache;
+                }
+
+                if (this.allocated < this.maxSize)
+                {
+                    ++this.allocated;
+                    this.lowWaterMark = 0;
+                    break;
+                }
+
+                this.freeCaches.wait();
+            }
+        }
+
+        // Allocate the direct buffers outside of the lock
+        return new BufferBuilderCache();
+    }
+
+    public void free(BufferBuilderCache cache)
+    {
+        synchronized (this.freeCaches)
+        {
+            this.freeCaches.addFirst(cache);
+            this.freeCaches.notifyAll();
+        }
+    }
+
+    /**
+     * Releases the caches that have not been needed during the last trim interval.
+     * Should be called regularly, for example once per frame.
+     */
+    public void trimIdle()
+    {
+        long now = System.nanoTime();
+
+        if (now - this.lastTrimTime < TRIM_INTERVAL_NANOS)
+        {
+            return;
+        }
+
+        synchronized (this.freeCaches)
+        {
+            // The low water mark is the number of caches that stayed unused for the whole interval
+            int release = Math.min(this.lowWaterMark, this.freeCaches.size()) - MIN_IDLE;
+
+            for (int i = 0; i < release; ++i)
+            {
+                this.freeCaches.pollLast();
+                --this.allocated;
+            }
+
+            this.lowWaterMark = this.freeCaches.size();
+            this.lastTrimTime = now;
+        }
+    }
+
+    /**
+     * Waits until all the allocated caches have been returned to the pool.
+     * @param whileWaiting a task to run while waiting, for example running the pending uploads
+     */
+    public void awaitAllFree(Runnable whileWaiting)
+    {
+        while (true)
+        {
+            whileWaiting.run();
+
+            synchronized (this.freeCaches)
+            {
+                if (this.freeCaches.size() >= this.allocated)
+                {
+                    return;
+                }
+
+                try
+                {
+                    this.freeCaches.wait(10);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (this.freeCaches)
+        {
+            this.allocated -= this.freeCaches.size();
+            this.freeCaches.clear();
+        }
+    }
+
+    public boolean hasNoFreeCaches()
+    {
+        synchronized (this.freeCaches)
+        {
+            return this.freeCaches.isEmpty() && this.allocated >= this.maxSize;
+        }
+    }
+
+    /**
+     * @return a debug string of the pool occupancy: free/allocated/max caches, and the total buffer memory in MB
+     */
+    public String getOccupancyString()
+    {
+        int free;
+        int allocated;
+        long bytes = 0;
+
+        synchronized (this.freeCaches)
+        {
+            free = this.freeCaches.size();
+            allocated = this.allocated;
+
+            for (BufferBuilderCache cache : this.freeCaches)
+            {
+                bytes += cache.getAllocatedBytes();
+            }
+        }
+
+        return String.format("%d/%d/%d (%.1f MB idle)", free, allocated, this.maxSize, (double) bytes / (1024.0 * 1024.0));
+    }
+}
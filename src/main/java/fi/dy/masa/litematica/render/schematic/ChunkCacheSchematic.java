@@ -1,8 +1,13 @@
 package fi.dy.masa.litematica.render.schematic;
 
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import javax.annotation.Nullable;
+import net.minecraft.block.Block;
 import net.minecraft.block.material.Material;
 import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Biomes;
 import net.minecraft.init.Blocks;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
@@ -12,48 +17,185 @@ import net.minecraft.world.World;
 import net.minecraft.world.WorldType;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 
+/**
+ * An immutable snapshot of the blocks, biomes and tile entities around one render chunk.
+ * The snapshot is captured on the main thread when the compile task is created,
+ * so that the render worker threads never need to touch the live chunks.
+ * The block states are stored palette-compressed, as one palette index per position.
+ * <p>
+ * The tile entities can't be copied in a generic way, so they are the one part of the snapshot
+ * that is shared with the main thread. Only the tile entities within the render chunk and its
+ * one block margin are captured, since that is all that the block actual states and the
+ * tile entity renderer lookup can reach. The render workers only read them, the same way
+ * the vanilla chunk render workers read the tile entities via the vanilla ChunkCache.
+ */
 public class ChunkCacheSchematic implements IBlockAccess
 {
     private static final IBlockState AIR = Blocks.AIR.getDefaultState();
 
-    protected int chunkStartX;
-    protected int chunkStartZ;
-    protected Chunk[][] chunkArray;
-    protected boolean empty;
-    protected World world;
+    protected final World world;
+    protected final WorldType worldType;
+    protected final int minX;
+    protected final int minY;
+    protected final int minZ;
+    protected final int sizeX;
+    protected final int sizeY;
+    protected final int sizeZ;
+    protected final IBlockState[] palette;
+    protected final char[] blocks;
+    @Nullable protected final Biome[] biomes;
+    protected final Map<BlockPos, TileEntity> tileEntities;
+    protected final boolean empty;
 
-    public ChunkCacheSchematic(World worldIn, BlockPos pos, int expand)
+    /**
+     * Captures the snapshot. This must be called on the main thread.
+     * @param worldIn the world to capture the data from
+     * @param pos the minimum corner of the render chunk
+     * @param expand the number of blocks around the render chunk to also include
+     * @param captureBiomes whether to also capture the biomes. They are only needed for the
+     * world whose blocks are actually rendered, the other snapshot just reads as plains.
+     */
+    public ChunkCacheSchematic(World worldIn, BlockPos pos, int expand, boolean captureBiomes)
     {
         this.world = worldIn;
-        this.chunkStartX = (pos.getX() - expand) >> 4;
-        this.chunkStartZ = (pos.getZ() - expand) >> 4;
-        int chunkEndX = (pos.getX() + expand + 15) >> 4;
-        int chunkEndZ = (pos.getZ() + expand + 15) >> 4;
-        this.chunkArray = new Chunk[chunkEndX - this.chunkStartX + 1][chunkEndZ - this.chunkStartZ + 1];
-        this.empty = true;
-
-        for (int cx = this.chunkStartX; cx <= chunkEndX; ++cx)
-        {
-            for (int cz = this.chunkStartZ; cz <= chunkEndZ; ++cz)
-            {
-                this.chunkArray[cx - this.chunkStartX][cz - this.chunkStartZ] = worldIn.getChunk(cx, cz);
-            }
-        }
+        this.worldType = worldIn.getWorldType();
+        this.minX = pos.getX() - expand;
+        this.minY = Math.max(0, pos.getY() - expand);
+        this.minZ = pos.getZ() - expand;
+        int maxX = pos.getX() + 15 + expand;
+        int maxY = Math.min(255, pos.getY() + 15 + expand);
+        int maxZ = pos.getZ() + 15 + expand;
+        this.sizeX = maxX - this.minX + 1;
+        this.sizeY = Math.max(0, maxY - this.minY + 1);
+        this.sizeZ = maxZ - this.minZ + 1;
+        this.blocks = new char[this.sizeX * this.sizeY * this.sizeZ];
+        this.biomes = captureBiomes ? new Biome[this.sizeX * this.sizeZ] : null;
+        final int teMinX = pos.getX() - 1;
+        final int teMinZ = pos.getZ() - 1;
+        final int teMaxX = pos.getX() + 16;
+        final int teMaxZ = pos.getZ() + 16;
 
-        for (int cx = pos.getX() >> 4; cx <= (pos.getX() + 15) >> 4; ++cx)
+        Map<IBlockState, Integer> paletteMap = new IdentityHashMap<>();
+        Map<BlockPos, TileEntity> tileEntities = new HashMap<>();
+        IBlockState[] palette = new IBlockState[16];
+        int paletteSize = 1;
+        boolean empty = true;
+
+        // Palette id 0 is always air, which is also the default value in the blocks array
+        palette[0] = AIR;
+        paletteMap.put(AIR, 0);
+
+        for (int cx = this.minX >> 4; cx <= (maxX >> 4); ++cx)
         {
-            for (int cz = pos.getZ() >> 4; cz <= (pos.getZ() + 15) >> 4; ++cz)
+            for (int cz = this.minZ >> 4; cz <= (maxZ >> 4); ++cz)
             {
-                Chunk chunk = this.chunkArray[cx - this.chunkStartX][cz - this.chunkStartZ];
+                Chunk chunk = worldIn.getChunk(cx, cz);
+                final int x0 = Math.max(this.minX, cx << 4);
+                final int z0 = Math.max(this.minZ, cz << 4);
+                final int x1 = Math.min(maxX, (cx << 4) + 15);
+                final int z1 = Math.min(maxZ, (cz << 4) + 15);
+                BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
 
-                if (chunk != null && chunk.isEmptyBetween(pos.getY(), pos.getY() + 15) == false)
+                for (int z = z0; this.biomes != null && z <= z1; ++z)
                 {
-                    this.empty = false;
-                    break;
+                    for (int x = x0; x <= x1; ++x)
+                    {
+                        posMutable.setPos(x, 0, z);
+                        this.biomes[(z - this.minZ) * this.sizeX + x - this.minX] = chunk.isEmpty() ? Biomes.PLAINS : chunk.getBiome(posMutable, worldIn.getBiomeProvider());
+                    }
+                }
+
+                if (chunk.isEmpty())
+                {
+                    continue;
+                }
+
+                ExtendedBlockStorage[] sections = chunk.getBlockStorageArray();
+                IBlockState lastState = AIR;
+                int lastId = 0;
+
+                for (int y = this.minY; y <= maxY; ++y)
+                {
+                    ExtendedBlockStorage section = sections[y >> 4];
+
+                    if (section == Chunk.NULL_BLOCK_STORAGE || section.isEmpty())
+                    {
+                        continue;
+                    }
+
+                    for (int z = z0; z <= z1; ++z)
+                    {
+                        int index = ((y - this.minY) * this.sizeZ + (z - this.minZ)) * this.sizeX + (x0 - this.minX);
+
+                        for (int x = x0; x <= x1; ++x, ++index)
+                        {
+                            IBlockState state = section.get(x & 0xF, y & 0xF, z & 0xF);
+
+                            if (state == AIR)
+                            {
+                                continue;
+                            }
+
+                            if (state != lastState)
+                            {
+                                Integer id = paletteMap.get(state);
+
+                                if (id == null)
+                                {
+                                    if (paletteSize >= palette.length)
+                                    {
+                                        IBlockState[] arr = new IBlockState[palette.length * 2];
+                                        System.arraycopy(palette, 0, arr, 0, palette.length);
+                                        palette = arr;
+                                    }
+
+                                    id = paletteSize++;
+                                    palette[id] = state;
+                                    paletteMap.put(state, id);
+                                }
+
+                                lastState = state;
+                                lastId = id;
+                            }
+
+                            this.blocks[index] = (char) lastId;
+
+                            if (empty &&
+                                x >= pos.getX() && x <= pos.getX() + 15 &&
+                                y >= pos.getY() && y <= pos.getY() + 15 &&
+                                z >= pos.getZ() && z <= pos.getZ() + 15)
+                            {
+                                empty = false;
+                            }
+                        }
+                    }
+                }
+
+                if ((cx << 4) > teMaxX || (cx << 4) + 15 < teMinX || (cz << 4) > teMaxZ || (cz << 4) + 15 < teMinZ)
+                {
+                    continue;
+                }
+
+                for (Map.Entry<BlockPos, TileEntity> entry : chunk.getTileEntityMap().entrySet())
+                {
+                    BlockPos tePos = entry.getKey();
+
+                    if (tePos.getX() >= teMinX && tePos.getX() <= teMaxX &&
+                        tePos.getZ() >= teMinZ && tePos.getZ() <= teMaxZ &&
+                        tePos.getY() >= pos.getY() - 1 && tePos.getY() <= pos.getY() + 16)
+                    {
+                        tileEntities.put(tePos, entry.getValue());
+                    }
                 }
             }
         }
+
+        this.palette = new IBlockState[paletteSize];
+        System.arraycopy(palette, 0, this.palette, 0, paletteSize);
+        this.tileEntities = tileEntities;
+        this.empty = empty;
     }
 
     public boolean isEmpty()
@@ -61,24 +203,176 @@ public class ChunkCacheSchematic implements IBlockAccess
         return this.empty;
     }
 
-    @Override
-    public IBlockState getBlockState(BlockPos pos)
+    /**
+     * Returns true if any tile entities were captured. The actual states of some blocks
+     * (for example flower pots and skulls) depend on their tile entity data, which is not
+     * part of the block states, so such snapshots can't be compared or hashed by their block states alone.
+     */
+    public boolean hasTileEntities()
+    {
+        return this.tileEntities.isEmpty() == false;
+    }
+
+    /**
+     * Compares this snapshot against another snapshot of the same area, one y-layer at a time.
+     * A layer of the render chunk is reported as identical, if the block states are identical
+     * in both snapshots in that layer and in the layers directly above and below it,
+     * including the one block margin around the render chunk. This means that the
+     * actual states of the blocks in that layer can't differ either.
+     * Layers with a tile entity in either snapshot, or right above or below them,
+     * are never reported as identical, since the tile entity data can change the actual states.
+     * The comparison is done via a palette id mapping, without fetching any block states.
+     * @param other the other snapshot, which must have been captured with the same position and expand
+     * @param pos the minimum corner of the render chunk
+     * @return an array of 16 entries, one for each y-layer of the render chunk
+     */
+    public boolean[] getIdenticalLayers(ChunkCacheSchematic other, BlockPos pos)
     {
-        if (pos.getY() >= 0 && pos.getY() < 256)
+        boolean[] identical = new boolean[16];
+
+        if (this.minX != other.minX || this.minY != other.minY || this.minZ != other.minZ ||
+            this.sizeX != other.sizeX || this.sizeY != other.sizeY || this.sizeZ != other.sizeZ)
+        {
+            return identical;
+        }
+
+        // Map the palette ids of this snapshot to the ids of the same states in the other snapshot
+        Map<IBlockState, Integer> otherIds = new IdentityHashMap<>();
+        int[] idMap = new int[this.palette.length];
+
+        for (int i = 0; i < other.palette.length; ++i)
+        {
+            otherIds.put(other.palette[i], i);
+        }
+
+        for (int i = 0; i < this.palette.length; ++i)
+        {
+            Integer id = otherIds.get(this.palette[i]);
+            idMap[i] = id != null ? id : -1;
+        }
+
+        final int x0 = Math.max(0, pos.getX() - 1 - this.minX);
+        final int x1 = Math.min(this.sizeX - 1, pos.getX() + 16 - this.minX);
+        final int z0 = Math.max(0, pos.getZ() - 1 - this.minZ);
+        final int z1 = Math.min(this.sizeZ - 1, pos.getZ() + 16 - this.minZ);
+        boolean[] layerIdentical = new boolean[this.sizeY];
+
+        for (int y = 0; y < this.sizeY; ++y)
+        {
+            boolean same = true;
+
+            for (int z = z0; z <= z1 && same; ++z)
+            {
+                int index = (y * this.sizeZ + z) * this.sizeX + x0;
+
+                for (int x = x0; x <= x1; ++x, ++index)
+                {
+                    if (idMap[this.blocks[index]] != other.blocks[index])
+                    {
+                        same = false;
+                        break;
+                    }
+                }
+            }
+
+            layerIdentical[y] = same;
+        }
+
+        this.markTileEntityLayers(layerIdentical);
+        other.markTileEntityLayers(layerIdentical);
+
+        for (int i = 0; i < 16; ++i)
         {
-            int cx = (pos.getX() >> 4) - this.chunkStartX;
-            int cz = (pos.getZ() >> 4) - this.chunkStartZ;
+            boolean same = true;
 
-            if (cx >= 0 && cx < this.chunkArray.length &&
-                cz >= 0 && cz < this.chunkArray[cx].length)
+            for (int y = pos.getY() + i - 1; y <= pos.getY() + i + 1; ++y)
             {
-                Chunk chunk = this.chunkArray[cx][cz];
+                int ly = y - this.minY;
 
-                if (chunk != null)
+                // Outside of the snapshot both sides read as air
+                if (ly >= 0 && ly < this.sizeY && layerIdentical[ly] == false)
                 {
-                    return chunk.getBlockState(pos);
+                    same = false;
+                    break;
                 }
             }
+
+            identical[i] = same;
+        }
+
+        return identical;
+    }
+
+    private void markTileEntityLayers(boolean[] layerIdentical)
+    {
+        for (BlockPos pos : this.tileEntities.keySet())
+        {
+            int ly = pos.getY() - this.minY;
+
+            if (ly >= 0 && ly < layerIdentical.length)
+            {
+                layerIdentical[ly] = false;
+            }
+        }
+    }
+
+    /**
+     * Returns a 64-bit hash of all the block states in this snapshot, including the margin,
+     * and of the captured biomes, since they affect the block color tints.
+     * The states are identified by their state id combined with their identity hash,
+     * since the schematic world can also contain states that are not meta-based.
+     * The tile entity data is not included, see {@link #hasTileEntities()}.
+     */
+    public long getContentHash()
+    {
+        long[] paletteHashes = new long[this.palette.length];
+
+        for (int i = 0; i < this.palette.length; ++i)
+        {
+            IBlockState state = this.palette[i];
+            long h = ((long) Block.getStateId(state) << 32) ^ (System.identityHashCode(state) & 0xFFFFFFFFL);
+            paletteHashes[i] = h * 0x9E3779B97F4A7C15L + 1;
+        }
+
+        long hash = 0xCBF29CE484222325L ^ this.sizeY;
+
+        for (char id : this.blocks)
+        {
+            hash ^= paletteHashes[id];
+            hash *= 0x100000001B3L;
+        }
+
+        if (this.biomes != null)
+        {
+            for (Biome biome : this.biomes)
+            {
+                hash ^= biome != null ? Biome.getIdForBiome(biome) + 1 : 0;
+                hash *= 0x100000001B3L;
+            }
+        }
+
+        return hash;
+    }
+
+    private boolean isWithinSnapshot(BlockPos pos)
+    {
+        int x = pos.getX() - this.minX;
+        int y = pos.getY() - this.minY;
+        int z = pos.getZ() - this.minZ;
+
+        return x >= 0 && x < this.sizeX && y >= 0 && y < this.sizeY && z >= 0 && z < this.sizeZ;
+    }
+
+    @Override
+    public IBlockState getBlockState(BlockPos pos)
+    {
+        int x = pos.getX() - this.minX;
+        int y = pos.getY() - this.minY;
+        int z = pos.getZ() - this.minZ;
+
+        if (x >= 0 && x < this.sizeX && y >= 0 && y < this.sizeY && z >= 0 && z < this.sizeZ)
+        {
+            return this.palette[this.blocks[(y * this.sizeZ + z) * this.sizeX + x]];
         }
 
         return AIR;
@@ -87,25 +381,30 @@ public class ChunkCacheSchematic implements IBlockAccess
     @Override
     public Biome getBiome(BlockPos pos)
     {
-        int cx = (pos.getX() >> 4) - this.chunkStartX;
-        int cz = (pos.getZ() >> 4) - this.chunkStartZ;
+        int x = pos.getX() - this.minX;
+        int z = pos.getZ() - this.minZ;
 
-        return this.chunkArray[cx][cz].getBiome(pos, this.world.getBiomeProvider());
+        if (this.biomes != null && x >= 0 && x < this.sizeX && z >= 0 && z < this.sizeZ)
+        {
+            Biome biome = this.biomes[z * this.sizeX + x];
+            return biome != null ? biome : Biomes.PLAINS;
+        }
+
+        return Biomes.PLAINS;
     }
 
     @Override
     @Nullable
     public TileEntity getTileEntity(BlockPos pos)
     {
-        return this.getTileEntity(pos, Chunk.EnumCreateEntityType.CHECK);
+        return this.tileEntities.get(pos);
     }
 
     @Nullable
     public TileEntity getTileEntity(BlockPos pos, Chunk.EnumCreateEntityType type)
     {
-        int i = (pos.getX() >> 4) - this.chunkStartX;
-        int j = (pos.getZ() >> 4) - this.chunkStartZ;
-        return this.chunkArray[i][j].getTileEntity(pos, type);
+        // The snapshot never creates any new tile entities
+        return this.tileEntities.get(pos);
     }
 
     @Override
@@ -137,33 +436,20 @@ public class ChunkCacheSchematic implements IBlockAccess
     @Override
     public WorldType getWorldType()
     {
-        return this.world.getWorldType();
+        return this.worldType;
     }
 
     @SuppressWarnings("deprecation")
     @Override
     public boolean isSideSolid(BlockPos pos, EnumFacing side, boolean defaultValue)
     {
-        if (pos.getY() < 0 || pos.getY() >= 256)
+        if (this.isWithinSnapshot(pos) == false)
         {
             return defaultValue;
         }
 
-        int x = (pos.getX() >> 4) - this.chunkStartX;
-        int z = (pos.getZ() >> 4) - this.chunkStartZ;
-
-        if (this.withinBounds(x, z) == false)
-        {
-            return defaultValue;
-        }
-
-        IBlockState state = getBlockState(pos);
+        IBlockState state = this.getBlockState(pos);
 
         return state.getBlock().isSideSolid(state, this, pos, side);
     }
-
-    private boolean withinBounds(int x, int z)
-    {
-        return x >= 0 && x < chunkArray.length && z >= 0 && z < chunkArray[x].length && chunkArray[x][z] != null;
-    }
 }
@@ -2,9 +2,11 @@ package fi.dy.masa.litematica.render.schematic;
 
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Doubles;
 import net.minecraft.client.renderer.chunk.CompiledChunk;
+import fi.dy.masa.litematica.util.SchematicLodMode;
 
 public class ChunkCompileTaskGeneratorSchematic implements Comparable<ChunkCompileTaskGeneratorSchematic>
 {
@@ -15,6 +17,11 @@ public class ChunkCompileTaskGeneratorSchematic implements Comparable<ChunkCompi
     private final double distanceSq;
     private BufferBuilderCache bufferBuilderCache;
     private CompiledChunk compiledChunk;
+    private CompiledOverlaySchematic compiledOverlay;
+    private ChunkCacheSchematic schematicWorldView;
+    private ChunkCacheSchematic clientWorldView;
+    private SchematicRenderSettings renderSettings;
+    @Nullable private SchematicLodMode lodMode;
     private ChunkCompileTaskGeneratorSchematic.Status status = ChunkCompileTaskGeneratorSchematic.Status.PENDING;
     private boolean finished;
 
@@ -45,6 +52,59 @@ public class ChunkCompileTaskGeneratorSchematic implements Comparable<ChunkCompi
         this.compiledChunk = compiledChunkIn;
     }
 
+    /**
+     * @return the newly built overlay of an overlay-only rebuild task
+     */
+    public CompiledOverlaySchematic getCompiledOverlay()
+    {
+        return this.compiledOverlay;
+    }
+
+    public void setCompiledOverlay(CompiledOverlaySchematic compiledOverlay)
+    {
+        this.compiledOverlay = compiledOverlay;
+    }
+
+    public ChunkCacheSchematic getSchematicWorldView()
+    {
+        return this.schematicWorldView;
+    }
+
+    public ChunkCacheSchematic getClientWorldView()
+    {
+        return this.clientWorldView;
+    }
+
+    public void setWorldViews(ChunkCacheSchematic schematicWorldView, ChunkCacheSchematic clientWorldView)
+    {
+        this.schematicWorldView = schematicWorldView;
+        this.clientWorldView = clientWorldView;
+    }
+
+    public SchematicRenderSettings getRenderSettings()
+    {
+        return this.renderSettings;
+    }
+
+    public void setRenderSettings(SchematicRenderSettings renderSettings)
+    {
+        this.renderSettings = renderSettings;
+    }
+
+    /**
+     * @return the LOD mode to build the render chunk with, or null for the full detail meshing
+     */
+    @Nullable
+    public SchematicLodMode getLodMode()
+    {
+        return this.lodMode;
+    }
+
+    public void setLodMode(@Nullable SchematicLodMode lodMode)
+    {
+        this.lodMode = lodMode;
+    }
+
     public BufferBuilderCache getBufferCache()
     {
         return this.bufferBuilderCache;
@@ -79,6 +139,10 @@ public class ChunkCompileTaskGeneratorSchematic implements Comparable<ChunkCompi
             {
                 this.renderChunk.setNeedsUpdate(false);
             }
+            else if (this.type == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_OVERLAY && this.status != ChunkCompileTaskGeneratorSchematic.Status.DONE)
+            {
+                this.renderChunk.setNeedsOverlayUpdate();
+            }
 
             this.finished = true;
             this.status = ChunkCompileTaskGeneratorSchematic.Status.DONE;
@@ -149,6 +213,7 @@ public class ChunkCompileTaskGeneratorSchematic implements Comparable<ChunkCompi
     public static enum Type
     {
         REBUILD_CHUNK,
+        REBUILD_OVERLAY,
         RESORT_TRANSPARENCY;
     }
 }
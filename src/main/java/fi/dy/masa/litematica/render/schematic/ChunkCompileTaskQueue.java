@@ -0,0 +1,300 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import javax.annotation.Nullable;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * The queue of pending schematic chunk compile tasks.
+ * Instead of ordering the tasks by their distance at the time they were queued,
+ * the tasks are ordered against the current camera position, and render chunks
+ * that were outside of the frustum during the last visibility update get a lower priority.
+ * The priorities are cached in a heap, which is only rebuilt when the camera has moved enough
+ * or when the visibility has been updated.
+ * Tasks for render chunks that have left the render distance are dropped. Dropping a rebuild
+ * task marks its render chunk for an update again, so it gets rebuilt once it comes back into range.
+ */
+public class ChunkCompileTaskQueue
+{
+    /** The squared distance multiplier for render chunks that are not currently in the frustum */
+    private static final double OUT_OF_FRUSTUM_PENALTY = 4.0D;
+    /** The squared distance the camera needs to move before the priorities get re-calculated */
+    private static final double REHEAPIFY_DISTANCE_SQ = 4.0D * 4.0D;
+
+    private final Map<ChunkCompileTaskGeneratorSchematic, QueuedTask> queuedTasks = new IdentityHashMap<>();
+    private PriorityQueue<QueuedTask> heap = new PriorityQueue<>();
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+    private double heapCameraX;
+    private double heapCameraY;
+    private double heapCameraZ;
+    private int renderDistance = -1;
+    private int visibilityGeneration;
+    private long droppedTasks;
+    private long staleTasks;
+
+    /**
+     * Updates the camera position and the render distance (in chunks) used for picking the next task.
+     * @param visibilityGeneration the generation of the last frustum visibility update, see {@link RenderChunkSchematicVbo#getVisibilityGeneration()}
+     */
+    public void updateView(double x, double y, double z, int renderDistance, int visibilityGeneration)
+    {
+        List<ChunkCompileTaskGeneratorSchematic> dropped = new ArrayList<>();
+
+        synchronized (this)
+        {
+            double dx = x - this.heapCameraX;
+            double dy = y - this.heapCameraY;
+            double dz = z - this.heapCameraZ;
+            boolean rebuild = dx * dx + dy * dy + dz * dz > REHEAPIFY_DISTANCE_SQ ||
+                              renderDistance != this.renderDistance ||
+                              visibilityGeneration != this.visibilityGeneration;
+
+            this.cameraX = x;
+            this.cameraY = y;
+            this.cameraZ = z;
+            this.renderDistance = renderDistance;
+            this.visibilityGeneration = visibilityGeneration;
+
+            if (rebuild)
+            {
+                this.rebuildHeap(dropped);
+            }
+        }
+
+        this.finishDropped(dropped);
+    }
+
+    public synchronized boolean offer(ChunkCompileTaskGeneratorSchematic task)
+    {
+        QueuedTask queuedTask = new QueuedTask(task, this.getPriority(task.getRenderChunk()));
+        QueuedTask old = this.queuedTasks.put(task, queuedTask);
+
+        if (old != null)
+        {
+            old.removed = true;
+        }
+
+        this.heap.add(queuedTask);
+        this.notifyAll();
+        return true;
+    }
+
+    /**
+     * Removes a task that was finished (for example replaced by a newer task for the same render chunk)
+     * before it got compiled. Such tasks are counted as stale work.
+     * The heap entry is only marked as removed, and it gets skipped when it comes up.
+     */
+    public synchronized boolean remove(ChunkCompileTaskGeneratorSchematic task)
+    {
+        QueuedTask queuedTask = this.queuedTasks.remove(task);
+
+        if (queuedTask != null)
+        {
+            queuedTask.removed = true;
+            ++this.staleTasks;
+            return true;
+        }
+
+        return false;
+    }
+
+    public synchronized int size()
+    {
+        return this.queuedTasks.size();
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return this.queuedTasks.isEmpty();
+    }
+
+    public synchronized long getDroppedTaskCount()
+    {
+        return this.droppedTasks;
+    }
+
+    public synchronized long getStaleTaskCount()
+    {
+        return this.staleTasks;
+    }
+
+    /**
+     * Removes and returns the highest priority task, or null if there are no tasks
+     */
+    @Nullable
+    public ChunkCompileTaskGeneratorSchematic poll()
+    {
+        List<ChunkCompileTaskGeneratorSchematic> dropped = new ArrayList<>();
+        ChunkCompileTaskGeneratorSchematic task;
+
+        synchronized (this)
+        {
+            task = this.pollBest(dropped);
+        }
+
+        this.finishDropped(dropped);
+
+        return task;
+    }
+
+    /**
+     * Removes and returns the highest priority task, waiting for one to become available if necessary
+     */
+    public ChunkCompileTaskGeneratorSchematic take() throws InterruptedException
+    {
+        while (true)
+        {
+            List<ChunkCompileTaskGeneratorSchematic> dropped = new ArrayList<>();
+            ChunkCompileTaskGeneratorSchematic task;
+
+            synchronized (this)
+            {
+                task = this.pollBest(dropped);
+
+                if (task == null && dropped.isEmpty())
+                {
+                    this.wait();
+                }
+            }
+
+            this.finishDropped(dropped);
+
+            if (task != null)
+            {
+                return task;
+            }
+        }
+    }
+
+    @Nullable
+    private ChunkCompileTaskGeneratorSchematic pollBest(List<ChunkCompileTaskGeneratorSchematic> dropped)
+    {
+        QueuedTask queuedTask;
+
+        while ((queuedTask = this.heap.poll()) != null)
+        {
+            if (queuedTask.removed)
+            {
+                continue;
+            }
+
+            ChunkCompileTaskGeneratorSchematic task = queuedTask.task;
+            this.queuedTasks.remove(task);
+
+            if (this.isOutOfRange(task.getRenderChunk()))
+            {
+                dropped.add(task);
+                ++this.droppedTasks;
+                continue;
+            }
+
+            return task;
+        }
+
+        return null;
+    }
+
+    /**
+     * Re-calculates the priorities of all the queued tasks against the current view,
+     * and drops the tasks that are outside of the render distance.
+     */
+    private void rebuildHeap(List<ChunkCompileTaskGeneratorSchematic> dropped)
+    {
+        List<QueuedTask> list = new ArrayList<>(this.queuedTasks.size());
+
+        for (QueuedTask queuedTask : this.heap)
+        {
+            if (queuedTask.removed)
+            {
+                continue;
+            }
+
+            RenderChunkSchematicVbo renderChunk = queuedTask.task.getRenderChunk();
+
+            if (this.isOutOfRange(renderChunk))
+            {
+                this.queuedTasks.remove(queuedTask.task);
+                dropped.add(queuedTask.task);
+                ++this.droppedTasks;
+                continue;
+            }
+
+            queuedTask.priority = this.getPriority(renderChunk);
+            list.add(queuedTask);
+        }
+
+        // The collection constructor heapifies the whole list at once
+        this.heap = new PriorityQueue<>(list);
+        this.heapCameraX = this.cameraX;
+        this.heapCameraY = this.cameraY;
+        this.heapCameraZ = this.cameraZ;
+    }
+
+    private boolean isOutOfRange(RenderChunkSchematicVbo renderChunk)
+    {
+        if (this.renderDistance < 0)
+        {
+            return false;
+        }
+
+        BlockPos pos = renderChunk.getPosition();
+        final int centerChunkX = (int) Math.floor(this.cameraX) >> 4;
+        final int centerChunkZ = (int) Math.floor(this.cameraZ) >> 4;
+
+        return Math.abs((pos.getX() >> 4) - centerChunkX) > this.renderDistance ||
+               Math.abs((pos.getZ() >> 4) - centerChunkZ) > this.renderDistance;
+    }
+
+    private double getPriority(RenderChunkSchematicVbo renderChunk)
+    {
+        BlockPos pos = renderChunk.getPosition();
+        double dx = pos.getX() + 8.0D - this.cameraX;
+        double dy = pos.getY() + 8.0D - this.cameraY;
+        double dz = pos.getZ() + 8.0D - this.cameraZ;
+        double priority = dx * dx + dy * dy + dz * dz;
+
+        if (renderChunk.getVisibilityGeneration() != this.visibilityGeneration)
+        {
+            priority *= OUT_OF_FRUSTUM_PENALTY;
+        }
+
+        return priority;
+    }
+
+    /**
+     * Finishes the dropped tasks. This must not be called while holding the lock of this queue,
+     * because finishing a task takes the task's own lock, which is also held while removing tasks from this queue.
+     */
+    private void finishDropped(List<ChunkCompileTaskGeneratorSchematic> dropped)
+    {
+        for (ChunkCompileTaskGeneratorSchematic task : dropped)
+        {
+            task.finish();
+        }
+    }
+
+    private static class QueuedTask implements Comparable<QueuedTask>
+    {
+        private final ChunkCompileTaskGeneratorSchematic task;
+        private double priority;
+        private boolean removed;
+
+        private QueuedTask(ChunkCompileTaskGeneratorSchematic task, double priority)
+        {
+            this.task = task;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other)
+        {
+            return Double.compare(this.priority, other.priority);
+        }
+    }
+}
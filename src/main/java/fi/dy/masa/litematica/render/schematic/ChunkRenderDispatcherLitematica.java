@@ -3,8 +3,6 @@ package fi.dy.masa.litematica.render.schematic;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import org.apache.logging.log4j.Logger;
 import org.lwjgl.opengl.GL11;
@@ -25,71 +23,150 @@ import net.minecraft.client.renderer.chunk.CompiledChunk;
 import net.minecraft.client.renderer.chunk.RenderChunk;
 import net.minecraft.client.renderer.vertex.VertexBuffer;
 import net.minecraft.util.BlockRenderLayer;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
 import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.render.schematic.RenderChunkSchematicVbo.OverlayRenderType;
 
 public class ChunkRenderDispatcherLitematica
 {
     private static final Logger LOGGER = Litematica.logger;
-    private static final ThreadFactory THREAD_FACTORY = (new ThreadFactoryBuilder()).setNameFormat("Litematica Chunk Batcher %d").setDaemon(true).build();
 
     private final List<Thread> listWorkerThreads = Lists.<Thread>newArrayList();
     private final List<ChunkRenderWorkerLitematica> listThreadedWorkers = new ArrayList<>();
-    private final PriorityBlockingQueue<ChunkCompileTaskGeneratorSchematic> queueChunkUpdates = Queues.newPriorityBlockingQueue();
-    private final BlockingQueue<BufferBuilderCache> queueFreeRenderBuilders;
+    private final ChunkCompileTaskQueue queueChunkUpdates = new ChunkCompileTaskQueue();
+    private final BufferBuilderCachePool renderBuilderPool;
     private final WorldVertexBufferUploader displayListUploader = new WorldVertexBufferUploader();
     private final VertexBufferUploader vertexBufferUploader = new VertexBufferUploader();
     private final Queue<ChunkRenderDispatcherLitematica.PendingUpload> queueChunkUploads = Queues.newPriorityQueue();
     private final ChunkRenderWorkerLitematica renderWorker;
     private final int countRenderBuilders;
+    private final int threadCountConfig;
+    private final int threadPriority;
+    private double lastUploadSortX;
+    private double lastUploadSortY;
+    private double lastUploadSortZ;
 
     public ChunkRenderDispatcherLitematica()
     {
         int threadLimitMemory = Math.max(1, (int)((double)Runtime.getRuntime().maxMemory() * 0.15D) / 10485760);
         int threadLimitCPU = Math.max(1, MathHelper.clamp(Runtime.getRuntime().availableProcessors(), 1, threadLimitMemory / 5));
-        this.countRenderBuilders = MathHelper.clamp(threadLimitCPU * 8, 1, threadLimitMemory);
+        this.threadCountConfig = Configs.Generic.RENDER_THREAD_COUNT.getIntegerValue();
+        this.threadPriority = Configs.Generic.RENDER_THREAD_PRIORITY.getIntegerValue();
 
-        if (threadLimitCPU > 1)
+        // -1 means automatic, where a single available thread means compiling on the main thread
+        int threadCount = this.threadCountConfig >= 0 ? this.threadCountConfig : (threadLimitCPU > 1 ? threadLimitCPU : 0);
+        this.countRenderBuilders = MathHelper.clamp(Math.max(1, threadCount) * 8, 1, threadLimitMemory);
+
+        if (threadCount > 0)
         {
-            Litematica.logger.info("Creating {} render threads", threadLimitCPU);
+            Litematica.logger.info("Creating {} render threads with priority {}", threadCount, this.threadPriority);
+
+            ThreadFactory threadFactory = (new ThreadFactoryBuilder()).setNameFormat("Litematica Chunk Batcher %d")
+                                            .setDaemon(true).setPriority(this.threadPriority).build();
 
-            for (int i = 0; i < threadLimitCPU; ++i)
+            for (int i = 0; i < threadCount; ++i)
             {
                 ChunkRenderWorkerLitematica worker = new ChunkRenderWorkerLitematica(this);
-                Thread thread = THREAD_FACTORY.newThread(worker);
+                Thread thread = threadFactory.newThread(worker);
                 thread.start();
                 this.listThreadedWorkers.add(worker);
                 this.listWorkerThreads.add(thread);
             }
         }
 
-        Litematica.logger.info("Using {} total BufferBuilder caches", this.countRenderBuilders + 1);
+        Litematica.logger.info("Using up to {} total BufferBuilder caches", this.countRenderBuilders + 1);
 
-        this.queueFreeRenderBuilders = Queues.newArrayBlockingQueue(this.countRenderBuilders);
+        // The caches are allocated on demand, and the idle ones are released again
+        this.renderBuilderPool = new BufferBuilderCachePool(this.countRenderBuilders);
 
-        for (int i = 0; i < this.countRenderBuilders; ++i)
+        this.renderWorker = new ChunkRenderWorkerLitematica(this, new BufferBuilderCache());
+    }
+
+    /**
+     * @return true if the render thread options still have the values this dispatcher was created with
+     */
+    public boolean matchesThreadConfigs()
+    {
+        return this.threadCountConfig == Configs.Generic.RENDER_THREAD_COUNT.getIntegerValue() &&
+               this.threadPriority == Configs.Generic.RENDER_THREAD_PRIORITY.getIntegerValue();
+    }
+
+    public String getDebugInfo()
+    {
+        long dropped = this.queueChunkUpdates.getDroppedTaskCount();
+        long stale = this.queueChunkUpdates.getStaleTaskCount();
+        String mainStats = this.renderWorker.getThroughputString();
+
+        if (this.listWorkerThreads.isEmpty())
         {
-            this.queueFreeRenderBuilders.add(new BufferBuilderCache());
+            return String.format("pC: %03d, dC: %d, sC: %d, single-threaded, M: %s", this.queueChunkUpdates.size(), dropped, stale, mainStats);
         }
 
-        this.renderWorker = new ChunkRenderWorkerLitematica(this, new BufferBuilderCache());
+        StringBuilder workerStats = new StringBuilder();
+
+        for (ChunkRenderWorkerLitematica worker : this.listThreadedWorkers)
+        {
+            if (workerStats.length() > 0)
+            {
+                workerStats.append(' ');
+            }
+
+            workerStats.append(worker.getThroughputString());
+        }
+
+        return String.format("pC: %03d, pU: %1d, aB: %s, dC: %d, sC: %d, W: [%s], M: %s", this.queueChunkUpdates.size(), this.queueChunkUploads.size(),
+                this.renderBuilderPool.getOccupancyString(), dropped, stale, workerStats.toString(), mainStats);
     }
 
-    public String getDebugInfo()
+    /**
+     * Updates the camera position and the render distance, which are used to pick the next
+     * compile task, and to drop the tasks of render chunks that have gone out of range.
+     * The pending uploads get re-sorted when the camera has moved far enough.
+     */
+    public void updateView(double x, double y, double z, int renderDistance, int visibilityGeneration)
     {
-        return this.listWorkerThreads.isEmpty() ? String.format("pC: %03d, single-threaded", this.queueChunkUpdates.size()) : String.format("pC: %03d, pU: %1d, aB: %1d", this.queueChunkUpdates.size(), this.queueChunkUploads.size(), this.queueFreeRenderBuilders.size());
+        this.queueChunkUpdates.updateView(x, y, z, renderDistance, visibilityGeneration);
+
+        double dx = x - this.lastUploadSortX;
+        double dy = y - this.lastUploadSortY;
+        double dz = z - this.lastUploadSortZ;
+
+        if (dx * dx + dy * dy + dz * dz > 256.0D)
+        {
+            this.lastUploadSortX = x;
+            this.lastUploadSortY = y;
+            this.lastUploadSortZ = z;
+
+            synchronized (this.queueChunkUploads)
+            {
+                List<ChunkRenderDispatcherLitematica.PendingUpload> list = new ArrayList<>(this.queueChunkUploads);
+                this.queueChunkUploads.clear();
+
+                for (ChunkRenderDispatcherLitematica.PendingUpload upload : list)
+                {
+                    upload.updateDistance(x, y, z);
+                }
+
+                this.queueChunkUploads.addAll(list);
+            }
+        }
     }
 
     public boolean runChunkUploads(long finishTimeNano)
     {
         boolean ranTasks = false;
+        boolean compileWhenIdle = Configs.Generic.RENDER_COMPILE_WHEN_IDLE.getBooleanValue();
+        boolean compileOnMainThread = this.listWorkerThreads.isEmpty() || compileWhenIdle;
+
+        this.renderBuilderPool.trimIdle();
 
         while (true)
         {
             boolean processedTask = false;
 
-            if (this.listWorkerThreads.isEmpty())
+            if (compileOnMainThread && (compileWhenIdle == false || this.isMainThreadIdle(finishTimeNano)))
             {
                 ChunkCompileTaskGeneratorSchematic generator = this.queueChunkUpdates.poll();
 
@@ -126,6 +203,23 @@ public class ChunkRenderDispatcherLitematica
         return ranTasks;
     }
 
+    /**
+     * The main thread is considered idle when there are no pending uploads,
+     * and the frame still has time left.
+     */
+    private boolean isMainThreadIdle(long finishTimeNano)
+    {
+        if (finishTimeNano == 0L || finishTimeNano < System.nanoTime())
+        {
+            return false;
+        }
+
+        synchronized (this.queueChunkUploads)
+        {
+            return this.queueChunkUploads.isEmpty();
+        }
+    }
+
     public boolean updateChunkLater(RenderChunkSchematicVbo renderChunk)
     {
         //if (GuiBase.isCtrlDown()) System.out.printf("updateChunkLater()\n");
@@ -189,35 +283,86 @@ public class ChunkRenderDispatcherLitematica
         return flag;
     }
 
-    public void stopChunkUpdates()
+    public boolean updateOverlayLater(RenderChunkSchematicVbo renderChunk)
     {
-        this.clearChunkUpdates();
-        List<BufferBuilderCache> list = new ArrayList<>();
+        renderChunk.getLockCompileTask().lock();
+        boolean flag;
 
-        while (list.size() != this.countRenderBuilders)
+        try
         {
-            this.runChunkUploads(Long.MAX_VALUE);
+            final ChunkCompileTaskGeneratorSchematic generator = renderChunk.makeCompileTaskOverlaySchematic();
 
-            try
+            // A full rebuild is already pending
+            if (generator == null)
             {
-                list.add(this.allocateRenderBuilder());
+                return true;
             }
-            catch (InterruptedException e)
+
+            generator.addFinishRunnable(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ChunkRenderDispatcherLitematica.this.queueChunkUpdates.remove(generator);
+                }
+            });
+
+            flag = this.queueChunkUpdates.offer(generator);
+
+            if (flag == false)
+            {
+                generator.finish();
+            }
+        }
+        finally
+        {
+            renderChunk.getLockCompileTask().unlock();
+        }
+
+        return flag;
+    }
+
+    public boolean updateOverlayNow(RenderChunkSchematicVbo renderChunk)
+    {
+        renderChunk.getLockCompileTask().lock();
+
+        try
+        {
+            ChunkCompileTaskGeneratorSchematic generator = renderChunk.makeCompileTaskOverlaySchematic();
+
+            if (generator != null)
             {
+                try
+                {
+                    this.renderWorker.processTask(generator);
+                }
+                catch (InterruptedException e)
+                {
+                }
             }
         }
+        finally
+        {
+            renderChunk.getLockCompileTask().unlock();
+        }
+
+        return true;
+    }
 
-        this.queueFreeRenderBuilders.addAll(list);
+    public void stopChunkUpdates()
+    {
+        this.clearChunkUpdates();
+        this.renderBuilderPool.awaitAllFree(() -> this.runChunkUploads(Long.MAX_VALUE));
     }
 
     public void freeRenderBuilder(BufferBuilderCache builderCache)
     {
-        this.queueFreeRenderBuilders.add(builderCache);
+        this.renderBuilderPool.free(builderCache);
     }
 
     public BufferBuilderCache allocateRenderBuilder() throws InterruptedException
     {
-        return this.queueFreeRenderBuilders.take();
+        return this.renderBuilderPool.allocate();
     }
 
     public ChunkCompileTaskGeneratorSchematic getNextChunkUpdate() throws InterruptedException
@@ -291,14 +436,14 @@ public class ChunkRenderDispatcherLitematica
 
             synchronized (this.queueChunkUploads)
             {
-                this.queueChunkUploads.add(new ChunkRenderDispatcherLitematica.PendingUpload(futureTask, distanceSq));
+                this.queueChunkUploads.add(new ChunkRenderDispatcherLitematica.PendingUpload(futureTask, renderChunk, distanceSq));
                 return futureTask;
             }
         }
     }
 
     public ListenableFuture<Object> uploadChunkOverlay(final OverlayRenderType type, final BufferBuilder buffer,
-            final RenderChunkSchematicVbo renderChunk, final CompiledChunkSchematic compiledChunk, final double distanceSq)
+            final RenderChunkSchematicVbo renderChunk, final CompiledOverlaySchematic compiledOverlay, final double distanceSq)
     {
         if (Minecraft.getMinecraft().isCallingFromMinecraftThread())
         {
@@ -309,7 +454,7 @@ public class ChunkRenderDispatcherLitematica
             }
             else
             {
-                this.uploadDisplayList(buffer, ((RenderChunkSchematicList) renderChunk).getOverlayDisplayList(type, compiledChunk), renderChunk);
+                this.uploadDisplayList(buffer, ((RenderChunkSchematicList) renderChunk).getOverlayDisplayList(type, compiledOverlay), renderChunk);
             }
 
             buffer.setTranslation(0.0D, 0.0D, 0.0D);
@@ -323,13 +468,13 @@ public class ChunkRenderDispatcherLitematica
                 @Override
                 public void run()
                 {
-                    ChunkRenderDispatcherLitematica.this.uploadChunkOverlay(type, buffer, renderChunk, compiledChunk, distanceSq);
+                    ChunkRenderDispatcherLitematica.this.uploadChunkOverlay(type, buffer, renderChunk, compiledOverlay, distanceSq);
                 }
             }, null);
 
             synchronized (this.queueChunkUploads)
             {
-                this.queueChunkUploads.add(new ChunkRenderDispatcherLitematica.PendingUpload(futureTask, distanceSq));
+                this.queueChunkUploads.add(new ChunkRenderDispatcherLitematica.PendingUpload(futureTask, renderChunk, distanceSq));
                 return futureTask;
             }
         }
@@ -393,25 +538,36 @@ public class ChunkRenderDispatcherLitematica
             }
         }
 
-        this.queueFreeRenderBuilders.clear();
+        this.renderBuilderPool.clear();
     }
 
     public boolean hasNoFreeRenderBuilders()
     {
-        return this.queueFreeRenderBuilders.isEmpty();
+        return this.renderBuilderPool.hasNoFreeCaches();
     }
 
     public static class PendingUpload implements Comparable<ChunkRenderDispatcherLitematica.PendingUpload>
     {
         private final ListenableFutureTask<Object> uploadTask;
-        private final double distanceSq;
+        private final RenderChunkSchematicVbo renderChunk;
+        private double distanceSq;
 
-        public PendingUpload(ListenableFutureTask<Object> uploadTaskIn, double distanceSqIn)
+        public PendingUpload(ListenableFutureTask<Object> uploadTaskIn, RenderChunkSchematicVbo renderChunk, double distanceSqIn)
         {
             this.uploadTask = uploadTaskIn;
+            this.renderChunk = renderChunk;
             this.distanceSq = distanceSqIn;
         }
 
+        private void updateDistance(double x, double y, double z)
+        {
+            BlockPos pos = this.renderChunk.getPosition();
+            double dx = pos.getX() + 8.0D - x;
+            double dy = pos.getY() + 8.0D - y;
+            double dz = pos.getZ() + 8.0D - z;
+            this.distanceSq = dx * dx + dy * dy + dz * dz;
+        }
+
         public int compareTo(ChunkRenderDispatcherLitematica.PendingUpload other)
         {
             return Doubles.compare(this.distanceSq, other.distanceSq);
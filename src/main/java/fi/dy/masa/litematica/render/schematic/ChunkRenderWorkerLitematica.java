@@ -24,6 +24,14 @@ public class ChunkRenderWorkerLitematica implements Runnable
     private final ChunkRenderDispatcherLitematica chunkRenderDispatcher;
     @Nullable private final BufferBuilderCache bufferCache;
     private boolean shouldRun;
+    // The counters are only written by the thread running this worker
+    private volatile long completedTasks;
+    private volatile long busyNanos;
+    // The throughput snapshot, only accessed by the thread building the debug info
+    private long lastStatsTime = System.nanoTime();
+    private long lastCompletedTasks;
+    private long lastBusyNanos;
+    private String statsString = "-";
 
     public ChunkRenderWorkerLitematica(ChunkRenderDispatcherLitematica chunkRenderDispatcherIn)
     {
@@ -93,12 +101,14 @@ public class ChunkRenderWorkerLitematica implements Runnable
         {
             generator.setRegionRenderCacheBuilder(this.getRegionRenderCacheBuilder());
 
+            final long startTime = System.nanoTime();
             ChunkCompileTaskGeneratorSchematic.Type generatorType = generator.getType();
             float x = (float) entity.posX;
             float y = (float) entity.posY + entity.getEyeHeight();
             float z = (float) entity.posZ;
 
-            if (generatorType == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_CHUNK)
+            if (generatorType == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_CHUNK ||
+                generatorType == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_OVERLAY)
             {
                 generator.getRenderChunk().rebuildChunk(x, y, z, generator);
             }
@@ -107,6 +117,9 @@ public class ChunkRenderWorkerLitematica implements Runnable
                 generator.getRenderChunk().resortTransparency(x, y, z, generator);
             }
 
+            this.busyNanos += System.nanoTime() - startTime;
+            this.completedTasks++;
+
             generator.getLock().lock();
 
             try
@@ -147,26 +160,24 @@ public class ChunkRenderWorkerLitematica implements Runnable
                     }
                 }
 
-                for (OverlayRenderType type : OverlayRenderType.values())
-                {
-                    if (compiledChunk.isOverlayTypeEmpty(type) == false)
-                    {
-                        //if (GuiBase.isCtrlDown()) System.out.printf("REBUILD_CHUNK pre uploadChunkOverlay()\n");
-                        BufferBuilder buffer = buffers.getOverlayBuffer(type);
-                        futuresList.add(this.chunkRenderDispatcher.uploadChunkOverlay(type, buffer, renderChunk, compiledChunk, generator.getDistanceSq()));
-                    }
-                }
+                this.uploadOverlays(compiledChunk.getOverlay(), buffers, renderChunk, generator, futuresList);
+            }
+            else if (generatorType == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_OVERLAY)
+            {
+                this.uploadOverlays(generator.getCompiledOverlay(), buffers, renderChunk, generator, futuresList);
             }
             else if (generatorType == ChunkCompileTaskGeneratorSchematic.Type.RESORT_TRANSPARENCY)
             {
                 BufferBuilder buffer = buffers.getWorldRendererByLayer(BlockRenderLayer.TRANSLUCENT);
                 futuresList.add(this.chunkRenderDispatcher.uploadChunkBlocks(BlockRenderLayer.TRANSLUCENT, buffer, renderChunk, compiledChunk, generator.getDistanceSq()));
 
-                if (compiledChunk.isOverlayTypeEmpty(OverlayRenderType.QUAD) == false)
+                CompiledOverlaySchematic compiledOverlay = compiledChunk.getOverlay();
+
+                if (compiledOverlay.isOverlayTypeEmpty(OverlayRenderType.QUAD) == false)
                 {
                     //if (GuiBase.isCtrlDown()) System.out.printf("RESORT_TRANSPARENCY pre uploadChunkOverlay()\n");
                     buffer = buffers.getOverlayBuffer(OverlayRenderType.QUAD);
-                    futuresList.add(this.chunkRenderDispatcher.uploadChunkOverlay(OverlayRenderType.QUAD, buffer, renderChunk, compiledChunk, generator.getDistanceSq()));
+                    futuresList.add(this.chunkRenderDispatcher.uploadChunkOverlay(OverlayRenderType.QUAD, buffer, renderChunk, compiledOverlay, generator.getDistanceSq()));
                 }
             }
 
@@ -213,7 +224,15 @@ public class ChunkRenderWorkerLitematica implements Runnable
                         return;
                     }
 
-                    generator.getRenderChunk().setCompiledChunk(compiledChunk);
+                    if (generatorType == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_OVERLAY)
+                    {
+                        // Only the overlay was rebuilt, swap it into the existing compiled chunk
+                        compiledChunk.setOverlay(generator.getCompiledOverlay());
+                    }
+                    else
+                    {
+                        generator.getRenderChunk().setCompiledChunk(compiledChunk);
+                    }
                 }
 
                 @Override
@@ -230,6 +249,19 @@ public class ChunkRenderWorkerLitematica implements Runnable
         }
     }
 
+    private void uploadOverlays(CompiledOverlaySchematic compiledOverlay, BufferBuilderCache buffers, RenderChunkSchematicVbo renderChunk,
+            ChunkCompileTaskGeneratorSchematic generator, List<ListenableFuture<Object>> futuresList)
+    {
+        for (OverlayRenderType type : OverlayRenderType.values())
+        {
+            if (compiledOverlay.isOverlayTypeEmpty(type) == false)
+            {
+                BufferBuilder buffer = buffers.getOverlayBuffer(type);
+                futuresList.add(this.chunkRenderDispatcher.uploadChunkOverlay(type, buffer, renderChunk, compiledOverlay, generator.getDistanceSq()));
+            }
+        }
+    }
+
     private BufferBuilderCache getRegionRenderCacheBuilder() throws InterruptedException
     {
         return this.bufferCache != null ? this.bufferCache : this.chunkRenderDispatcher.allocateRenderBuilder();
@@ -243,6 +275,31 @@ public class ChunkRenderWorkerLitematica implements Runnable
         }
     }
 
+    /**
+     * Returns the compile throughput of this worker as "tasks per second/busy percentage",
+     * averaged over roughly the last second. Should only be called from one thread.
+     */
+    public String getThroughputString()
+    {
+        long now = System.nanoTime();
+        long elapsed = now - this.lastStatsTime;
+
+        if (elapsed >= 1000000000L)
+        {
+            long completed = this.completedTasks;
+            long busy = this.busyNanos;
+            double tasksPerSecond = (double) (completed - this.lastCompletedTasks) * 1000000000.0D / (double) elapsed;
+            int load = (int) Math.min(100L, (busy - this.lastBusyNanos) * 100L / elapsed);
+
+            this.statsString = String.format("%.0f/%d%%", tasksPerSecond, load);
+            this.lastCompletedTasks = completed;
+            this.lastBusyNanos = busy;
+            this.lastStatsTime = now;
+        }
+
+        return this.statsString;
+    }
+
     public void notifyToStop()
     {
         this.shouldRun = false;
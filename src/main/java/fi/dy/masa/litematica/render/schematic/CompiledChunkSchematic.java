@@ -5,38 +5,36 @@ import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.chunk.CompiledChunk;
 import net.minecraft.util.BlockRenderLayer;
 
+/**
+ * The compiled block geometry of a schematic render chunk, plus a reference
+ * to the current compiled overlay, which can be replaced independently.
+ */
 public class CompiledChunkSchematic extends CompiledChunk
 {
-    private final boolean[] overlayLayersUsed = new boolean[OverlayRenderType.values().length];
-    private final boolean[] overlayLayersStarted = new boolean[OverlayRenderType.values().length];
     private final BufferBuilder.State[] blockBufferStates = new BufferBuilder.State[BlockRenderLayer.values().length];
-    private final BufferBuilder.State[] overlayBufferStates = new BufferBuilder.State[OverlayRenderType.values().length];
-    private boolean overlayEmpty = true;
+    private volatile CompiledOverlaySchematic overlay = new CompiledOverlaySchematic();
 
-    public boolean isOverlayEmpty()
+    public CompiledOverlaySchematic getOverlay()
     {
-        return this.overlayEmpty;
+        return this.overlay;
     }
 
-    protected void setOverlayTypeUsed(OverlayRenderType type)
-    {
-        this.overlayEmpty = false;
-        this.overlayLayersUsed[type.ordinal()] = true;
-    }
-
-    public boolean isOverlayTypeEmpty(OverlayRenderType type)
+    /**
+     * Replaces the overlay part, after an overlay-only rebuild has been uploaded
+     */
+    public void setOverlay(CompiledOverlaySchematic overlay)
     {
-        return this.overlayLayersUsed[type.ordinal()] == false;
+        this.overlay = overlay;
     }
 
-    public void setOverlayTypeStarted(OverlayRenderType type)
+    public boolean isOverlayEmpty()
     {
-        this.overlayLayersStarted[type.ordinal()] = true;
+        return this.overlay.isOverlayEmpty();
     }
 
-    public boolean isOverlayTypeStarted(OverlayRenderType type)
+    public boolean isOverlayTypeEmpty(OverlayRenderType type)
     {
-        return this.overlayLayersStarted[type.ordinal()];
+        return this.overlay.isOverlayTypeEmpty(type);
     }
 
     public BufferBuilder.State getBlockBufferState(BlockRenderLayer layer)
@@ -51,11 +49,6 @@ public class CompiledChunkSchematic extends CompiledChunk
 
     public BufferBuilder.State getOverlayBufferState(OverlayRenderType type)
     {
-        return this.overlayBufferStates[type.ordinal()];
-    }
-
-    public void setOverlayBufferState(OverlayRenderType type, BufferBuilder.State state)
-    {
-        this.overlayBufferStates[type.ordinal()] = state;
+        return this.overlay.getOverlayBufferState(type);
     }
 }
@@ -0,0 +1,53 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import fi.dy.masa.litematica.render.schematic.RenderChunkSchematicVbo.OverlayRenderType;
+import net.minecraft.client.renderer.BufferBuilder;
+
+/**
+ * The compiled mismatch overlay part of a schematic render chunk.
+ * This is kept separate from the block geometry in {@link CompiledChunkSchematic},
+ * so that the overlay can be rebuilt and swapped in on its own when only the client world changes.
+ */
+public class CompiledOverlaySchematic
+{
+    private final boolean[] overlayLayersUsed = new boolean[OverlayRenderType.values().length];
+    private final boolean[] overlayLayersStarted = new boolean[OverlayRenderType.values().length];
+    private final BufferBuilder.State[] overlayBufferStates = new BufferBuilder.State[OverlayRenderType.values().length];
+    private boolean overlayEmpty = true;
+
+    public boolean isOverlayEmpty()
+    {
+        return this.overlayEmpty;
+    }
+
+    protected void setOverlayTypeUsed(OverlayRenderType type)
+    {
+        this.overlayEmpty = false;
+        this.overlayLayersUsed[type.ordinal()] = true;
+    }
+
+    public boolean isOverlayTypeEmpty(OverlayRenderType type)
+    {
+        return this.overlayLayersUsed[type.ordinal()] == false;
+    }
+
+    public void setOverlayTypeStarted(OverlayRenderType type)
+    {
+        this.overlayLayersStarted[type.ordinal()] = true;
+    }
+
+    public boolean isOverlayTypeStarted(OverlayRenderType type)
+    {
+        return this.overlayLayersStarted[type.ordinal()];
+    }
+
+    public BufferBuilder.State getOverlayBufferState(OverlayRenderType type)
+    {
+        return this.overlayBufferStates[type.ordinal()];
+    }
+
+    public void setOverlayBufferState(OverlayRenderType type, BufferBuilder.State state)
+    {
+        this.overlayBufferStates[type.ordinal()] = state;
+    }
+}
@@ -0,0 +1,273 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.Arrays;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import fi.dy.masa.litematica.util.OverlayType;
+import fi.dy.masa.malilib.util.Color4f;
+
+/**
+ * Merges the coplanar overlay faces of the same overlay type within one sub-chunk
+ * into larger quads, and the outlines of those faces into long lines.
+ * The faces are collected into one mask per direction, where each mask is made up of
+ * 16 slices of 16 x 16 cells along the direction's axis. Each cell holds the ordinal
+ * of the face's overlay type, with 0 ({@link OverlayType#NONE}) meaning no face.
+ * Within a slice, the cell index is {@code (v << 4) | u}, where u and v are the two
+ * other axes in the order used by {@link #getMaskIndex(EnumFacing.Axis, int, int, int)}.
+ */
+public class OverlayGreedyMesher
+{
+    private static final OverlayType[] TYPES = OverlayType.values();
+
+    /**
+     * Adds the given side face of the block at the given position to the masks
+     * @param x the x-coordinate relative to the sub-chunk's minimum corner
+     * @param y the y-coordinate relative to the sub-chunk's minimum corner
+     * @param z the z-coordinate relative to the sub-chunk's minimum corner
+     */
+    public static void addFace(byte[][] masks, EnumFacing side, int x, int y, int z, OverlayType type)
+    {
+        masks[side.getIndex()][getMaskIndex(side.getAxis(), x, y, z)] = (byte) type.ordinal();
+    }
+
+    private static int getMaskIndex(EnumFacing.Axis axis, int x, int y, int z)
+    {
+        switch (axis)
+        {
+            case X:     return (x << 8) | (y << 4) | z;
+            case Y:     return (y << 8) | (z << 4) | x;
+            default:    return (z << 8) | (y << 4) | x;
+        }
+    }
+
+    /**
+     * Emits the merged quads for all the faces in the masks, and clears the masks
+     */
+    public static void emitQuads(byte[][] masks, BlockPos posChunk, SchematicRenderSettings settings, BufferBuilder buffer)
+    {
+        for (EnumFacing side : EnumFacing.values())
+        {
+            byte[] mask = masks[side.getIndex()];
+
+            for (int slice = 0; slice < 16; ++slice)
+            {
+                final int base = slice << 8;
+
+                for (int v = 0; v < 16; ++v)
+                {
+                    for (int u = 0; u < 16; )
+                    {
+                        byte t = mask[base | (v << 4) | u];
+
+                        if (t == 0)
+                        {
+                            ++u;
+                            continue;
+                        }
+
+                        // Grow the rectangle first along u, and then along v as long as the whole row matches
+                        int u1 = u + 1;
+
+                        while (u1 < 16 && mask[base | (v << 4) | u1] == t)
+                        {
+                            ++u1;
+                        }
+
+                        int v1 = v + 1;
+
+                        while (v1 < 16 && isRowOfType(mask, base | (v1 << 4), u, u1, t))
+                        {
+                            ++v1;
+                        }
+
+                        for (int vc = v; vc < v1; ++vc)
+                        {
+                            for (int uc = u; uc < u1; ++uc)
+                            {
+                                mask[base | (vc << 4) | uc] = 0;
+                            }
+                        }
+
+                        Color4f color = settings.getOverlayColor(TYPES[t]);
+
+                        if (color != null)
+                        {
+                            addQuad(side, posChunk, slice, u, v, u1, v1, color, buffer);
+                        }
+
+                        u = u1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Emits the merged outline lines around all the same-type areas in the masks, and clears the masks
+     */
+    public static void emitOutlines(byte[][] masks, BlockPos posChunk, SchematicRenderSettings settings, BufferBuilder buffer)
+    {
+        for (EnumFacing side : EnumFacing.values())
+        {
+            byte[] mask = masks[side.getIndex()];
+            final double plane = side.getAxisDirection() == EnumFacing.AxisDirection.POSITIVE ? 1 : 0;
+
+            for (int slice = 0; slice < 16; ++slice)
+            {
+                final int base = slice << 8;
+                final double p = slice + plane;
+
+                // Lines along u, on the v-boundaries between the rows of cells
+                for (int v = 0; v <= 16; ++v)
+                {
+                    for (int dir = -1; dir <= 0; ++dir)
+                    {
+                        // Each boundary line gets checked from the cells on both of its sides
+                        int row = v + dir;
+                        int otherRow = dir == 0 ? v - 1 : v;
+
+                        if (row < 0 || row > 15)
+                        {
+                            continue;
+                        }
+
+                        int u = 0;
+
+                        while (u < 16)
+                        {
+                            byte t = mask[base | (row << 4) | u];
+
+                            if (t == 0 || getCell(mask, base, otherRow, u) == t)
+                            {
+                                ++u;
+                                continue;
+                            }
+
+                            int u1 = u + 1;
+
+                            while (u1 < 16 && mask[base | (row << 4) | u1] == t && getCell(mask, base, otherRow, u1) != t)
+                            {
+                                ++u1;
+                            }
+
+                            Color4f color = settings.getOutlineColor(TYPES[t]);
+
+                            if (color != null)
+                            {
+                                addLine(side, posChunk, p, u, v, u1, v, color, buffer);
+                            }
+
+                            u = u1;
+                        }
+                    }
+                }
+
+                // Lines along v, on the u-boundaries between the columns of cells
+                for (int u = 0; u <= 16; ++u)
+                {
+                    for (int dir = -1; dir <= 0; ++dir)
+                    {
+                        int col = u + dir;
+                        int otherCol = dir == 0 ? u - 1 : u;
+
+                        if (col < 0 || col > 15)
+                        {
+                            continue;
+                        }
+
+                        int v = 0;
+
+                        while (v < 16)
+                        {
+                            byte t = mask[base | (v << 4) | col];
+
+                            if (t == 0 || getCell(mask, base, v, otherCol) == t)
+                            {
+                                ++v;
+                                continue;
+                            }
+
+                            int v1 = v + 1;
+
+                            while (v1 < 16 && mask[base | (v1 << 4) | col] == t && getCell(mask, base, v1, otherCol) != t)
+                            {
+                                ++v1;
+                            }
+
+                            Color4f color = settings.getOutlineColor(TYPES[t]);
+
+                            if (color != null)
+                            {
+                                addLine(side, posChunk, p, u, v, u, v1, color, buffer);
+                            }
+
+                            v = v1;
+                        }
+                    }
+                }
+            }
+
+            Arrays.fill(mask, (byte) 0);
+        }
+    }
+
+    private static boolean isRowOfType(byte[] mask, int rowBase, int u0, int u1, byte type)
+    {
+        for (int u = u0; u < u1; ++u)
+        {
+            if (mask[rowBase | u] != type)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte getCell(byte[] mask, int base, int v, int u)
+    {
+        if (u < 0 || u > 15 || v < 0 || v > 15)
+        {
+            return 0;
+        }
+
+        return mask[base | (v << 4) | u];
+    }
+
+    private static void addQuad(EnumFacing side, BlockPos posChunk, int slice, int u0, int v0, int u1, int v1, Color4f color, BufferBuilder buffer)
+    {
+        double p = slice + (side.getAxisDirection() == EnumFacing.AxisDirection.POSITIVE ? 1 : 0);
+        EnumFacing.Axis axis = side.getAxis();
+
+        addVertex(axis, posChunk, p, u0, v0, color, buffer);
+        addVertex(axis, posChunk, p, u1, v0, color, buffer);
+        addVertex(axis, posChunk, p, u1, v1, color, buffer);
+        addVertex(axis, posChunk, p, u0, v1, color, buffer);
+    }
+
+    private static void addLine(EnumFacing side, BlockPos posChunk, double p, int u0, int v0, int u1, int v1, Color4f color, BufferBuilder buffer)
+    {
+        EnumFacing.Axis axis = side.getAxis();
+
+        addVertex(axis, posChunk, p, u0, v0, color, buffer);
+        addVertex(axis, posChunk, p, u1, v1, color, buffer);
+    }
+
+    /**
+     * Adds a vertex from the mask coordinate space, using the same axis mapping as {@link #getMaskIndex(EnumFacing.Axis, int, int, int)}
+     */
+    private static void addVertex(EnumFacing.Axis axis, BlockPos posChunk, double p, double u, double v, Color4f color, BufferBuilder buffer)
+    {
+        double x, y, z;
+
+        switch (axis)
+        {
+            case X:     x = p; y = v; z = u; break;
+            case Y:     x = u; y = p; z = v; break;
+            default:    x = u; y = v; z = p;
+        }
+
+        buffer.pos(posChunk.getX() + x, posChunk.getY() + y, posChunk.getZ() + z).color(color.r, color.g, color.b, color.a).endVertex();
+    }
+}
@@ -0,0 +1,59 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.Arrays;
+import fi.dy.masa.litematica.util.OverlayType;
+
+/**
+ * Scratch arrays used while meshing the overlay of one schematic render chunk.
+ * There is one instance per compiling thread, instead of one per render chunk,
+ * since there are a lot more render chunks than threads compiling them.
+ */
+public class OverlayMeshingBuffers
+{
+    public static final int GRID_SIZE = 18;
+
+    /** The overlay types of the raw block states in a sub-chunk and the one block margin around it, indexed by {@link #getGridIndex(int, int, int)} */
+    public final OverlayType[] overlayTypeGrid = new OverlayType[GRID_SIZE * GRID_SIZE * GRID_SIZE];
+    public final OverlayType[][][] adjTypes = new OverlayType[3][3][3];
+    /** The overlay side faces collected for the greedy meshing, one mask per direction, see {@link OverlayGreedyMesher} */
+    public final byte[][] sideMasks = new byte[6][4096];
+    /** The overlay outline faces collected for the greedy meshing, one mask per direction */
+    public final byte[][] outlineMasks = new byte[6][4096];
+    public boolean sideMasksUsed;
+    public boolean outlineMasksUsed;
+
+    /**
+     * Clears any faces left over from an earlier compile that did not finish
+     */
+    public void clearMasks()
+    {
+        if (this.sideMasksUsed)
+        {
+            for (byte[] mask : this.sideMasks)
+            {
+                Arrays.fill(mask, (byte) 0);
+            }
+
+            this.sideMasksUsed = false;
+        }
+
+        if (this.outlineMasksUsed)
+        {
+            for (byte[] mask : this.outlineMasks)
+            {
+                Arrays.fill(mask, (byte) 0);
+            }
+
+            this.outlineMasksUsed = false;
+        }
+    }
+
+    /**
+     * @return the grid index for the given position relative to the sub-chunk's minimum corner,
+     * the valid range of each coordinate is -1 to 16
+     */
+    public static int getGridIndex(int x, int y, int z)
+    {
+        return ((y + 1) * GRID_SIZE + z + 1) * GRID_SIZE + x + 1;
+    }
+}
@@ -27,9 +27,9 @@ public class RenderChunkSchematicList extends RenderChunkSchematicVbo
         return compiledChunk.isLayerEmpty(layer) == false ? this.baseDisplayList + layer.ordinal() : -1;
     }
 
-    public int getOverlayDisplayList(OverlayRenderType type, CompiledChunkSchematic compiledChunk)
+    public int getOverlayDisplayList(OverlayRenderType type, CompiledOverlaySchematic compiledOverlay)
     {
-        return compiledChunk.isOverlayTypeEmpty(type) == false ? this.baseOverlay + type.ordinal() : -1;
+        return compiledOverlay.isOverlayTypeEmpty(type) == false ? this.baseOverlay + type.ordinal() : -1;
     }
 
     public void deleteGlResources()
@@ -8,6 +8,7 @@ import java.util.Set;
 import javax.annotation.Nullable;
 import org.lwjgl.opengl.GL11;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Booleans;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.BlockFaceShape;
 import net.minecraft.block.state.IBlockState;
@@ -37,6 +38,7 @@ import fi.dy.masa.litematica.mixin.IMixinCompiledChunk;
 import fi.dy.masa.litematica.render.RenderUtils;
 import fi.dy.masa.litematica.util.OverlayType;
 import fi.dy.masa.litematica.util.PositionUtils;
+import fi.dy.masa.litematica.util.SchematicLodMode;
 import fi.dy.masa.malilib.util.Color4f;
 import fi.dy.masa.malilib.util.IntBoundingBox;
 import fi.dy.masa.malilib.util.LayerRange;
@@ -45,22 +47,17 @@ import fi.dy.masa.malilib.util.SubChunkPos;
 public class RenderChunkSchematicVbo extends RenderChunk
 {
     public static int schematicRenderChunksUpdated;
+    private static final ThreadLocal<OverlayMeshingBuffers> MESHING_BUFFERS = ThreadLocal.withInitial(OverlayMeshingBuffers::new);
 
     private final RenderGlobalSchematic renderGlobal;
     private final VertexBuffer[] vertexBufferOverlay = new VertexBuffer[OverlayRenderType.values().length];
     private final Set<TileEntity> setTileEntities = new HashSet<>();
     private final List<IntBoundingBox> boxes = new ArrayList<>();
-    private final EnumSet<OverlayRenderType> existingOverlays = EnumSet.noneOf(OverlayRenderType.class);
-    private boolean hasOverlay = false;
-    private boolean ignoreFluidsAsExtra;
+    private volatile boolean needsOverlayUpdate;
+    private volatile int visibilityGeneration = -1;
+    @Nullable private volatile SchematicLodMode lodMode;
     private ChunkCompileTaskGeneratorSchematic compileTask;
 
-    private ChunkCacheSchematic schematicWorldView;
-    private ChunkCacheSchematic clientWorldView;
-
-    private CompiledChunkSchematic compiledChunk;
-    private Color4f overlayColor;
-
     public RenderChunkSchematicVbo(World worldIn, RenderGlobal renderGlobalIn, int indexIn)
     {
         super(worldIn, renderGlobalIn, indexIn);
@@ -76,14 +73,58 @@ public class RenderChunkSchematicVbo extends RenderChunk
         }
     }
 
+    /**
+     * Returns true if the currently uploaded compiled chunk has any overlay geometry
+     */
     public boolean hasOverlay()
     {
-        return this.hasOverlay;
+        CompiledChunk compiledChunk = this.getCompiledChunk();
+        return compiledChunk instanceof CompiledChunkSchematic && ((CompiledChunkSchematic) compiledChunk).isOverlayEmpty() == false;
+    }
+
+    /**
+     * Returns the generation of the last frustum visibility update in which this render chunk was visible.
+     * This is used to prioritize the compile tasks of the currently visible render chunks.
+     */
+    public int getVisibilityGeneration()
+    {
+        return this.visibilityGeneration;
+    }
+
+    public void setVisibilityGeneration(int generation)
+    {
+        this.visibilityGeneration = generation;
+    }
+
+    /**
+     * Returns true if only the overlay of this render chunk needs to be rebuilt.
+     * A pending full rebuild ({@link #needsUpdate()}) also covers the overlay.
+     */
+    public boolean needsOverlayUpdate()
+    {
+        return this.needsOverlayUpdate;
+    }
+
+    public void setNeedsOverlayUpdate()
+    {
+        this.needsOverlayUpdate = true;
+    }
+
+    @Override
+    public void clearNeedsUpdate()
+    {
+        super.clearNeedsUpdate();
+
+        this.needsOverlayUpdate = false;
     }
 
-    public EnumSet<OverlayRenderType> getOverlayTypes()
+    /**
+     * @return the LOD mode of the latest compile task of this render chunk, or null if it's built in full detail
+     */
+    @Nullable
+    public SchematicLodMode getLodMode()
     {
-        return this.existingOverlays;
+        return this.lodMode;
     }
 
     public VertexBuffer getOverlayVertexBuffer(OverlayRenderType type)
@@ -141,22 +182,31 @@ public class RenderChunkSchematicVbo extends RenderChunk
         if (Configs.Visuals.ENABLE_SCHEMATIC_OVERLAY.getBooleanValue())
         {
             OverlayRenderType type = OverlayRenderType.QUAD;
-            bufferState = compiledChunk.getOverlayBufferState(type);
+            CompiledOverlaySchematic compiledOverlay = compiledChunk.getOverlay();
+            bufferState = compiledOverlay.getOverlayBufferState(type);
 
-            if (bufferState != null && compiledChunk.isOverlayTypeEmpty(type) == false)
+            if (bufferState != null && compiledOverlay.isOverlayTypeEmpty(type) == false)
             {
                 BufferBuilder buffer = buffers.getOverlayBuffer(type);
 
                 this.preRenderOverlay(buffer, type.getGlMode());
                 buffer.setVertexState(bufferState);
-                this.postRenderOverlay(type, x, y, z, buffer, compiledChunk);
+                this.postRenderOverlay(type, x, y, z, buffer, compiledOverlay);
             }
         }
     }
 
+    /**
+     * Rebuilds the block geometry and the overlay of this render chunk, or for
+     * {@link ChunkCompileTaskGeneratorSchematic.Type#REBUILD_OVERLAY} tasks only the overlay,
+     * in which case the existing block geometry is kept as is.
+     */
     public void rebuildChunk(float x, float y, float z, ChunkCompileTaskGeneratorSchematic generator)
     {
-        this.compiledChunk = new CompiledChunkSchematic();
+        final boolean overlayOnly = generator.getType() == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_OVERLAY;
+        CompiledChunkSchematic compiledChunk = overlayOnly ? null : new CompiledChunkSchematic();
+        CompiledOverlaySchematic compiledOverlay = overlayOnly ? new CompiledOverlaySchematic() : compiledChunk.getOverlay();
+
         generator.getLock().lock();
 
         try
@@ -166,79 +216,315 @@ public class RenderChunkSchematicVbo extends RenderChunk
                 return;
             }
 
-            generator.setCompiledChunk(this.compiledChunk);
+            if (overlayOnly)
+            {
+                generator.setCompiledOverlay(compiledOverlay);
+            }
+            else
+            {
+                generator.setCompiledChunk(compiledChunk);
+            }
         }
         finally
         {
             generator.getLock().unlock();
         }
 
+        // The world views are immutable snapshots captured on the main thread when the task was created
+        ChunkCacheSchematic schematicWorldView = generator.getSchematicWorldView();
+        ChunkCacheSchematic clientWorldView = generator.getClientWorldView();
+        SchematicRenderSettings settings = generator.getRenderSettings();
+
+        if (schematicWorldView == null || clientWorldView == null || settings == null)
+        {
+            return;
+        }
+
         //if (GuiBase.isCtrlDown()) System.out.printf("rebuildChunk pos: %s gen: %s\n", this.getPosition(), generator);
         Set<TileEntity> tileEntities = new HashSet<>();
         BlockPos posChunk = this.getPosition();
         LayerRange range = DataManager.getRenderLayerRange();
-
-        this.existingOverlays.clear();
-        this.hasOverlay = false;
+        List<IntBoundingBox> boxes;
 
         synchronized (this.boxes)
         {
-            if (this.boxes.isEmpty() == false &&
-                (this.schematicWorldView.isEmpty() == false || this.clientWorldView.isEmpty() == false) &&
-                 range.intersects(new SubChunkPos(posChunk.getX() >> 4, posChunk.getY() >> 4, posChunk.getZ() >> 4)))
+            boxes = new ArrayList<>(this.boxes);
+        }
+
+        BufferBuilderCache buffers = generator.getBufferCache();
+        CompileContext ctx = new CompileContext(compiledChunk, compiledOverlay, schematicWorldView, clientWorldView,
+                                                settings, MESHING_BUFFERS.get(), boxes, buffers);
+        ctx.meshingBuffers.clearMasks();
+
+        if (ctx.boxes.isEmpty() == false &&
+            (ctx.schematicWorldView.isEmpty() == false || ctx.clientWorldView.isEmpty() == false) &&
+             range.intersects(new SubChunkPos(posChunk.getX() >> 4, posChunk.getY() >> 4, posChunk.getZ() >> 4)))
+        {
+            boolean[] usedLayers = new boolean[BlockRenderLayer.values().length];
+            SchematicMeshCache meshCache = this.renderGlobal.getMeshCache();
+            SchematicMeshCache.CachedMesh cachedMesh = null;
+            // The tile entity data can change the actual states, and it's not part of the content hash
+            final boolean useCache = overlayOnly == false && meshCache.isEnabled() &&
+                                     schematicWorldView.hasTileEntities() == false && clientWorldView.hasTileEntities() == false;
+            long contentHash = 0;
+
+            if (useCache)
+            {
+                contentHash = this.getMeshContentHash(ctx, range) * 31L + (generator.getLodMode() != null ? generator.getLodMode().ordinal() + 1 : 0);
+                cachedMesh = meshCache.get(posChunk, contentHash);
+            }
+
+            if (cachedMesh != null)
+            {
+                this.restoreCachedMesh(ctx, cachedMesh, usedLayers, tileEntities);
+            }
+            else if (generator.getLodMode() != null)
+            {
+                ++schematicRenderChunksUpdated;
+                this.renderLod(ctx, posChunk, range, generator.getLodMode(), usedLayers);
+            }
+            else
             {
                 ++schematicRenderChunksUpdated;
+                this.renderBoxes(ctx, posChunk, range, usedLayers, tileEntities, overlayOnly);
+            }
 
-                boolean[] usedLayers = new boolean[BlockRenderLayer.values().length];
-                BufferBuilderCache buffers = generator.getBufferCache();
+            // The vertex states need to be captured before finishing the buffers, except for
+            // the translucent ones, which get captured after sorting in the post render methods
+            BufferBuilder.State[] blockStates = useCache && cachedMesh == null ? new BufferBuilder.State[BlockRenderLayer.values().length] : null;
+            BufferBuilder.State[] overlayStates = blockStates != null ? new BufferBuilder.State[OverlayRenderType.values().length] : null;
 
-                for (IntBoundingBox box : this.boxes)
+            if (overlayOnly == false)
+            {
+                for (BlockRenderLayer layerTmp : BlockRenderLayer.values())
                 {
-                    box = range.getClampedBox(box);
-
-                    // The rendered layer(s) don't intersect this sub-volume
-                    if (box == null)
+                    if (usedLayers[layerTmp.ordinal()])
                     {
-                        continue;
+                        ((IMixinCompiledChunk) ctx.compiledChunk).invokeSetLayerUsed(layerTmp);
                     }
 
-                    BlockPos posFrom = new BlockPos(box.minX, box.minY, box.minZ);
-                    BlockPos posTo   = new BlockPos(box.maxX, box.maxY, box.maxZ);
-
-                    for (BlockPos.MutableBlockPos posMutable : BlockPos.getAllInBoxMutable(posFrom, posTo))
+                    if (ctx.compiledChunk.isLayerStarted(layerTmp))
                     {
-                        this.renderBlocksAndOverlay(posMutable, tileEntities, usedLayers, buffers);
+                        BufferBuilder buffer = buffers.getWorldRendererByLayer(layerTmp);
+
+                        if (blockStates != null && usedLayers[layerTmp.ordinal()] && layerTmp != BlockRenderLayer.TRANSLUCENT)
+                        {
+                            blockStates[layerTmp.ordinal()] = buffer.getVertexState();
+                        }
+
+                        this.postRenderBlocks(layerTmp, x, y, z, buffer, ctx.compiledChunk);
+
+                        if (blockStates != null && layerTmp == BlockRenderLayer.TRANSLUCENT)
+                        {
+                            blockStates[layerTmp.ordinal()] = ctx.compiledChunk.getBlockBufferState(layerTmp);
+                        }
                     }
                 }
+            }
 
-                for (BlockRenderLayer layerTmp : BlockRenderLayer.values())
+            if (ctx.hasOverlay)
+            {
+                //if (GuiBase.isCtrlDown()) System.out.printf("postRenderOverlays\n");
+                for (OverlayRenderType type : ctx.existingOverlays)
                 {
-                    if (usedLayers[layerTmp.ordinal()])
+                    if (ctx.compiledOverlay.isOverlayTypeStarted(type))
                     {
-                        ((IMixinCompiledChunk) this.compiledChunk).invokeSetLayerUsed(layerTmp);
-                    }
+                        BufferBuilder buffer = buffers.getOverlayBuffer(type);
+                        ctx.compiledOverlay.setOverlayTypeUsed(type);
 
-                    if (this.compiledChunk.isLayerStarted(layerTmp))
-                    {
-                        this.postRenderBlocks(layerTmp, x, y, z, buffers.getWorldRendererByLayer(layerTmp), this.compiledChunk);
+                        if (overlayStates != null && type != OverlayRenderType.QUAD)
+                        {
+                            overlayStates[type.ordinal()] = buffer.getVertexState();
+                        }
+
+                        this.postRenderOverlay(type, x, y, z, buffer, ctx.compiledOverlay);
+
+                        if (overlayStates != null && type == OverlayRenderType.QUAD)
+                        {
+                            overlayStates[type.ordinal()] = ctx.compiledOverlay.getOverlayBufferState(type);
+                        }
                     }
                 }
+            }
+
+            if (blockStates != null)
+            {
+                List<BlockPos> tileEntityPositions = new ArrayList<>();
 
-                if (this.hasOverlay)
+                for (TileEntity te : ctx.compiledChunk.getTileEntities())
                 {
-                    //if (GuiBase.isCtrlDown()) System.out.printf("postRenderOverlays\n");
-                    for (OverlayRenderType type : this.existingOverlays)
+                    tileEntityPositions.add(te.getPos());
+                }
+
+                meshCache.put(posChunk, contentHash, new SchematicMeshCache.CachedMesh(blockStates, overlayStates, tileEntityPositions));
+            }
+        }
+
+        // The tile entities only change along with the block geometry
+        if (overlayOnly == false)
+        {
+            this.updateGlobalTileEntities(tileEntities);
+        }
+
+        // Don't keep the snapshots around after the compile
+        generator.setWorldViews(null, null);
+    }
+
+    private void renderBoxes(CompileContext ctx, BlockPos posChunk, LayerRange range, boolean[] usedLayers, Set<TileEntity> tileEntities,
+            boolean overlayOnly)
+    {
+        // Layers where both worlds match (for example fully air, or an already completed part of the build)
+        // can't emit any blocks or overlays, so they are skipped without visiting any of their positions
+        boolean[] identicalLayers = ctx.schematicWorldView.getIdenticalLayers(ctx.clientWorldView, posChunk);
+
+        // The neighbor overlay types are only needed for the reduced inner sides and edges
+        if (ctx.settings.overlayEnabled && ctx.settings.overlayReducedInnerSides && Booleans.contains(identicalLayers, false))
+        {
+            this.buildOverlayTypeGrid(ctx, posChunk);
+        }
+
+        for (IntBoundingBox box : ctx.boxes)
+        {
+            box = range.getClampedBox(box);
+
+            // The rendered layer(s) don't intersect this sub-volume
+            if (box == null)
+            {
+                continue;
+            }
+
+            BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+            for (int y = box.minY; y <= box.maxY; ++y)
+            {
+                if (identicalLayers[(y - posChunk.getY()) & 0xF])
+                {
+                    continue;
+                }
+
+                for (int z = box.minZ; z <= box.maxZ; ++z)
+                {
+                    for (int x = box.minX; x <= box.maxX; ++x)
                     {
-                        if (this.compiledChunk.isOverlayTypeStarted(type))
-                        {
-                            this.compiledChunk.setOverlayTypeUsed(type);
-                            this.postRenderOverlay(type, x, y, z, buffers.getOverlayBuffer(type), this.compiledChunk);
-                        }
+                        posMutable.setPos(x, y, z);
+                        this.renderBlocksAndOverlay(ctx, posMutable, tileEntities, usedLayers, overlayOnly == false);
                     }
                 }
             }
         }
 
+        if (ctx.meshingBuffers.sideMasksUsed)
+        {
+            OverlayGreedyMesher.emitQuads(ctx.meshingBuffers.sideMasks, posChunk, ctx.settings, ctx.buffers.getOverlayBuffer(OverlayRenderType.QUAD));
+            ctx.meshingBuffers.sideMasksUsed = false;
+        }
+
+        if (ctx.meshingBuffers.outlineMasksUsed)
+        {
+            OverlayGreedyMesher.emitOutlines(ctx.meshingBuffers.outlineMasks, posChunk, ctx.settings, ctx.buffers.getOverlayBuffer(OverlayRenderType.OUTLINE));
+            ctx.meshingBuffers.outlineMasksUsed = false;
+        }
+    }
+
+    /**
+     * Builds the coarse LOD geometry of this sub-chunk. The overlay and the tile entities are not rendered in the LOD mode.
+     */
+    private void renderLod(CompileContext ctx, BlockPos posChunk, LayerRange range, SchematicLodMode lodMode, boolean[] usedLayers)
+    {
+        List<IntBoundingBox> boxes = new ArrayList<>();
+
+        for (IntBoundingBox box : ctx.boxes)
+        {
+            box = range.getClampedBox(box);
+
+            if (box != null)
+            {
+                boxes.add(box);
+            }
+        }
+
+        BlockRenderLayer layer = ctx.settings.renderBlocksAsTranslucent ? BlockRenderLayer.TRANSLUCENT : BlockRenderLayer.SOLID;
+        BufferBuilder buffer = ctx.buffers.getWorldRendererByLayer(layer);
+
+        ctx.compiledChunk.setLayerStarted(layer);
+        this.preRenderBlocks(buffer, posChunk);
+
+        if (SchematicLodMesher.addLodBoxes(ctx.schematicWorldView, ctx.clientWorldView, ctx.settings, boxes, posChunk, lodMode, buffer))
+        {
+            usedLayers[layer.ordinal()] = true;
+        }
+    }
+
+    /**
+     * Hashes everything that the meshing result depends on, other than the position
+     */
+    private long getMeshContentHash(CompileContext ctx, LayerRange range)
+    {
+        long hash = ctx.schematicWorldView.getContentHash();
+        hash = hash * 0x9E3779B97F4A7C15L + ctx.clientWorldView.getContentHash();
+        hash = hash * 31L + ctx.settings.getMeshHash();
+
+        for (IntBoundingBox box : ctx.boxes)
+        {
+            box = range.getClampedBox(box);
+
+            if (box != null)
+            {
+                hash = hash * 31L + box.minX;
+                hash = hash * 31L + box.minY;
+                hash = hash * 31L + box.minZ;
+                hash = hash * 31L + box.maxX;
+                hash = hash * 31L + box.maxY;
+                hash = hash * 31L + box.maxZ;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Fills the buffers from a cached mesh, instead of meshing the sub-chunk again.
+     * The tile entities are looked up again from the current snapshot.
+     */
+    private void restoreCachedMesh(CompileContext ctx, SchematicMeshCache.CachedMesh mesh, boolean[] usedLayers, Set<TileEntity> tileEntities)
+    {
+        BlockPos posChunk = this.getPosition();
+
+        for (BlockRenderLayer layer : BlockRenderLayer.values())
+        {
+            BufferBuilder.State state = mesh.getBlockState(layer);
+
+            if (state != null)
+            {
+                BufferBuilder buffer = ctx.buffers.getWorldRendererByLayer(layer);
+                ctx.compiledChunk.setLayerStarted(layer);
+                this.preRenderBlocks(buffer, posChunk);
+                buffer.setVertexState(state);
+                usedLayers[layer.ordinal()] = true;
+            }
+        }
+
+        for (OverlayRenderType type : OverlayRenderType.values())
+        {
+            BufferBuilder.State state = mesh.getOverlayState(type);
+
+            if (state != null)
+            {
+                BufferBuilder buffer = ctx.buffers.getOverlayBuffer(type);
+                ctx.compiledOverlay.setOverlayTypeStarted(type);
+                this.preRenderOverlay(ctx, buffer, type);
+                buffer.setVertexState(state);
+            }
+        }
+
+        for (BlockPos pos : mesh.getTileEntityPositions())
+        {
+            this.addTileEntity(ctx, pos, tileEntities);
+        }
+    }
+
+    private void updateGlobalTileEntities(Set<TileEntity> tileEntities)
+    {
         this.getLockCompileTask().lock();
 
         try
@@ -257,12 +543,47 @@ public class RenderChunkSchematicVbo extends RenderChunk
         }
     }
 
-    protected void renderBlocksAndOverlay(BlockPos pos, Set<TileEntity> tileEntities, boolean[] usedLayers, BufferBuilderCache buffers)
+    /**
+     * Classifies all the positions in this sub-chunk and the one block margin around it once,
+     * so that the neighbor lookups for the reduced overlay sides and edges don't need to
+     * re-fetch and re-compare the block states for every block.
+     */
+    private void buildOverlayTypeGrid(CompileContext ctx, BlockPos posChunk)
     {
-        IBlockState stateSchematic = this.schematicWorldView.getBlockState(pos);
-        IBlockState stateClient    = this.clientWorldView.getBlockState(pos);
-        stateSchematic = stateSchematic.getActualState(this.schematicWorldView, pos);
-        stateClient = stateClient.getActualState(this.clientWorldView, pos);
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+        final OverlayType[] grid = ctx.meshingBuffers.overlayTypeGrid;
+        final int baseX = posChunk.getX();
+        final int baseY = posChunk.getY();
+        final int baseZ = posChunk.getZ();
+        int index = 0;
+
+        for (int y = -1; y <= 16; ++y)
+        {
+            for (int z = -1; z <= 16; ++z)
+            {
+                for (int x = -1; x <= 16; ++x, ++index)
+                {
+                    posMutable.setPos(baseX + x, baseY + y, baseZ + z);
+                    IBlockState stateSchematic = ctx.schematicWorldView.getBlockState(posMutable);
+                    IBlockState stateClient    = ctx.clientWorldView.getBlockState(posMutable);
+                    grid[index] = ctx.settings.getOverlayType(stateSchematic, stateClient);
+                }
+            }
+        }
+    }
+
+    private OverlayType getGridOverlayType(CompileContext ctx, BlockPos pos, int offX, int offY, int offZ)
+    {
+        BlockPos posChunk = this.getPosition();
+        return ctx.meshingBuffers.overlayTypeGrid[OverlayMeshingBuffers.getGridIndex(pos.getX() - posChunk.getX() + offX, pos.getY() - posChunk.getY() + offY, pos.getZ() - posChunk.getZ() + offZ)];
+    }
+
+    protected void renderBlocksAndOverlay(CompileContext ctx, BlockPos pos, Set<TileEntity> tileEntities, boolean[] usedLayers, boolean renderBlocks)
+    {
+        IBlockState stateSchematic = ctx.schematicWorldView.getBlockState(pos);
+        IBlockState stateClient    = ctx.clientWorldView.getBlockState(pos);
+        stateSchematic = stateSchematic.getActualState(ctx.schematicWorldView, pos);
+        stateClient = stateClient.getActualState(ctx.clientWorldView, pos);
         Block blockSchematic = stateSchematic.getBlock();
         Block blockClient = stateClient.getBlock();
         boolean clientHasAir = blockClient == Blocks.AIR;
@@ -274,129 +595,138 @@ public class RenderChunkSchematicVbo extends RenderChunk
             return;
         }
 
-        this.overlayColor = null;
+        ctx.overlayColor = null;
 
         // Schematic has a block, client has air
-        if (clientHasAir || (stateSchematic != stateClient && Configs.Visuals.RENDER_COLLIDING_SCHEMATIC_BLOCKS.getBooleanValue()))
+        if (clientHasAir || (stateSchematic != stateClient && ctx.settings.renderCollidingBlocks))
         {
-            if (blockSchematic.hasTileEntity(stateSchematic))
+            // Overlay-only rebuild, the block geometry is kept from the previous full rebuild
+            if (renderBlocks == false)
             {
-                this.addTileEntity(pos, this.compiledChunk, tileEntities);
+                missing = clientHasAir && stateSchematic.getRenderType() != EnumBlockRenderType.INVISIBLE;
             }
-
-            BlockRenderLayer layer = Configs.Visuals.RENDER_BLOCKS_AS_TRANSLUCENT.getBooleanValue() ? BlockRenderLayer.TRANSLUCENT : blockSchematic.getRenderLayer();
-            int layerIndex = layer.ordinal();
-
-            if (stateSchematic.getRenderType() != EnumBlockRenderType.INVISIBLE)
+            else
             {
-                BufferBuilder bufferSchematic = buffers.getWorldRendererByLayerId(layerIndex);
-
-                if (this.compiledChunk.isLayerStarted(layer) == false)
+                if (blockSchematic.hasTileEntity(stateSchematic))
                 {
-                    this.compiledChunk.setLayerStarted(layer);
-                    this.preRenderBlocks(bufferSchematic, this.getPosition());
+                    this.addTileEntity(ctx, pos, tileEntities);
                 }
 
-                usedLayers[layerIndex] |= this.renderGlobal.renderBlock(stateSchematic, pos, this.schematicWorldView, bufferSchematic);
+                BlockRenderLayer layer = ctx.settings.renderBlocksAsTranslucent ? BlockRenderLayer.TRANSLUCENT : blockSchematic.getRenderLayer();
+                int layerIndex = layer.ordinal();
 
-                if (clientHasAir)
+                if (stateSchematic.getRenderType() != EnumBlockRenderType.INVISIBLE)
                 {
-                    missing = true;
+                    BufferBuilder bufferSchematic = ctx.buffers.getWorldRendererByLayerId(layerIndex);
+
+                    if (ctx.compiledChunk.isLayerStarted(layer) == false)
+                    {
+                        ctx.compiledChunk.setLayerStarted(layer);
+                        this.preRenderBlocks(bufferSchematic, this.getPosition());
+                    }
+
+                    usedLayers[layerIndex] |= this.renderGlobal.renderBlock(stateSchematic, pos, ctx.schematicWorldView, bufferSchematic);
+
+                    if (clientHasAir)
+                    {
+                        missing = true;
+                    }
                 }
             }
         }
 
-        if (Configs.Visuals.ENABLE_SCHEMATIC_OVERLAY.getBooleanValue())
+        if (ctx.settings.overlayEnabled)
         {
-            OverlayType type = this.getOverlayType(stateSchematic, stateClient);
+            OverlayType type = this.getOverlayType(ctx, stateSchematic, stateClient);
 
-            this.overlayColor = this.getOverlayColor(type);
+            ctx.overlayColor = this.getOverlayColor(ctx, type);
 
-            if (this.overlayColor != null)
+            if (ctx.overlayColor != null)
             {
-                this.renderOverlay(type, pos, stateSchematic, missing, buffers);
+                this.renderOverlay(ctx, type, pos, stateSchematic, missing);
             }
         }
     }
 
-    protected void renderOverlay(OverlayType type, BlockPos pos, IBlockState stateSchematic, boolean missing, BufferBuilderCache buffers)
+    protected void renderOverlay(CompileContext ctx, OverlayType type, BlockPos pos, IBlockState stateSchematic, boolean missing)
     {
-        if (Configs.Visuals.SCHEMATIC_OVERLAY_ENABLE_SIDES.getBooleanValue())
+        if (ctx.settings.overlaySides)
         {
-            BufferBuilder bufferOverlayQuads = buffers.getOverlayBuffer(OverlayRenderType.QUAD);
+            BufferBuilder bufferOverlayQuads = ctx.buffers.getOverlayBuffer(OverlayRenderType.QUAD);
 
-            if (this.compiledChunk.isOverlayTypeStarted(OverlayRenderType.QUAD) == false)
+            if (ctx.compiledOverlay.isOverlayTypeStarted(OverlayRenderType.QUAD) == false)
             {
-                this.compiledChunk.setOverlayTypeStarted(OverlayRenderType.QUAD);
-                this.preRenderOverlay(bufferOverlayQuads, OverlayRenderType.QUAD);
+                ctx.compiledOverlay.setOverlayTypeStarted(OverlayRenderType.QUAD);
+                this.preRenderOverlay(ctx, bufferOverlayQuads, OverlayRenderType.QUAD);
             }
 
-            if (Configs.Visuals.OVERLAY_REDUCED_INNER_SIDES.getBooleanValue())
+            if (ctx.settings.overlayGreedyMeshing && (missing && ctx.settings.overlayModelSides) == false)
+            {
+                this.addGreedyFaces(ctx, ctx.meshingBuffers.sideMasks, type, pos);
+                ctx.meshingBuffers.sideMasksUsed = true;
+            }
+            else if (ctx.settings.overlayReducedInnerSides)
             {
-                BlockPos.PooledMutableBlockPos posMutable = BlockPos.PooledMutableBlockPos.retain();
-
                 for (int i = 0; i < 6; ++i)
                 {
                     EnumFacing side = PositionUtils.FACING_ALL[i];
-                    posMutable.setPos(pos.getX() + side.getXOffset(), pos.getY() + side.getYOffset(), pos.getZ() + side.getZOffset());
-                    IBlockState adjStateSchematic = this.schematicWorldView.getBlockState(posMutable);
-                    IBlockState adjStateClient    = this.clientWorldView.getBlockState(posMutable);
-
-                    OverlayType typeAdj = this.getOverlayType(adjStateSchematic, adjStateClient);
+                    OverlayType typeAdj = this.getGridOverlayType(ctx, pos, side.getXOffset(), side.getYOffset(), side.getZOffset());
 
                     // Only render the model-based outlines or sides for missing blocks
-                    if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_SIDES.getBooleanValue())
+                    if (missing && ctx.settings.overlayModelSides)
                     {
                         IBakedModel bakedModel = this.renderGlobal.getModelForState(stateSchematic);
 
                         if (type.getRenderPriority() > typeAdj.getRenderPriority() ||
-                            stateSchematic.getBlockFaceShape(this.schematicWorldView, pos, side) != BlockFaceShape.SOLID)
+                            stateSchematic.getBlockFaceShape(ctx.schematicWorldView, pos, side) != BlockFaceShape.SOLID)
                         {
-                            RenderUtils.drawBlockModelQuadOverlayBatched(bakedModel, stateSchematic, pos, side, this.overlayColor, 0, bufferOverlayQuads);
+                            RenderUtils.drawBlockModelQuadOverlayBatched(bakedModel, stateSchematic, pos, side, ctx.overlayColor, 0, bufferOverlayQuads);
                         }
                     }
                     else
                     {
                         if (type.getRenderPriority() > typeAdj.getRenderPriority())
                         {
-                            fi.dy.masa.malilib.render.RenderUtils.drawBlockSpaceSideBatchedQuads(pos, side, this.overlayColor, 0, bufferOverlayQuads);
+                            fi.dy.masa.malilib.render.RenderUtils.drawBlockSpaceSideBatchedQuads(pos, side, ctx.overlayColor, 0, bufferOverlayQuads);
                         }
                     }
                 }
-
-                posMutable.release();
             }
             else
             {
                 // Only render the model-based outlines or sides for missing blocks
-                if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_SIDES.getBooleanValue())
+                if (missing && ctx.settings.overlayModelSides)
                 {
                     IBakedModel bakedModel = this.renderGlobal.getModelForState(stateSchematic);
-                    RenderUtils.drawBlockModelQuadOverlayBatched(bakedModel, stateSchematic, pos, this.overlayColor, 0, bufferOverlayQuads);
+                    RenderUtils.drawBlockModelQuadOverlayBatched(bakedModel, stateSchematic, pos, ctx.overlayColor, 0, bufferOverlayQuads);
                 }
                 else
                 {
-                    fi.dy.masa.malilib.render.RenderUtils.drawBlockSpaceAllSidesBatchedQuads(pos, this.overlayColor, 0, bufferOverlayQuads);
+                    fi.dy.masa.malilib.render.RenderUtils.drawBlockSpaceAllSidesBatchedQuads(pos, ctx.overlayColor, 0, bufferOverlayQuads);
                 }
             }
         }
 
-        if (Configs.Visuals.SCHEMATIC_OVERLAY_ENABLE_OUTLINES.getBooleanValue())
+        if (ctx.settings.overlayOutlines)
         {
-            BufferBuilder bufferOverlayOutlines = buffers.getOverlayBuffer(OverlayRenderType.OUTLINE);
+            BufferBuilder bufferOverlayOutlines = ctx.buffers.getOverlayBuffer(OverlayRenderType.OUTLINE);
 
-            if (this.compiledChunk.isOverlayTypeStarted(OverlayRenderType.OUTLINE) == false)
+            if (ctx.compiledOverlay.isOverlayTypeStarted(OverlayRenderType.OUTLINE) == false)
             {
-                this.compiledChunk.setOverlayTypeStarted(OverlayRenderType.OUTLINE);
-                this.preRenderOverlay(bufferOverlayOutlines, OverlayRenderType.OUTLINE);
+                ctx.compiledOverlay.setOverlayTypeStarted(OverlayRenderType.OUTLINE);
+                this.preRenderOverlay(ctx, bufferOverlayOutlines, OverlayRenderType.OUTLINE);
             }
 
-            this.overlayColor = new Color4f(this.overlayColor.r, this.overlayColor.g, this.overlayColor.b, 1f);
+            ctx.overlayColor = ctx.settings.getOutlineColor(type);
 
-            if (Configs.Visuals.OVERLAY_REDUCED_INNER_SIDES.getBooleanValue())
+            if (ctx.settings.overlayGreedyMeshing && (missing && ctx.settings.overlayModelOutline) == false)
+            {
+                this.addGreedyFaces(ctx, ctx.meshingBuffers.outlineMasks, type, pos);
+                ctx.meshingBuffers.outlineMasksUsed = true;
+            }
+            else if (ctx.settings.overlayReducedInnerSides)
             {
-                OverlayType[][][] adjTypes = new OverlayType[3][3][3];
-                BlockPos.PooledMutableBlockPos posMutable = BlockPos.PooledMutableBlockPos.retain();
+                OverlayType[][][] adjTypes = ctx.meshingBuffers.adjTypes;
 
                 for (int y = 0; y <= 2; ++y)
                 {
@@ -406,10 +736,7 @@ public class RenderChunkSchematicVbo extends RenderChunk
                         {
                             if (x != 1 || y != 1 || z != 1)
                             {
-                                posMutable.setPos(pos.getX() + x - 1, pos.getY() + y - 1, pos.getZ() + z - 1);
-                                IBlockState adjStateSchematic = this.schematicWorldView.getBlockState(posMutable);
-                                IBlockState adjStateClient    = this.clientWorldView.getBlockState(posMutable);
-                                adjTypes[x][y][z] = this.getOverlayType(adjStateSchematic, adjStateClient);
+                                adjTypes[x][y][z] = this.getGridOverlayType(ctx, pos, x - 1, y - 1, z - 1);
                             }
                             else
                             {
@@ -419,45 +746,66 @@ public class RenderChunkSchematicVbo extends RenderChunk
                     }
                 }
 
-                posMutable.release();
-
                 // Only render the model-based outlines or sides for missing blocks
-                if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_OUTLINE.getBooleanValue())
+                if (missing && ctx.settings.overlayModelOutline)
                 {
                     IBakedModel bakedModel = this.renderGlobal.getModelForState(stateSchematic);
 
                     // FIXME: how to implement this correctly here... >_>
                     if (stateSchematic.isFullCube())
                     {
-                        this.renderOverlayReducedEdges(pos, adjTypes, type, bufferOverlayOutlines);
+                        this.renderOverlayReducedEdges(ctx, pos, adjTypes, type, bufferOverlayOutlines);
                     }
                     else
                     {
-                        RenderUtils.drawBlockModelOutlinesBatched(bakedModel, stateSchematic, pos, this.overlayColor, 0, bufferOverlayOutlines);
+                        RenderUtils.drawBlockModelOutlinesBatched(bakedModel, stateSchematic, pos, ctx.overlayColor, 0, bufferOverlayOutlines);
                     }
                 }
                 else
                 {
-                    this.renderOverlayReducedEdges(pos, adjTypes, type, bufferOverlayOutlines);
+                    this.renderOverlayReducedEdges(ctx, pos, adjTypes, type, bufferOverlayOutlines);
                 }
             }
             else
             {
                 // Only render the model-based outlines or sides for missing blocks
-                if (missing && Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_OUTLINE.getBooleanValue())
+                if (missing && ctx.settings.overlayModelOutline)
                 {
                     IBakedModel bakedModel = this.renderGlobal.getModelForState(stateSchematic);
-                    RenderUtils.drawBlockModelOutlinesBatched(bakedModel, stateSchematic, pos, this.overlayColor, 0, bufferOverlayOutlines);
+                    RenderUtils.drawBlockModelOutlinesBatched(bakedModel, stateSchematic, pos, ctx.overlayColor, 0, bufferOverlayOutlines);
                 }
                 else
                 {
-                    fi.dy.masa.malilib.render.RenderUtils.drawBlockSpaceAllOutlinesBatchedLines(pos, this.overlayColor, 0, bufferOverlayOutlines);
+                    fi.dy.masa.malilib.render.RenderUtils.drawBlockSpaceAllOutlinesBatchedLines(pos, ctx.overlayColor, 0, bufferOverlayOutlines);
                 }
             }
         }
     }
 
-    protected void renderOverlayReducedEdges(BlockPos pos, OverlayType[][][] adjTypes, OverlayType typeSelf, BufferBuilder bufferOverlayOutlines)
+    /**
+     * Adds the overlay faces of the given block to the greedy meshing masks.
+     * With the reduced inner sides, only the sides facing a lower priority overlay type are added.
+     */
+    private void addGreedyFaces(CompileContext ctx, byte[][] masks, OverlayType type, BlockPos pos)
+    {
+        BlockPos posChunk = this.getPosition();
+        final int x = pos.getX() - posChunk.getX();
+        final int y = pos.getY() - posChunk.getY();
+        final int z = pos.getZ() - posChunk.getZ();
+
+        for (int i = 0; i < 6; ++i)
+        {
+            EnumFacing side = PositionUtils.FACING_ALL[i];
+
+            if (ctx.settings.overlayReducedInnerSides == false ||
+                type.getRenderPriority() > this.getGridOverlayType(ctx, pos, side.getXOffset(), side.getYOffset(), side.getZOffset()).getRenderPriority())
+            {
+                OverlayGreedyMesher.addFace(masks, side, x, y, z, type);
+            }
+        }
+    }
+
+    protected void renderOverlayReducedEdges(CompileContext ctx, BlockPos pos, OverlayType[][][] adjTypes, OverlayType typeSelf, BufferBuilder bufferOverlayOutlines)
     {
         OverlayType[] neighborTypes = new OverlayType[4];
         Vec3i[] neighborPositions = new Vec3i[4];
@@ -526,7 +874,7 @@ public class RenderChunkSchematicVbo extends RenderChunk
                     if (posTmp.getX() == pos.getX() && posTmp.getY() == pos.getY() && posTmp.getZ() == pos.getZ())
                     {
                         //System.out.printf("plop 2 index: %d, ind: %d, pos: %s, off: %s\n", index, ind, pos, posTmp);
-                        RenderUtils.drawBlockBoxEdgeBatchedLines(pos, axis, corner, this.overlayColor, bufferOverlayOutlines);
+                        RenderUtils.drawBlockBoxEdgeBatchedLines(pos, axis, corner, ctx.overlayColor, bufferOverlayOutlines);
                         lines++;
                     }
                 }
@@ -535,81 +883,20 @@ public class RenderChunkSchematicVbo extends RenderChunk
         //System.out.printf("typeSelf: %s, pos: %s, lines: %d\n", typeSelf, pos, lines);
     }
 
-    protected OverlayType getOverlayType(IBlockState stateSchematic, IBlockState stateClient)
+    protected OverlayType getOverlayType(CompileContext ctx, IBlockState stateSchematic, IBlockState stateClient)
     {
-        if (stateSchematic == stateClient)
-        {
-            return OverlayType.NONE;
-        }
-        else
-        {
-            boolean clientHasAir = stateClient.getBlock() == Blocks.AIR;
-            boolean schematicHasAir = stateSchematic.getBlock() == Blocks.AIR;
-
-            if (schematicHasAir)
-            {
-                return (clientHasAir || (this.ignoreFluidsAsExtra && stateClient.getMaterial().isLiquid())) ? OverlayType.NONE : OverlayType.EXTRA;
-            }
-            else
-            {
-                if (clientHasAir)
-                {
-                    return OverlayType.MISSING;
-                }
-                // Wrong block
-                else if (stateSchematic.getBlock() != stateClient.getBlock())
-                {
-                    return OverlayType.WRONG_BLOCK;
-                }
-                // Wrong state
-                else
-                {
-                    return OverlayType.WRONG_STATE;
-                }
-            }
-        }
+        return ctx.settings.getOverlayType(stateSchematic, stateClient);
     }
 
     @Nullable
-    protected Color4f getOverlayColor(OverlayType overlayType)
+    protected Color4f getOverlayColor(CompileContext ctx, OverlayType overlayType)
     {
-        Color4f overlayColor = null;
-
-        switch (overlayType)
-        {
-            case MISSING:
-                if (Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_MISSING.getBooleanValue())
-                {
-                    overlayColor = Configs.Colors.SCHEMATIC_OVERLAY_COLOR_MISSING.getColor();
-                }
-                break;
-            case EXTRA:
-                if (Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_EXTRA.getBooleanValue())
-                {
-                    overlayColor = Configs.Colors.SCHEMATIC_OVERLAY_COLOR_EXTRA.getColor();
-                }
-                break;
-            case WRONG_BLOCK:
-                if (Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_WRONG_BLOCK.getBooleanValue())
-                {
-                    overlayColor = Configs.Colors.SCHEMATIC_OVERLAY_COLOR_WRONG_BLOCK.getColor();
-                }
-                break;
-            case WRONG_STATE:
-                if (Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_WRONG_STATE.getBooleanValue())
-                {
-                    overlayColor = Configs.Colors.SCHEMATIC_OVERLAY_COLOR_WRONG_STATE.getColor();
-                }
-                break;
-            default:
-        }
-
-        return overlayColor;
+        return ctx.settings.getOverlayColor(overlayType);
     }
 
-    private void addTileEntity(BlockPos pos, CompiledChunk compiledChunk, Set<TileEntity> tileEntities)
+    private void addTileEntity(CompileContext ctx, BlockPos pos, Set<TileEntity> tileEntities)
     {
-        TileEntity te = this.schematicWorldView.getTileEntity(pos, Chunk.EnumCreateEntityType.CHECK);
+        TileEntity te = ctx.schematicWorldView.getTileEntity(pos, Chunk.EnumCreateEntityType.CHECK);
 
         if (te != null)
         {
@@ -617,7 +904,7 @@ public class RenderChunkSchematicVbo extends RenderChunk
 
             if (tesr != null)
             {
-                compiledChunk.addTileEntity(te);
+                ctx.compiledChunk.addTileEntity(te);
 
                 if (tesr.isGlobalRenderer(te))
                 {
@@ -644,10 +931,10 @@ public class RenderChunkSchematicVbo extends RenderChunk
         buffer.finishDrawing();
     }
 
-    private void preRenderOverlay(BufferBuilder buffer, OverlayRenderType type)
+    private void preRenderOverlay(CompileContext ctx, BufferBuilder buffer, OverlayRenderType type)
     {
-        this.existingOverlays.add(type);
-        this.hasOverlay = true;
+        ctx.existingOverlays.add(type);
+        ctx.hasOverlay = true;
 
         BlockPos pos = this.getPosition();
         buffer.begin(type.getGlMode(), DefaultVertexFormats.POSITION_COLOR);
@@ -661,12 +948,12 @@ public class RenderChunkSchematicVbo extends RenderChunk
         buffer.setTranslation(-pos.getX(), -pos.getY(), -pos.getZ());
     }
 
-    private void postRenderOverlay(OverlayRenderType type, float x, float y, float z, BufferBuilder buffer, CompiledChunkSchematic compiledChunk)
+    private void postRenderOverlay(OverlayRenderType type, float x, float y, float z, BufferBuilder buffer, CompiledOverlaySchematic compiledOverlay)
     {
-        if (type == OverlayRenderType.QUAD && compiledChunk.isOverlayTypeEmpty(type) == false)
+        if (type == OverlayRenderType.QUAD && compiledOverlay.isOverlayTypeEmpty(type) == false)
         {
             buffer.sortVertexData(x, y, z);
-            compiledChunk.setOverlayBufferState(type, buffer.getVertexState());
+            compiledOverlay.setOverlayBufferState(type, buffer.getVertexState());
         }
 
         buffer.finishDrawing();
@@ -682,7 +969,9 @@ public class RenderChunkSchematicVbo extends RenderChunk
             //if (GuiBase.isCtrlDown()) System.out.printf("makeCompileTaskChunk()\n");
             this.finishCompileTask();
             this.compileTask = new ChunkCompileTaskGeneratorSchematic(this, ChunkCompileTaskGeneratorSchematic.Type.REBUILD_CHUNK, this.getDistanceSq());
-            this.rebuildWorldView();
+            this.lodMode = this.renderGlobal.getLodModeFor(this);
+            this.compileTask.setLodMode(this.lodMode);
+            this.rebuildWorldView(this.compileTask);
             generator = this.compileTask;
         }
         finally
@@ -693,6 +982,44 @@ public class RenderChunkSchematicVbo extends RenderChunk
         return generator;
     }
 
+    /**
+     * Creates a task that only rebuilds the overlay of this render chunk.
+     * If this render chunk doesn't have any compiled block geometry yet, then a full rebuild task is created instead.
+     * @return the task, or null if a full rebuild is already pending, which will also rebuild the overlay
+     */
+    @Nullable
+    public ChunkCompileTaskGeneratorSchematic makeCompileTaskOverlaySchematic()
+    {
+        this.getLockCompileTask().lock();
+
+        try
+        {
+            // The LOD geometry also depends on the client world, so it always needs a full rebuild
+            if ((this.getCompiledChunk() instanceof CompiledChunkSchematic) == false || this.lodMode != null)
+            {
+                return this.makeCompileTaskChunkSchematic();
+            }
+
+            if (this.compileTask != null &&
+                this.compileTask.getType() == ChunkCompileTaskGeneratorSchematic.Type.REBUILD_CHUNK &&
+                this.compileTask.getStatus() == ChunkCompileTaskGeneratorSchematic.Status.PENDING)
+            {
+                return null;
+            }
+
+            this.finishCompileTask();
+            this.compileTask = new ChunkCompileTaskGeneratorSchematic(this, ChunkCompileTaskGeneratorSchematic.Type.REBUILD_OVERLAY, this.getDistanceSq());
+            this.compileTask.setCompiledChunk(this.getCompiledChunk());
+            this.rebuildWorldView(this.compileTask);
+
+            return this.compileTask;
+        }
+        finally
+        {
+            this.getLockCompileTask().unlock();
+        }
+    }
+
     @Nullable
     public ChunkCompileTaskGeneratorSchematic makeCompileTaskTransparencySchematic()
     {
@@ -700,7 +1027,8 @@ public class RenderChunkSchematicVbo extends RenderChunk
 
         try
         {
-            if (this.compileTask == null || this.compileTask.getStatus() != ChunkCompileTaskGeneratorSchematic.Status.PENDING)
+            if ((this.getCompiledChunk() instanceof CompiledChunkSchematic) &&
+                (this.compileTask == null || this.compileTask.getStatus() != ChunkCompileTaskGeneratorSchematic.Status.PENDING))
             {
                 if (this.compileTask != null && this.compileTask.getStatus() != ChunkCompileTaskGeneratorSchematic.Status.DONE)
                 {
@@ -708,7 +1036,7 @@ public class RenderChunkSchematicVbo extends RenderChunk
                 }
 
                 this.compileTask = new ChunkCompileTaskGeneratorSchematic(this, ChunkCompileTaskGeneratorSchematic.Type.RESORT_TRANSPARENCY, this.getDistanceSq());
-                this.compileTask.setCompiledChunk(this.compiledChunk);
+                this.compileTask.setCompiledChunk(this.getCompiledChunk());
 
                 return this.compileTask;
             }
@@ -739,13 +1067,14 @@ public class RenderChunkSchematicVbo extends RenderChunk
         }
     }
 
-    private void rebuildWorldView()
+    private void rebuildWorldView(ChunkCompileTaskGeneratorSchematic generator)
     {
         synchronized (this.boxes)
         {
-            this.ignoreFluidsAsExtra = Configs.Visuals.IGNORE_FLUIDS_AS_EXTRA.getBooleanValue();
-            this.schematicWorldView = new ChunkCacheSchematic(this.getWorld(), this.getPosition(), 2);
-            this.clientWorldView    = new ChunkCacheSchematic(Minecraft.getMinecraft().world, this.getPosition(), 2);
+            generator.setRenderSettings(SchematicRenderSettings.capture());
+            // Only the schematic blocks get rendered, so the biomes are only needed from the schematic world
+            generator.setWorldViews(new ChunkCacheSchematic(this.getWorld(), this.getPosition(), 2, true),
+                                    new ChunkCacheSchematic(Minecraft.getMinecraft().world, this.getPosition(), 2, false));
 
             BlockPos pos = this.getPosition();
             SubChunkPos subChunk = new SubChunkPos(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
@@ -754,6 +1083,41 @@ public class RenderChunkSchematicVbo extends RenderChunk
         }
     }
 
+    /**
+     * The state of a single compile task. A full rebuild and an overlay-only rebuild of the same
+     * render chunk can run at the same time on different worker threads, so none of this
+     * is stored in the render chunk itself.
+     */
+    protected static class CompileContext
+    {
+        /** The new compiled chunk, or null for the overlay-only rebuilds */
+        @Nullable private final CompiledChunkSchematic compiledChunk;
+        private final CompiledOverlaySchematic compiledOverlay;
+        private final ChunkCacheSchematic schematicWorldView;
+        private final ChunkCacheSchematic clientWorldView;
+        private final SchematicRenderSettings settings;
+        private final OverlayMeshingBuffers meshingBuffers;
+        private final List<IntBoundingBox> boxes;
+        private final BufferBuilderCache buffers;
+        private final EnumSet<OverlayRenderType> existingOverlays = EnumSet.noneOf(OverlayRenderType.class);
+        private boolean hasOverlay;
+        @Nullable private Color4f overlayColor;
+
+        private CompileContext(@Nullable CompiledChunkSchematic compiledChunk, CompiledOverlaySchematic compiledOverlay,
+                ChunkCacheSchematic schematicWorldView, ChunkCacheSchematic clientWorldView, SchematicRenderSettings settings,
+                OverlayMeshingBuffers meshingBuffers, List<IntBoundingBox> boxes, BufferBuilderCache buffers)
+        {
+            this.compiledChunk = compiledChunk;
+            this.compiledOverlay = compiledOverlay;
+            this.schematicWorldView = schematicWorldView;
+            this.clientWorldView = clientWorldView;
+            this.settings = settings;
+            this.meshingBuffers = meshingBuffers;
+            this.boxes = boxes;
+            this.buffers = buffers;
+        }
+    }
+
     public enum OverlayRenderType
     {
         OUTLINE     (GL11.GL_LINES),
@@ -12,10 +12,12 @@ import javax.annotation.Nullable;
 import fi.dy.masa.litematica.Litematica;
 import org.lwjgl.opengl.GL11;
 import com.google.common.collect.Lists;
+import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.data.DataManager;
 import fi.dy.masa.litematica.mixin.IMixinBlockRendererDispatcher;
 import fi.dy.masa.litematica.mixin.IMixinViewFrustum;
 import fi.dy.masa.litematica.render.schematic.RenderChunkSchematicVbo.OverlayRenderType;
+import fi.dy.masa.litematica.util.SchematicLodMode;
 import fi.dy.masa.malilib.render.RenderUtils;
 import fi.dy.masa.malilib.util.LayerRange;
 import fi.dy.masa.malilib.util.SubChunkPos;
@@ -81,6 +83,9 @@ public class RenderGlobalSchematic extends RenderGlobal
     private float lastViewEntityPitch = Float.MIN_VALUE;
     private float lastViewEntityYaw = Float.MIN_VALUE;
     private ChunkRenderDispatcherLitematica renderDispatcher;
+    private final SchematicMeshCache meshCache = new SchematicMeshCache(0);
+    @Nullable private Object meshCacheModelToken;
+    private int visibilityGeneration;
     private ChunkRenderContainerSchematic renderContainer;
     private IRenderChunkFactory renderChunkFactory;
     //private ShaderGroup entityOutlineShader;
@@ -134,7 +139,37 @@ public class RenderGlobalSchematic extends RenderGlobal
     {
         int rcTotal = this.viewFrustum != null ? this.viewFrustum.renderChunks.length : 0;
         int rcRendered = this.viewFrustum != null ? this.getRenderedChunks() : 0;
-        return String.format("C: %d/%d %sD: %d, L: %d, %s", rcRendered, rcTotal, this.mc.renderChunksMany ? "(s) " : "", this.renderDistanceChunks, 0, this.renderDispatcher == null ? "null" : this.renderDispatcher.getDebugInfo());
+        return String.format("C: %d/%d %sD: %d, L: %d, %s, MC: %s", rcRendered, rcTotal, this.mc.renderChunksMany ? "(s) " : "", this.renderDistanceChunks, 0, this.renderDispatcher == null ? "null" : this.renderDispatcher.getDebugInfo(), this.meshCache.getDebugString());
+    }
+
+    /**
+     * Returns the LOD mode that the given render chunk should currently be built with,
+     * or null if it should be built in full detail. The LOD distance has a bit of hysteresis,
+     * so that render chunks right at the boundary don't get rebuilt back and forth.
+     * This should be called on the main thread.
+     */
+    @Nullable
+    public SchematicLodMode getLodModeFor(RenderChunkSchematicVbo renderChunk)
+    {
+        int lodDistance = Configs.Visuals.SCHEMATIC_LOD_DISTANCE.getIntegerValue();
+        Entity entity = this.mc.getRenderViewEntity();
+
+        if (lodDistance <= 0 || entity == null)
+        {
+            return null;
+        }
+
+        BlockPos pos = renderChunk.getPosition();
+        double dx = pos.getX() + 8.0D - entity.posX;
+        double dz = pos.getZ() + 8.0D - entity.posZ;
+        double limit = lodDistance * 16.0D + (renderChunk.getLodMode() != null ? -8.0D : 8.0D);
+
+        return dx * dx + dz * dz > limit * limit ? (SchematicLodMode) Configs.Visuals.SCHEMATIC_LOD_MODE.getOptionListValue() : null;
+    }
+
+    public SchematicMeshCache getMeshCache()
+    {
+        return this.meshCache;
     }
 
     @Override
@@ -200,6 +235,7 @@ public class RenderGlobalSchematic extends RenderGlobal
             }
 
             this.renderDispatcher = null;
+            this.meshCache.clear();
         }
     }
 
@@ -210,11 +246,31 @@ public class RenderGlobalSchematic extends RenderGlobal
 
         if (world != null)
         {
+            // Re-create the dispatcher if the render thread options have been changed
+            if (this.renderDispatcher != null && this.renderDispatcher.matchesThreadConfigs() == false)
+            {
+                this.stopChunkUpdates();
+                this.renderDispatcher.stopWorkerThreads();
+                this.renderDispatcher = null;
+            }
+
             if (this.renderDispatcher == null)
             {
                 this.renderDispatcher = new ChunkRenderDispatcherLitematica();
             }
 
+            // The cached meshes are only valid for the currently loaded block models.
+            // The model manager creates a new missing model on every resource reload.
+            Object modelToken = this.blockModelShapes.getModelManager().getMissingModel();
+
+            if (modelToken != this.meshCacheModelToken)
+            {
+                this.meshCache.clear();
+                this.meshCacheModelToken = modelToken;
+            }
+
+            this.meshCache.setMaxBytes(Configs.Generic.RENDER_MESH_CACHE_SIZE.getIntegerValue() * 1024L * 1024L);
+
             this.displayListEntitiesDirty = true;
             this.renderDistanceChunks = this.mc.gameSettings.renderDistanceChunks;
 
@@ -327,6 +383,7 @@ public class RenderGlobalSchematic extends RenderGlobal
 
                 this.displayListEntitiesDirty = false;
                 this.renderInfos.clear();
+                ++this.visibilityGeneration;
 
                 Entity.setRenderDistanceWeight(MathHelper.clamp((double) renderDistance / 8.0D, 1.0D, 2.5D));
 
@@ -362,6 +419,13 @@ public class RenderGlobalSchematic extends RenderGlobal
                                     renderChunk.setNeedsUpdate(true);
                                 }
 
+                                renderChunk.setVisibilityGeneration(this.visibilityGeneration);
+
+                                // Rebuild the render chunks that have crossed the LOD distance
+                                if (renderChunk.needsUpdate() == false && renderChunk.getLodMode() != this.getLodModeFor(renderChunk)) {
+                                    renderChunk.setNeedsUpdate(false);
+                                }
+
                                 this.renderInfos.add(renderChunk);
                             }
                         }
@@ -371,12 +435,14 @@ public class RenderGlobalSchematic extends RenderGlobal
                 world.profiler.endSection();
             }
 
+            this.renderDispatcher.updateView(x, y, z, renderDistance, this.visibilityGeneration);
+
             world.profiler.endStartSection("rebuild_near");
             Set<RenderChunkSchematicVbo> set = this.chunksToUpdate;
             this.chunksToUpdate = new LinkedHashSet<>();
 
             for (RenderChunkSchematicVbo renderChunkTmp : this.renderInfos) {
-                if (renderChunkTmp.needsUpdate() || set.contains(renderChunkTmp)) {
+                if (renderChunkTmp.needsUpdate() || renderChunkTmp.needsOverlayUpdate() || set.contains(renderChunkTmp)) {
                     this.displayListEntitiesDirty = true;
                     BlockPos pos = renderChunkTmp.getPosition().add(8, 8, 8);
                     boolean isNear = pos.distanceSq(viewPos) < 1024.0D;
@@ -387,7 +453,12 @@ public class RenderGlobalSchematic extends RenderGlobal
                         //if (GuiBase.isCtrlDown()) System.out.printf("====== update now\n");
                         world.profiler.startSection("build_near");
 
-                        this.renderDispatcher.updateChunkNow(renderChunkTmp);
+                        if (renderChunkTmp.needsUpdate() == false && renderChunkTmp.needsOverlayUpdate()) {
+                            this.renderDispatcher.updateOverlayNow(renderChunkTmp);
+                        } else {
+                            this.renderDispatcher.updateChunkNow(renderChunkTmp);
+                        }
+
                         renderChunkTmp.clearNeedsUpdate();
 
                         world.profiler.endSection();
@@ -418,7 +489,12 @@ public class RenderGlobalSchematic extends RenderGlobal
                 RenderChunkSchematicVbo renderChunk = iterator.next();
                 boolean flag;
 
-                if (renderChunk.needsImmediateUpdate())
+                // Only the client world changed, so only the overlay needs to be rebuilt
+                if (renderChunk.needsUpdate() == false && renderChunk.needsOverlayUpdate())
+                {
+                    flag = this.renderDispatcher.updateOverlayLater(renderChunk);
+                }
+                else if (renderChunk.needsImmediateUpdate())
                 {
                     flag = this.renderDispatcher.updateChunkNow(renderChunk);
                 }
@@ -857,6 +933,32 @@ public class RenderGlobalSchematic extends RenderGlobal
         this.markBlocksForUpdate(x1 - 1, y1 - 1, z1 - 1, x2 + 1, y2 + 1, z2 + 1, false);
     }
 
+    /**
+     * Marks the render chunks in the given range (expanded by one block) for an overlay-only rebuild.
+     * This is used when only the client world changed in a way that doesn't affect which schematic blocks get rendered.
+     */
+    public void markBlockRangeForOverlayUpdate(int x1, int y1, int z1, int x2, int y2, int z2)
+    {
+        if (this.viewFrustum != null)
+        {
+            for (int cy = (y1 - 1) >> 4; cy <= (y2 + 1) >> 4; ++cy)
+            {
+                for (int cz = (z1 - 1) >> 4; cz <= (z2 + 1) >> 4; ++cz)
+                {
+                    for (int cx = (x1 - 1) >> 4; cx <= (x2 + 1) >> 4; ++cx)
+                    {
+                        RenderChunk renderChunk = ((IMixinViewFrustum) this.viewFrustum).invokeGetRenderChunk(new BlockPos(cx << 4, cy << 4, cz << 4));
+
+                        if (renderChunk instanceof RenderChunkSchematicVbo)
+                        {
+                            ((RenderChunkSchematicVbo) renderChunk).setNeedsOverlayUpdate();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     private void markBlocksForUpdate(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean updateImmediately)
     {
         if (this.viewFrustum != null)
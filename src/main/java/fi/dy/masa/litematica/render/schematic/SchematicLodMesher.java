@@ -0,0 +1,288 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.List;
+import net.minecraft.block.material.MapColor;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.EnumBlockRenderType;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.client.model.ModelLoader;
+import fi.dy.masa.litematica.util.SchematicLodMode;
+import fi.dy.masa.malilib.util.IntBoundingBox;
+
+/**
+ * Builds the coarse level-of-detail geometry of a far away schematic sub-chunk.
+ * Instead of the block models, the schematic blocks that would be rendered are merged
+ * into either one box per block column, or into cubic cells of 2x2x2 or 4x4x4 blocks.
+ * The boxes are colored by the map color of their top-most block, and are written into
+ * the normal block buffers using the untextured white sprite of the block atlas.
+ */
+public class SchematicLodMesher
+{
+    private static final int DEFAULT_COLOR = 0x808080;
+    /** The vanilla diffuse shading of the faces, indexed by EnumFacing */
+    private static final float[] SHADE = new float[] { 0.5f, 1.0f, 0.8f, 0.8f, 0.6f, 0.6f };
+
+    /**
+     * Adds the LOD boxes for the schematic blocks within the given boxes of the sub-chunk
+     * @param boxes the placement boxes within this sub-chunk, already clamped to the render layer range
+     * @return true if any geometry was added
+     */
+    public static boolean addLodBoxes(ChunkCacheSchematic schematicView, ChunkCacheSchematic clientView, SchematicRenderSettings settings,
+            List<IntBoundingBox> boxes, BlockPos posChunk, SchematicLodMode mode, BufferBuilder buffer)
+    {
+        // The colors of the blocks to render, indexed by (y << 8) | (z << 4) | x, with 0 meaning nothing to render
+        int[] colors = new int[4096];
+        boolean found = false;
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+        for (IntBoundingBox box : boxes)
+        {
+            for (int y = box.minY; y <= box.maxY; ++y)
+            {
+                for (int z = box.minZ; z <= box.maxZ; ++z)
+                {
+                    for (int x = box.minX; x <= box.maxX; ++x)
+                    {
+                        posMutable.setPos(x, y, z);
+                        IBlockState stateSchematic = schematicView.getBlockState(posMutable);
+
+                        if (stateSchematic.getBlock() == Blocks.AIR || stateSchematic.getRenderType() == EnumBlockRenderType.INVISIBLE)
+                        {
+                            continue;
+                        }
+
+                        IBlockState stateClient = clientView.getBlockState(posMutable);
+
+                        // Same condition as for rendering the full block models
+                        if (stateClient.getBlock() == Blocks.AIR || (stateSchematic != stateClient && settings.renderCollidingBlocks))
+                        {
+                            MapColor mapColor = stateSchematic.getMapColor(schematicView, posMutable);
+                            int color = mapColor != null && mapColor.colorValue != 0 ? mapColor.colorValue : DEFAULT_COLOR;
+                            colors[((y & 0xF) << 8) | ((z & 0xF) << 4) | (x & 0xF)] = color | 0xFF000000;
+                            found = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (found == false)
+        {
+            return false;
+        }
+
+        TextureAtlasSprite sprite = ModelLoader.White.INSTANCE;
+        float u = sprite.getInterpolatedU(8.0);
+        float v = sprite.getInterpolatedV(8.0);
+
+        if (mode == SchematicLodMode.COLUMNS)
+        {
+            addColumns(colors, posChunk, u, v, buffer);
+        }
+        else
+        {
+            addCells(colors, posChunk, mode.getCellSize(), u, v, buffer);
+        }
+
+        return true;
+    }
+
+    private static void addColumns(int[] colors, BlockPos posChunk, float u, float v, BufferBuilder buffer)
+    {
+        // The y-range of each column, as (minY << 8) | (maxY + 1), or -1 for empty columns
+        int[] ranges = new int[256];
+        int[] topColors = new int[256];
+
+        for (int z = 0; z < 16; ++z)
+        {
+            for (int x = 0; x < 16; ++x)
+            {
+                int minY = -1;
+                int maxY = -1;
+
+                for (int y = 15; y >= 0; --y)
+                {
+                    int color = colors[(y << 8) | (z << 4) | x];
+
+                    if (color != 0)
+                    {
+                        if (maxY < 0)
+                        {
+                            maxY = y;
+                            topColors[(z << 4) | x] = color;
+                        }
+
+                        minY = y;
+                    }
+                }
+
+                ranges[(z << 4) | x] = maxY >= 0 ? (minY << 8) | (maxY + 1) : -1;
+            }
+        }
+
+        for (int z = 0; z < 16; ++z)
+        {
+            for (int x = 0; x < 16; ++x)
+            {
+                int range = ranges[(z << 4) | x];
+
+                if (range < 0)
+                {
+                    continue;
+                }
+
+                int y0 = range >> 8;
+                int y1 = range & 0xFF;
+
+                for (EnumFacing side : EnumFacing.values())
+                {
+                    // Skip the side faces that are fully covered by the neighboring column
+                    if (side.getAxis() != EnumFacing.Axis.Y)
+                    {
+                        int nx = x + side.getXOffset();
+                        int nz = z + side.getZOffset();
+
+                        if (nx >= 0 && nx < 16 && nz >= 0 && nz < 16)
+                        {
+                            int adj = ranges[(nz << 4) | nx];
+
+                            if (adj >= 0 && (adj >> 8) <= y0 && (adj & 0xFF) >= y1)
+                            {
+                                continue;
+                            }
+                        }
+                    }
+
+                    addFace(side, posChunk, x, y0, z, x + 1, y1, z + 1, topColors[(z << 4) | x], u, v, buffer);
+                }
+            }
+        }
+    }
+
+    private static void addCells(int[] colors, BlockPos posChunk, int cellSize, float u, float v, BufferBuilder buffer)
+    {
+        final int cells = 16 / cellSize;
+        int[] cellColors = new int[cells * cells * cells];
+
+        // Use the color of the top-most block in each cell
+        for (int y = 15; y >= 0; --y)
+        {
+            for (int z = 0; z < 16; ++z)
+            {
+                for (int x = 0; x < 16; ++x)
+                {
+                    int color = colors[(y << 8) | (z << 4) | x];
+
+                    if (color != 0)
+                    {
+                        int index = ((y / cellSize) * cells + z / cellSize) * cells + x / cellSize;
+
+                        if (cellColors[index] == 0)
+                        {
+                            cellColors[index] = color;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int cy = 0; cy < cells; ++cy)
+        {
+            for (int cz = 0; cz < cells; ++cz)
+            {
+                for (int cx = 0; cx < cells; ++cx)
+                {
+                    int color = cellColors[(cy * cells + cz) * cells + cx];
+
+                    if (color == 0)
+                    {
+                        continue;
+                    }
+
+                    for (EnumFacing side : EnumFacing.values())
+                    {
+                        int nx = cx + side.getXOffset();
+                        int ny = cy + side.getYOffset();
+                        int nz = cz + side.getZOffset();
+
+                        // Skip the faces between two filled cells
+                        if (nx >= 0 && nx < cells && ny >= 0 && ny < cells && nz >= 0 && nz < cells &&
+                            cellColors[(ny * cells + nz) * cells + nx] != 0)
+                        {
+                            continue;
+                        }
+
+                        addFace(side, posChunk, cx * cellSize, cy * cellSize, cz * cellSize,
+                                (cx + 1) * cellSize, (cy + 1) * cellSize, (cz + 1) * cellSize, color, u, v, buffer);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addFace(EnumFacing side, BlockPos posChunk, int x0, int y0, int z0, int x1, int y1, int z1,
+            int color, float u, float v, BufferBuilder buffer)
+    {
+        float shade = SHADE[side.getIndex()];
+        int r = (int) (((color >> 16) & 0xFF) * shade);
+        int g = (int) (((color >>  8) & 0xFF) * shade);
+        int b = (int) (( color        & 0xFF) * shade);
+        double minX = posChunk.getX() + x0;
+        double minY = posChunk.getY() + y0;
+        double minZ = posChunk.getZ() + z0;
+        double maxX = posChunk.getX() + x1;
+        double maxY = posChunk.getY() + y1;
+        double maxZ = posChunk.getZ() + z1;
+
+        // Counter-clockwise winding when looking at the face from the outside
+        switch (side)
+        {
+            case DOWN:
+                addVertex(minX, minY, maxZ, r, g, b, u, v, buffer);
+                addVertex(minX, minY, minZ, r, g, b, u, v, buffer);
+                addVertex(maxX, minY, minZ, r, g, b, u, v, buffer);
+                addVertex(maxX, minY, maxZ, r, g, b, u, v, buffer);
+                break;
+            case UP:
+                addVertex(minX, maxY, minZ, r, g, b, u, v, buffer);
+                addVertex(minX, maxY, maxZ, r, g, b, u, v, buffer);
+                addVertex(maxX, maxY, maxZ, r, g, b, u, v, buffer);
+                addVertex(maxX, maxY, minZ, r, g, b, u, v, buffer);
+                break;
+            case NORTH:
+                addVertex(maxX, maxY, minZ, r, g, b, u, v, buffer);
+                addVertex(maxX, minY, minZ, r, g, b, u, v, buffer);
+                addVertex(minX, minY, minZ, r, g, b, u, v, buffer);
+                addVertex(minX, maxY, minZ, r, g, b, u, v, buffer);
+                break;
+            case SOUTH:
+                addVertex(minX, maxY, maxZ, r, g, b, u, v, buffer);
+                addVertex(minX, minY, maxZ, r, g, b, u, v, buffer);
+                addVertex(maxX, minY, maxZ, r, g, b, u, v, buffer);
+                addVertex(maxX, maxY, maxZ, r, g, b, u, v, buffer);
+                break;
+            case WEST:
+                addVertex(minX, maxY, minZ, r, g, b, u, v, buffer);
+                addVertex(minX, minY, minZ, r, g, b, u, v, buffer);
+                addVertex(minX, minY, maxZ, r, g, b, u, v, buffer);
+                addVertex(minX, maxY, maxZ, r, g, b, u, v, buffer);
+                break;
+            case EAST:
+                addVertex(maxX, maxY, maxZ, r, g, b, u, v, buffer);
+                addVertex(maxX, minY, maxZ, r, g, b, u, v, buffer);
+                addVertex(maxX, minY, minZ, r, g, b, u, v, buffer);
+                addVertex(maxX, maxY, minZ, r, g, b, u, v, buffer);
+                break;
+        }
+    }
+
+    private static void addVertex(double x, double y, double z, int r, int g, int b, float u, float v, BufferBuilder buffer)
+    {
+        // Full sky light, the same as for the schematic world blocks
+        buffer.pos(x, y, z).color(r, g, b, 255).tex(u, v).lightmap(240, 0).endVertex();
+    }
+}
@@ -0,0 +1,188 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.util.BlockRenderLayer;
+import net.minecraft.util.math.BlockPos;
+import fi.dy.masa.litematica.render.schematic.RenderChunkSchematicVbo.OverlayRenderType;
+
+/**
+ * A size-limited LRU cache of the CPU-side vertex data of compiled schematic sub-chunks.
+ * The entries are keyed by the sub-chunk position and a hash of everything that
+ * the meshing result depends on (the schematic and client world snapshots, the placement
+ * boxes, the render layer range and the render settings). This allows re-using the previous
+ * meshing results when the render chunks get re-created, for example after changing the
+ * render distance, reloading the renderers or toggling the rendering of a placement.
+ */
+public class SchematicMeshCache
+{
+    private final LinkedHashMap<Key, CachedMesh> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long maxBytes;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    public SchematicMeshCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        this.trim();
+    }
+
+    public synchronized boolean isEnabled()
+    {
+        return this.maxBytes > 0;
+    }
+
+    @Nullable
+    public synchronized CachedMesh get(BlockPos pos, long contentHash)
+    {
+        CachedMesh mesh = this.entries.get(new Key(pos.toLong(), contentHash));
+
+        if (mesh != null)
+        {
+            ++this.hits;
+        }
+        else
+        {
+            ++this.misses;
+        }
+
+        return mesh;
+    }
+
+    public synchronized void put(BlockPos pos, long contentHash, CachedMesh mesh)
+    {
+        // Don't let one huge mesh flush the entire cache
+        if (mesh.sizeBytes > this.maxBytes / 4)
+        {
+            return;
+        }
+
+        CachedMesh old = this.entries.put(new Key(pos.toLong(), contentHash), mesh);
+
+        if (old != null)
+        {
+            this.totalBytes -= old.sizeBytes;
+        }
+
+        this.totalBytes += mesh.sizeBytes;
+        this.trim();
+    }
+
+    public synchronized void clear()
+    {
+        this.entries.clear();
+        this.totalBytes = 0;
+    }
+
+    private void trim()
+    {
+        Iterator<CachedMesh> iter = this.entries.values().iterator();
+
+        while (this.totalBytes > this.maxBytes && iter.hasNext())
+        {
+            this.totalBytes -= iter.next().sizeBytes;
+            iter.remove();
+        }
+    }
+
+    public synchronized String getDebugString()
+    {
+        return String.format("%d (%.1f MB), h: %d, m: %d", this.entries.size(), (double) this.totalBytes / (1024.0 * 1024.0), this.hits, this.misses);
+    }
+
+    private static class Key
+    {
+        private final long pos;
+        private final long contentHash;
+
+        private Key(long pos, long contentHash)
+        {
+            this.pos = pos;
+            this.contentHash = contentHash;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            long h = this.pos * 31L + this.contentHash;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+
+            if (obj == null || this.getClass() != obj.getClass())
+            {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return this.pos == other.pos && this.contentHash == other.contentHash;
+        }
+    }
+
+    /**
+     * The vertex data of the used block layers and overlay types of one compiled sub-chunk,
+     * plus the positions of the tile entities, which are looked up again when the mesh gets re-used.
+     */
+    public static class CachedMesh
+    {
+        private final BufferBuilder.State[] blockStates;
+        private final BufferBuilder.State[] overlayStates;
+        private final List<BlockPos> tileEntityPositions;
+        private final long sizeBytes;
+
+        public CachedMesh(BufferBuilder.State[] blockStates, BufferBuilder.State[] overlayStates, List<BlockPos> tileEntityPositions)
+        {
+            this.blockStates = blockStates;
+            this.overlayStates = overlayStates;
+            this.tileEntityPositions = tileEntityPositions;
+
+            long size = 64L + tileEntityPositions.size() * 32L;
+
+            for (BufferBuilder.State state : blockStates)
+            {
+                size += state != null ? state.getRawBuffer().length * 4L : 0;
+            }
+
+            for (BufferBuilder.State state : overlayStates)
+            {
+                size += state != null ? state.getRawBuffer().length * 4L : 0;
+            }
+
+            this.sizeBytes = size;
+        }
+
+        @Nullable
+        public BufferBuilder.State getBlockState(BlockRenderLayer layer)
+        {
+            return this.blockStates[layer.ordinal()];
+        }
+
+        @Nullable
+        public BufferBuilder.State getOverlayState(OverlayRenderType type)
+        {
+            return this.overlayStates[type.ordinal()];
+        }
+
+        public List<BlockPos> getTileEntityPositions()
+        {
+            return this.tileEntityPositions;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package fi.dy.masa.litematica.render.schematic;
+
+import javax.annotation.Nullable;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.Minecraft;
+import net.minecraft.init.Blocks;
+import fi.dy.masa.litematica.config.Configs;
+import fi.dy.masa.litematica.util.OverlayType;
+import fi.dy.masa.malilib.config.options.ConfigBoolean;
+import fi.dy.masa.malilib.config.options.ConfigColor;
+import fi.dy.masa.malilib.util.Color4f;
+
+/**
+ * An immutable snapshot of the config values that affect the schematic chunk meshing.
+ * This is captured on the main thread when a compile task is created, so that the
+ * render worker threads read consistent values once per rebuild, instead of reading
+ * the live configs separately for every block.
+ */
+public class SchematicRenderSettings
+{
+    public final boolean renderCollidingBlocks;
+    public final boolean renderBlocksAsTranslucent;
+    public final boolean ignoreFluidsAsExtra;
+    public final boolean overlayEnabled;
+    public final boolean overlaySides;
+    public final boolean overlayOutlines;
+    public final boolean overlayReducedInnerSides;
+    public final boolean overlayGreedyMeshing;
+    public final boolean overlayModelSides;
+    public final boolean overlayModelOutline;
+    public final boolean renderTranslucentInnerSides;
+    public final int ambientOcclusion;
+    public final boolean fancyGraphics;
+    private final Color4f[] overlayColors = new Color4f[OverlayType.values().length];
+    private final Color4f[] outlineColors = new Color4f[OverlayType.values().length];
+    private final long meshHash;
+
+    private SchematicRenderSettings()
+    {
+        this.renderCollidingBlocks = Configs.Visuals.RENDER_COLLIDING_SCHEMATIC_BLOCKS.getBooleanValue();
+        this.renderBlocksAsTranslucent = Configs.Visuals.RENDER_BLOCKS_AS_TRANSLUCENT.getBooleanValue();
+        this.ignoreFluidsAsExtra = Configs.Visuals.IGNORE_FLUIDS_AS_EXTRA.getBooleanValue();
+        this.overlayEnabled = Configs.Visuals.ENABLE_SCHEMATIC_OVERLAY.getBooleanValue();
+        this.overlaySides = Configs.Visuals.SCHEMATIC_OVERLAY_ENABLE_SIDES.getBooleanValue();
+        this.overlayOutlines = Configs.Visuals.SCHEMATIC_OVERLAY_ENABLE_OUTLINES.getBooleanValue();
+        this.overlayReducedInnerSides = Configs.Visuals.OVERLAY_REDUCED_INNER_SIDES.getBooleanValue();
+        this.overlayGreedyMeshing = Configs.Visuals.OVERLAY_GREEDY_MESHING.getBooleanValue();
+        this.overlayModelSides = Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_SIDES.getBooleanValue();
+        this.overlayModelOutline = Configs.Visuals.SCHEMATIC_OVERLAY_MODEL_OUTLINE.getBooleanValue();
+        this.renderTranslucentInnerSides = Configs.Visuals.RENDER_TRANSLUCENT_INNER_SIDES.getBooleanValue();
+        // The vanilla block renderer reads these, so the cached meshes depend on them too
+        this.ambientOcclusion = Minecraft.getMinecraft().gameSettings.ambientOcclusion;
+        this.fancyGraphics = Minecraft.getMinecraft().gameSettings.fancyGraphics;
+
+        this.setOverlayColor(OverlayType.MISSING,     Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_MISSING,     Configs.Colors.SCHEMATIC_OVERLAY_COLOR_MISSING);
+        this.setOverlayColor(OverlayType.EXTRA,       Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_EXTRA,       Configs.Colors.SCHEMATIC_OVERLAY_COLOR_EXTRA);
+        this.setOverlayColor(OverlayType.WRONG_BLOCK, Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_WRONG_BLOCK, Configs.Colors.SCHEMATIC_OVERLAY_COLOR_WRONG_BLOCK);
+        this.setOverlayColor(OverlayType.WRONG_STATE, Configs.Visuals.SCHEMATIC_OVERLAY_TYPE_WRONG_STATE, Configs.Colors.SCHEMATIC_OVERLAY_COLOR_WRONG_STATE);
+
+        this.meshHash = this.calculateMeshHash();
+    }
+
+    private long calculateMeshHash()
+    {
+        boolean[] flags = new boolean[] { this.renderCollidingBlocks, this.renderBlocksAsTranslucent, this.ignoreFluidsAsExtra,
+                this.overlayEnabled, this.overlaySides, this.overlayOutlines, this.overlayReducedInnerSides, this.overlayGreedyMeshing,
+                this.overlayModelSides, this.overlayModelOutline, this.renderTranslucentInnerSides, this.fancyGraphics };
+        long hash = this.ambientOcclusion;
+
+        for (boolean flag : flags)
+        {
+            hash = hash * 31L + (flag ? 1 : 0);
+        }
+
+        for (Color4f color : this.overlayColors)
+        {
+            if (color != null)
+            {
+                hash = hash * 31L + Float.floatToIntBits(color.r);
+                hash = hash * 31L + Float.floatToIntBits(color.g);
+                hash = hash * 31L + Float.floatToIntBits(color.b);
+                hash = hash * 31L + Float.floatToIntBits(color.a);
+            }
+            else
+            {
+                hash = hash * 31L - 1;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return a hash of all the values that affect the meshing results, used as part of the compiled mesh cache key
+     */
+    public long getMeshHash()
+    {
+        return this.meshHash;
+    }
+
+    /**
+     * Captures the current config values. This should be called on the main thread.
+     */
+    public static SchematicRenderSettings capture()
+    {
+        return new SchematicRenderSettings();
+    }
+
+    private void setOverlayColor(OverlayType type, ConfigBoolean enabled, ConfigColor color)
+    {
+        if (enabled.getBooleanValue())
+        {
+            Color4f c = color.getColor();
+            this.overlayColors[type.ordinal()] = c;
+            this.outlineColors[type.ordinal()] = new Color4f(c.r, c.g, c.b, 1f);
+        }
+    }
+
+    /**
+     * @return the overlay side color for the given type, or null if that overlay type is disabled
+     */
+    @Nullable
+    public Color4f getOverlayColor(OverlayType type)
+    {
+        return this.overlayColors[type.ordinal()];
+    }
+
+    /**
+     * @return the fully opaque outline color for the given type, or null if that overlay type is disabled
+     */
+    @Nullable
+    public Color4f getOutlineColor(OverlayType type)
+    {
+        return this.outlineColors[type.ordinal()];
+    }
+
+    public OverlayType getOverlayType(IBlockState stateSchematic, IBlockState stateClient)
+    {
+        if (stateSchematic == stateClient)
+        {
+            return OverlayType.NONE;
+        }
+        else
+        {
+            boolean clientHasAir = stateClient.getBlock() == Blocks.AIR;
+            boolean schematicHasAir = stateSchematic.getBlock() == Blocks.AIR;
+
+            if (schematicHasAir)
+            {
+                return (clientHasAir || (this.ignoreFluidsAsExtra && stateClient.getMaterial().isLiquid())) ? OverlayType.NONE : OverlayType.EXTRA;
+            }
+            else
+            {
+                if (clientHasAir)
+                {
+                    return OverlayType.MISSING;
+                }
+                // Wrong block
+                else if (stateSchematic.getBlock() != stateClient.getBlock())
+                {
+                    return OverlayType.WRONG_BLOCK;
+                }
+                // Wrong state
+                else
+                {
+                    return OverlayType.WRONG_STATE;
+                }
+            }
+        }
+    }
+}
@@ -20,8 +20,12 @@ public class ClientTickHandler implements IClientTickHandler
                 DataManager.getRenderLayerRange().setToPosition(mc.player);
             }
 
+            // The schematic world population shares the tick budget with the scheduled tasks
+            TickBudget budget = TickBudget.getInstance();
+            budget.startWork(TaskScheduler.getInstanceClient().getTaskCount() + 1);
             DataManager.getSchematicPlacementManager().processQueuedChunks();
             TaskScheduler.getInstanceClient().runTasks();
+            budget.endWork();
         }
     }
 }
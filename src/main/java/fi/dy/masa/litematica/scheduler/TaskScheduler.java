@@ -51,6 +51,9 @@ public class TaskScheduler
         {
             if (this.tasks.isEmpty() == false)
             {
+                // The budget is only for the client thread, the server instance runs on the integrated server thread
+                TickBudget budget = this == INSTANCE_CLIENT ? TickBudget.getInstance() : null;
+
                 for (int i = 0; i < this.tasks.size(); ++i)
                 {
                     boolean finished = false;
@@ -62,6 +65,12 @@ public class TaskScheduler
                     }
                     else if (task.canExecute() && task.getTimer().tick())
                     {
+                        // Each task gets an equal share of what is left of this tick's budget
+                        if (budget != null)
+                        {
+                            budget.startSlice(this.tasks.size() - i);
+                        }
+
                         finished = task.execute();
                     }
 
@@ -170,6 +179,14 @@ public class TaskScheduler
     }
     */
 
+    public int getTaskCount()
+    {
+        synchronized (this)
+        {
+            return this.tasks.size();
+        }
+    }
+
     public ImmutableList<ITask> getAllTasks()
     {
         synchronized (this)
@@ -183,7 +200,10 @@ public class TaskScheduler
         synchronized (this)
         {
             task.stop();
-            return this.tasks.remove(task);
+
+            // Also remove the task if it was scheduled but not added yet
+            boolean removedPending = this.tasksToAdd.remove(task);
+            return this.tasks.remove(task) || removedPending;
         }
     }
 
@@ -0,0 +1,144 @@
+package fi.dy.masa.litematica.scheduler;
+
+import net.minecraft.client.Minecraft;
+import fi.dy.masa.litematica.config.Configs;
+
+/**
+ * Shares a per-tick time budget between all the chunk processing work that runs on the client thread
+ * (the schematic world population, and the scheduled tasks like saving, counting and verification).
+ * The budget adapts to the measured frame times: if the work made a frame since the previous tick
+ * go over the configured target frame time, then the budget is cut, otherwise it slowly grows
+ * back towards the configured maximum. Only the extra time on top of the smoothed base frame time
+ * (the frame time without the work) counts, so a game that already runs below the target frame rate
+ * does not starve the tasks.
+ */
+public class TickBudget
+{
+    private static final TickBudget INSTANCE = new TickBudget();
+    private static final long MIN_BUDGET_NANOS = 2000000L;
+    private static final long BUDGET_INCREMENT_NANOS = 1000000L;
+
+    // These are only written on the client thread, but they are also read from the other threads
+    private volatile long tickStart;
+    private volatile long tickBudget = 45000000L;
+    private volatile long sliceEnd;
+    private volatile long workStart;
+    private volatile long workTimeInFrame;
+    private volatile long lastFrameStart;
+    private volatile long baseFrameTime;
+    private volatile long maxExtraFrameTimeSinceTick;
+
+    public static TickBudget getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Called at the start of every rendered frame, to measure the frame times
+     */
+    public void onFrameStart()
+    {
+        long now = System.nanoTime();
+
+        if (this.lastFrameStart != 0)
+        {
+            long frameTime = now - this.lastFrameStart;
+            long frameTimeWithoutWork = Math.max(0, frameTime - this.workTimeInFrame);
+
+            if (this.baseFrameTime == 0)
+            {
+                this.baseFrameTime = frameTimeWithoutWork;
+            }
+            else
+            {
+                this.baseFrameTime = (this.baseFrameTime * 7 + frameTimeWithoutWork) / 8;
+            }
+
+            if (this.workTimeInFrame > 0)
+            {
+                this.maxExtraFrameTimeSinceTick = Math.max(this.maxExtraFrameTimeSinceTick, frameTime - this.baseFrameTime);
+            }
+        }
+
+        this.workTimeInFrame = 0;
+        this.lastFrameStart = now;
+    }
+
+    /**
+     * Called at the start of every client tick, to adjust the budget for this tick
+     */
+    public void onClientTickStart()
+    {
+        long maxBudget = (long) Configs.Generic.TASK_MAX_TICK_TIME.getIntegerValue() * 1000000L;
+        long targetFrameTime = 1000000000L / Configs.Generic.TASK_TARGET_FPS.getIntegerValue();
+
+        // If the game alone already misses the target frame rate, the work still gets half of the target frame time
+        long allowedExtraFrameTime = Math.max(targetFrameTime - this.baseFrameTime, targetFrameTime / 2);
+
+        if (this.maxExtraFrameTimeSinceTick > allowedExtraFrameTime)
+        {
+            this.tickBudget = this.tickBudget * 3 / 4;
+        }
+        else
+        {
+            this.tickBudget += BUDGET_INCREMENT_NANOS;
+        }
+
+        this.tickBudget = Math.max(MIN_BUDGET_NANOS, Math.min(maxBudget, this.tickBudget));
+        this.maxExtraFrameTimeSinceTick = 0;
+        this.tickStart = System.nanoTime();
+        this.sliceEnd = this.tickStart + this.tickBudget;
+    }
+
+    public long getTickBudget()
+    {
+        return this.tickBudget;
+    }
+
+    /**
+     * Marks the start of the budgeted work of this tick, and starts the first slice.
+     * @param consumers the number of consumers that need to run during this tick
+     */
+    public void startWork(int consumers)
+    {
+        this.workStart = System.nanoTime();
+        this.startSlice(consumers);
+    }
+
+    /**
+     * Marks the end of the budgeted work of this tick. The time spent is excluded
+     * from the base frame time that the extra frame time is measured against.
+     */
+    public void endWork()
+    {
+        this.workTimeInFrame += System.nanoTime() - this.workStart;
+    }
+
+    /**
+     * Starts a new time slice, which gets an equal share of the remaining budget of this tick.
+     * This must only be called from the client thread.
+     * @param consumers the number of consumers that still need to run during this tick, including the one starting this slice
+     */
+    public void startSlice(int consumers)
+    {
+        long now = System.nanoTime();
+        long remaining = Math.max(0, this.tickStart + this.tickBudget - now);
+        this.sliceEnd = now + remaining / Math.max(1, consumers);
+    }
+
+    /**
+     * Returns true if the current slice still has time left.
+     * The budget only applies to the client thread. On other threads
+     * (for example tasks running on the integrated server) this always returns true.
+     * Callers should still always do at least one unit of work per call, to guarantee progress.
+     */
+    public boolean hasTimeLeft()
+    {
+        if (Minecraft.getMinecraft().isCallingFromMinecraftThread() == false)
+        {
+            return true;
+        }
+
+        return System.nanoTime() < this.sliceEnd;
+    }
+}
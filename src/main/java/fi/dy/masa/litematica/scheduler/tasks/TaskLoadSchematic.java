@@ -0,0 +1,204 @@
+package fi.dy.masa.litematica.scheduler.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.data.SchematicHolder;
+import fi.dy.masa.litematica.render.infohud.InfoHud;
+import fi.dy.masa.litematica.schematic.ISchematicLoadProgress;
+import fi.dy.masa.litematica.schematic.LitematicaSchematic;
+import fi.dy.masa.malilib.gui.GuiBase;
+import fi.dy.masa.malilib.util.StringUtils;
+
+/**
+ * Reads and decodes a Litematica schematic on a worker thread, and then
+ * registers it to the SchematicHolder on the main thread once it has been loaded.
+ * The task can be cancelled by removing it from the scheduler.
+ */
+public class TaskLoadSchematic extends TaskBase implements ISchematicLoadProgress
+{
+    private static final ThreadFactory THREAD_FACTORY = (new ThreadFactoryBuilder()).setNameFormat("Litematica Schematic Loader %d").setDaemon(true).build();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), THREAD_FACTORY);
+
+    private final File file;
+    private final boolean allowDuplicates;
+    private final List<Consumer<LitematicaSchematic>> loadListeners = new ArrayList<>();
+    private final List<Runnable> cancelListeners = new ArrayList<>();
+    @Nullable private Future<LitematicaSchematic> future;
+    private volatile double progress;
+    private volatile boolean cancelled;
+    private boolean listenersNotified;
+
+    /**
+     * @param file the schematic file to load
+     * @param allowDuplicates if false, then an already loaded schematic from the same file is used instead, if one exists
+     */
+    public TaskLoadSchematic(File file, boolean allowDuplicates)
+    {
+        this.file = file;
+        this.allowDuplicates = allowDuplicates;
+        this.name = StringUtils.translate("litematica.gui.label.task_name.load_schematic", file.getName());
+
+        this.updateInfoHudLines();
+        InfoHud.getInstance().addInfoHudRenderer(this, true);
+    }
+
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    public boolean isDone()
+    {
+        return this.future != null && this.future.isDone();
+    }
+
+    /**
+     * Adds a listener that gets called on the main thread when the loading ends.
+     * The listener gets the loaded schematic, or null if the loading failed.
+     * The listeners are not called if the task gets cancelled.
+     */
+    public void addLoadListener(Consumer<LitematicaSchematic> listener)
+    {
+        this.loadListeners.add(listener);
+    }
+
+    /**
+     * Adds a listener that gets called on the main thread if the task gets cancelled
+     * before the loading ends.
+     */
+    public void addCancelListener(Runnable listener)
+    {
+        this.cancelListeners.add(listener);
+    }
+
+    @Override
+    public void init()
+    {
+        final File dir = this.file.getParentFile();
+        final String fileName = this.file.getName();
+
+        this.future = EXECUTOR.submit(() -> LitematicaSchematic.createFromFile(dir, fileName, this));
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return this.cancelled;
+    }
+
+    @Override
+    public void setProgress(double progress)
+    {
+        this.progress = progress;
+    }
+
+    @Override
+    public boolean canExecute()
+    {
+        return this.future != null;
+    }
+
+    @Override
+    public boolean shouldRemove()
+    {
+        return this.cancelled;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        if (this.future.isDone() == false)
+        {
+            this.updateInfoHudLines();
+            return false;
+        }
+
+        LitematicaSchematic schematic = null;
+
+        try
+        {
+            schematic = this.future.get();
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Exception while loading the schematic '{}'", this.file.getAbsolutePath(), e);
+        }
+
+        if (schematic != null)
+        {
+            schematic = this.registerSchematic(schematic);
+        }
+
+        this.finished = schematic != null;
+        this.listenersNotified = true;
+
+        for (Consumer<LitematicaSchematic> listener : this.loadListeners)
+        {
+            listener.accept(schematic);
+        }
+
+        return true;
+    }
+
+    private LitematicaSchematic registerSchematic(LitematicaSchematic schematic)
+    {
+        SchematicHolder holder = SchematicHolder.getInstance();
+
+        if (this.allowDuplicates == false)
+        {
+            // Another load of the same file may have finished while this one was in progress
+            List<LitematicaSchematic> existing = holder.getAllOf(this.file);
+
+            if (existing.isEmpty() == false)
+            {
+                return existing.get(0);
+            }
+        }
+
+        holder.addSchematic(schematic, this.allowDuplicates);
+
+        return schematic;
+    }
+
+    private void updateInfoHudLines()
+    {
+        List<String> hudLines = new ArrayList<>();
+        String pre = GuiBase.TXT_WHITE + GuiBase.TXT_BOLD;
+        String title = StringUtils.translate("litematica.gui.label.schematic_load.progress", this.file.getName(), (int) (this.progress * 100.0));
+        hudLines.add(String.format("%s%s%s", pre, title, GuiBase.TXT_RST));
+
+        this.infoHudLines = hudLines;
+    }
+
+    @Override
+    public void stop()
+    {
+        if (this.finished == false)
+        {
+            this.cancelled = true;
+        }
+
+        if (this.listenersNotified == false)
+        {
+            this.listenersNotified = true;
+
+            for (Runnable listener : this.cancelListeners)
+            {
+                listener.run();
+            }
+        }
+
+        InfoHud.getInstance().removeInfoHudRenderer(this, false);
+
+        super.stop();
+    }
+}
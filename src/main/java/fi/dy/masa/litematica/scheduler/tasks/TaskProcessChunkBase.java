@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Set;
 import com.google.common.collect.ArrayListMultimap;
 import fi.dy.masa.litematica.render.infohud.InfoHud;
+import fi.dy.masa.litematica.scheduler.TickBudget;
 import fi.dy.masa.litematica.selection.Box;
 import fi.dy.masa.litematica.util.PositionUtils;
 import fi.dy.masa.malilib.util.IntBoundingBox;
@@ -40,10 +41,17 @@ public abstract class TaskProcessChunkBase extends TaskBase
         if (this.worldClient != null)
         {
             Iterator<ChunkPos> iter = this.requiredChunks.iterator();
+            TickBudget budget = TickBudget.getInstance();
             int processed = 0;
 
             while (iter.hasNext())
             {
+                // Always process at least one chunk per execution, so that the task makes progress
+                if (processed > 0 && budget.hasTimeLeft() == false)
+                {
+                    break;
+                }
+
                 ChunkPos pos = iter.next();
 
                 if (this.canProcessChunk(pos))
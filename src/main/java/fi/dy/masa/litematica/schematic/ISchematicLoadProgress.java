@@ -0,0 +1,18 @@
+package fi.dy.masa.litematica.schematic;
+
+public interface ISchematicLoadProgress
+{
+    /**
+     * Returns true if the loading should be aborted as soon as possible.
+     * Called from the thread that is loading the schematic.
+     * @return
+     */
+    boolean isCancelled();
+
+    /**
+     * Called from the thread that is loading the schematic,
+     * to report the current progress.
+     * @param progress the progress in the range 0.0 - 1.0
+     */
+    void setProgress(double progress);
+}
@@ -3,12 +3,18 @@ package fi.dy.masa.litematica.schematic;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.tuple.Pair;
 import com.google.common.collect.ImmutableMap;
@@ -37,6 +43,8 @@ import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.NextTickListEntry;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import fi.dy.masa.litematica.Litematica;
 import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.mixin.IMixinDataFixer;
@@ -51,6 +59,7 @@ import fi.dy.masa.litematica.util.PositionUtils;
 import fi.dy.masa.litematica.util.ReplaceBehavior;
 import fi.dy.masa.litematica.util.SchematicUtils;
 import fi.dy.masa.litematica.util.WorldUtils;
+import fi.dy.masa.litematica.world.ChunkSchematic;
 import fi.dy.masa.malilib.gui.Message.MessageType;
 import fi.dy.masa.malilib.interfaces.IStringConsumer;
 import fi.dy.masa.malilib.util.Constants;
@@ -65,6 +74,8 @@ public class LitematicaSchematic
     public static final String FILE_EXTENSION = ".litematic";
     public static final int SCHEMATIC_VERSION = 4;
     public static final int MINECRAFT_DATA_VERSION = ((IMixinDataFixer) Minecraft.getMinecraft().getDataFixer()).getVersion();
+    /** The part of the total load progress that is used by reading and decompressing the file */
+    private static final double READ_PROGRESS_FRACTION = 0.5;
 
     private final Map<String, LitematicaBlockStateContainer> blockContainers = new HashMap<>();
     private final Map<String, Map<BlockPos, NBTTagCompound>> tileEntities = new HashMap<>();
@@ -330,6 +341,10 @@ public class LitematicaSchematic
             mirrorSub = mirrorSub == Mirror.FRONT_BACK ? Mirror.LEFT_RIGHT : Mirror.FRONT_BACK;
         }
 
+        // The transformed states only depend on the palette entry, so they are looked up per palette id
+        final IBlockState[] transformedStates = container.getTransformedPaletteStates(mirrorMain, mirrorSub, rotationCombined);
+        final int paletteSize = transformedStates.length;
+
         Vec3i containerStart = pair.getLeft();
         Vec3i containerEnd = pair.getRight();
         final int startX = containerStart.getX();
@@ -345,7 +360,8 @@ public class LitematicaSchematic
             {
                 for (int x = startX; x <= endX; ++x)
                 {
-                    IBlockState state = container.get(x, y, z);
+                    final int id = container.getPaletteIdUnchecked(x, y, z);
+                    IBlockState state = id < paletteSize ? transformedStates[id] : LitematicaBlockStateContainer.AIR_BLOCK_STATE;
 
                     if (state.getBlock() == Blocks.STRUCTURE_VOID)
                     {
@@ -370,10 +386,6 @@ public class LitematicaSchematic
                         continue;
                     }
 
-                    if (mirrorMain != Mirror.NONE) { state = state.withMirror(mirrorMain); }
-                    if (mirrorSub != Mirror.NONE)  { state = state.withMirror(mirrorSub); }
-                    if (rotationCombined != Rotation.NONE) { state = state.withRotation(rotationCombined); }
-
                     if (stateOld == state)
                     {
                         continue;
@@ -494,6 +506,28 @@ public class LitematicaSchematic
     }
 
     public boolean placeToWorldWithinChunk(World world, ChunkPos chunkPos, SchematicPlacement schematicPlacement, boolean notifyNeighbors)
+    {
+        return this.placeWithinChunk(world, chunkPos, schematicPlacement, null, true, true, notifyNeighbors);
+    }
+
+    /**
+     * Places the blocks and tile entities of this schematic into the given chunk, which has not been added
+     * to the world yet. This can be called from worker threads, as long as the placement is not modified
+     * at the same time. The entities need to be placed separately on the main thread
+     * with placeEntitiesToWorldWithinChunk(), once the chunk has been added to the world.
+     */
+    public boolean placeBlocksToDetachedChunk(ChunkSchematic chunk, SchematicPlacement schematicPlacement)
+    {
+        return this.placeWithinChunk(chunk.getWorld(), chunk.getPos(), schematicPlacement, chunk, true, false, false);
+    }
+
+    public boolean placeEntitiesToWorldWithinChunk(World world, ChunkPos chunkPos, SchematicPlacement schematicPlacement)
+    {
+        return this.placeWithinChunk(world, chunkPos, schematicPlacement, null, false, true, false);
+    }
+
+    private boolean placeWithinChunk(World world, ChunkPos chunkPos, SchematicPlacement schematicPlacement,
+            @Nullable ChunkSchematic detachedChunk, boolean placeBlocks, boolean placeEntities, boolean notifyNeighbors)
     {
         Set<String> regionsTouchingChunk = schematicPlacement.getRegionsTouchingChunk(chunkPos.x, chunkPos.z);
         BlockPos origin = schematicPlacement.getOrigin();
@@ -512,14 +546,17 @@ public class LitematicaSchematic
 
                 if (regionPos != null && regionSize != null && container != null && tileMap != null)
                 {
-                    this.placeBlocksWithinChunk(world, chunkPos, regionName, origin, regionPos, regionSize, schematicPlacement, placement, container, tileMap, notifyNeighbors);
+                    if (placeBlocks)
+                    {
+                        this.placeBlocksWithinChunk(world, chunkPos, regionName, origin, regionPos, regionSize, schematicPlacement, placement, container, tileMap, detachedChunk, notifyNeighbors);
+                    }
                 }
                 else
                 {
                     Litematica.logger.warn("Invalid/missing schematic data in schematic '{}' for sub-region '{}'", this.metadata.getName(), regionName);
                 }
 
-                if (schematicPlacement.ignoreEntities() == false && placement.ignoreEntities() == false && entityList != null)
+                if (placeEntities && schematicPlacement.ignoreEntities() == false && placement.ignoreEntities() == false && entityList != null)
                 {
                     this.placeEntitiesToWorldWithinChunk(world, chunkPos, origin, regionPos, regionSize, schematicPlacement, placement, entityList);
                 }
@@ -532,7 +569,8 @@ public class LitematicaSchematic
     private void placeBlocksWithinChunk(World world, ChunkPos chunkPos, String regionName,
             BlockPos origin, BlockPos regionPos, BlockPos regionSize,
             SchematicPlacement schematicPlacement, SubRegionPlacement placement,
-            LitematicaBlockStateContainer container, Map<BlockPos, NBTTagCompound> tileMap, boolean notifyNeighbors)
+            LitematicaBlockStateContainer container, Map<BlockPos, NBTTagCompound> tileMap,
+            @Nullable ChunkSchematic detachedChunk, boolean notifyNeighbors)
     {
         IntBoundingBox bounds = schematicPlacement.getBoxWithinChunkForRegion(regionName, chunkPos.x, chunkPos.z);
 
@@ -596,32 +634,90 @@ public class LitematicaSchematic
             mirrorSub = mirrorSub == Mirror.FRONT_BACK ? Mirror.LEFT_RIGHT : Mirror.FRONT_BACK;
         }
 
+        // The transformed states only depend on the palette entry, so they are looked up per palette id
+        final IBlockState[] transformedStates = container.getTransformedPaletteStates(mirrorMain, mirrorSub, rotationCombined);
+        final int paletteSize = transformedStates.length;
+        final int rowLength = endX - startX + 1;
+        final int[] rowIds = new int[rowLength];
+
+        // The placement transforms are all axis-aligned, and they don't affect the y-coordinate,
+        // so stepping along the x-axis in the schematic always moves by the same offset in the world.
+        posMutable.setPos(posMinRel.getX() - regionPos.getX(), 0, posMinRel.getZ() - regionPos.getZ());
+        BlockPos stepStart = PositionUtils.getTransformedPlacementPosition(posMutable, schematicPlacement, placement).toImmutable();
+        posMutable.setPos(posMinRel.getX() - regionPos.getX() + 1, 0, posMinRel.getZ() - regionPos.getZ());
+        BlockPos stepEnd = PositionUtils.getTransformedPlacementPosition(posMutable, schematicPlacement, placement);
+        final int stepX = stepEnd.getX() - stepStart.getX();
+        final int stepZ = stepEnd.getZ() - stepStart.getZ();
+
+        // In the schematic world the blocks without tile entities are written directly to the chunk sections
+        Chunk chunk = detachedChunk != null ? detachedChunk : world.getChunk(chunkPos.x, chunkPos.z);
+        final ChunkSchematic chunkSchematic = chunk instanceof ChunkSchematic ? (ChunkSchematic) chunk : null;
+
         for (int y = startY; y <= endY; ++y)
         {
+            final int worldY = posMinRel.getY() + y - regionPos.getY() + regionPosTransformed.getY() + origin.getY();
+            ExtendedBlockStorage section = null;
+
             for (int z = startZ; z <= endZ; ++z)
             {
+                // Decode the whole row at once, instead of doing the bit array lookups per block
+                container.getPaletteIdsInRow(startX, y, z, rowLength, rowIds);
+
+                posMutable.setPos(  posMinRel.getX() + startX - regionPos.getX(),
+                                    posMinRel.getY() + y - regionPos.getY(),
+                                    posMinRel.getZ() + z - regionPos.getZ());
+
+                BlockPos rowStart = PositionUtils.getTransformedPlacementPosition(posMutable, schematicPlacement, placement);
+                final int rowStartX = rowStart.getX() + regionPosTransformed.getX() + origin.getX();
+                final int rowStartZ = rowStart.getZ() + regionPosTransformed.getZ() + origin.getZ();
+
                 for (int x = startX; x <= endX; ++x)
                 {
-                    IBlockState state = container.get(x, y, z);
+                    final int id = rowIds[x - startX];
+                    IBlockState state = id < paletteSize ? transformedStates[id] : LitematicaBlockStateContainer.AIR_BLOCK_STATE;
 
                     if (state.getBlock() == Blocks.AIR)
                     {
                         continue;
                     }
 
+                    final int worldX = rowStartX + (x - startX) * stepX;
+                    final int worldZ = rowStartZ + (x - startX) * stepZ;
+
+                    if (chunkSchematic != null && section == null)
+                    {
+                        // Only create the section once there is something to write to it
+                        section = chunkSchematic.getOrCreateBlockStorage(worldY);
+                    }
+
+                    if (section != null && state.getBlock().hasTileEntity(state) == false)
+                    {
+                        IBlockState stateOld = section.get(worldX & 0xF, worldY & 0xF, worldZ & 0xF);
+
+                        // Replacing a tile entity block needs the tile entity removal in ChunkSchematic#setBlockState()
+                        if (stateOld.getBlock().hasTileEntity(stateOld) == false)
+                        {
+                            section.set(worldX & 0xF, worldY & 0xF, worldZ & 0xF, state);
+                            continue;
+                        }
+                    }
+
                     posMutable.setPos(x, y, z);
                     NBTTagCompound teNBT = tileMap.get(posMutable);
+                    BlockPos pos = new BlockPos(worldX, worldY, worldZ);
 
-                    posMutable.setPos(  posMinRel.getX() + x - regionPos.getX(),
-                                        posMinRel.getY() + y - regionPos.getY(),
-                                        posMinRel.getZ() + z - regionPos.getZ());
+                    if (detachedChunk != null)
+                    {
+                        // The chunk is not in the world yet, so the tile entities are only added to the chunk
+                        TileEntity te = detachedChunk.setBlockStateDetached(pos, state);
 
-                    BlockPos pos = PositionUtils.getTransformedPlacementPosition(posMutable, schematicPlacement, placement);
-                    pos = pos.add(regionPosTransformed).add(origin);
+                        if (te != null && teNBT != null)
+                        {
+                            this.loadTileEntityData(te, teNBT, pos, state, mirrorMain, mirrorSub, rotationCombined);
+                        }
 
-                    if (mirrorMain != Mirror.NONE) { state = state.withMirror(mirrorMain); }
-                    if (mirrorSub != Mirror.NONE)  { state = state.withMirror(mirrorSub); }
-                    if (rotationCombined != Rotation.NONE) { state = state.withRotation(rotationCombined); }
+                        continue;
+                    }
 
                     if (teNBT != null)
                     {
@@ -644,29 +740,18 @@ public class LitematicaSchematic
 
                         if (te != null)
                         {
-                            teNBT = teNBT.copy();
-                            teNBT.setInteger("x", pos.getX());
-                            teNBT.setInteger("y", pos.getY());
-                            teNBT.setInteger("z", pos.getZ());
-
-                            try
-                            {
-                                te.readFromNBT(teNBT);
-
-                                if (mirrorMain != Mirror.NONE) { te.mirror(mirrorMain); }
-                                if (mirrorSub != Mirror.NONE)  { te.mirror(mirrorSub); }
-                                if (rotationCombined != Rotation.NONE) { te.rotate(rotationCombined); }
-                            }
-                            catch (Exception e)
-                            {
-                                Litematica.logger.warn("Failed to load TileEntity data for {} @ {}", state, pos);
-                            }
+                            this.loadTileEntityData(te, teNBT, pos, state, mirrorMain, mirrorSub, rotationCombined);
                         }
                     }
                 }
             }
         }
 
+        if (chunkSchematic != null)
+        {
+            chunkSchematic.markDirty();
+        }
+
         if (notifyNeighbors)
         {
             for (int y = startX; y <= endY; ++y)
@@ -686,6 +771,28 @@ public class LitematicaSchematic
         }
     }
 
+    private void loadTileEntityData(TileEntity te, NBTTagCompound teNBT, BlockPos pos, IBlockState state,
+            Mirror mirrorMain, Mirror mirrorSub, Rotation rotationCombined)
+    {
+        teNBT = teNBT.copy();
+        teNBT.setInteger("x", pos.getX());
+        teNBT.setInteger("y", pos.getY());
+        teNBT.setInteger("z", pos.getZ());
+
+        try
+        {
+            te.readFromNBT(teNBT);
+
+            if (mirrorMain != Mirror.NONE) { te.mirror(mirrorMain); }
+            if (mirrorSub != Mirror.NONE)  { te.mirror(mirrorSub); }
+            if (rotationCombined != Rotation.NONE) { te.rotate(rotationCombined); }
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to load TileEntity data for {} @ {}", state, pos);
+        }
+    }
+
     private void placeEntitiesToWorldWithinChunk(World world, ChunkPos chunkPos, BlockPos origin, BlockPos regionPos, BlockPos regionSize,
             SchematicPlacement schematicPlacement, SubRegionPlacement placement, List<EntityInfo> entityList)
     {
@@ -853,7 +960,7 @@ public class LitematicaSchematic
                     {
                         posMutable.setPos(x + startX, y + startY, z + startZ);
                         IBlockState state = world.getBlockState(posMutable).getActualState(world, posMutable);
-                        container.set(x, y, z, state);
+                        container.setUnchecked(x, y, z, state);
 
                         if (state.getBlock() != Blocks.AIR)
                         {
@@ -967,7 +1074,7 @@ public class LitematicaSchematic
                     {
                         posMutable.setPos(x + offsetX, y + offsetY, z + offsetZ);
                         IBlockState state = world.getBlockState(posMutable).getActualState(world, posMutable);
-                        container.set(x, y, z, state);
+                        container.setUnchecked(x, y, z, state);
 
                         if (state.getBlock() != Blocks.AIR)
                         {
@@ -1067,41 +1174,51 @@ public class LitematicaSchematic
 
         if (this.blockContainers.isEmpty() == false)
         {
-            for (String regionName : this.blockContainers.keySet())
-            {
-                LitematicaBlockStateContainer blockContainer = this.blockContainers.get(regionName);
-                Map<BlockPos, NBTTagCompound> tileMap = this.tileEntities.get(regionName);
-                List<EntityInfo> entityList = this.entities.get(regionName);
-                Map<BlockPos, NextTickListEntry> pendingTicks = this.pendingBlockTicks.get(regionName);
+            // The sub-regions don't share any data, so they are encoded in parallel on the common
+            // fork-join pool. Only the resulting tags are added to the wrapper, on this thread.
+            List<String> regionNames = new ArrayList<>(this.blockContainers.keySet());
+            List<NBTTagCompound> regionTags = regionNames.parallelStream().map(this::writeSubRegionToNBT).collect(Collectors.toList());
 
-                NBTTagCompound tag = new NBTTagCompound();
+            for (int i = 0; i < regionNames.size(); ++i)
+            {
+                wrapper.setTag(regionNames.get(i), regionTags.get(i));
+            }
+        }
 
-                tag.setTag("BlockStatePalette", blockContainer.getPalette().writeToNBT());
-                tag.setTag("BlockStates", new NBTTagLongArray(blockContainer.getBackingLongArray()));
-                tag.setTag("TileEntities", this.writeTileEntitiesToNBT(tileMap));
+        return wrapper;
+    }
 
-                if (pendingTicks != null)
-                {
-                    tag.setTag("PendingBlockTicks", this.writeBlockTicksToNBT(pendingTicks));
-                }
+    private NBTTagCompound writeSubRegionToNBT(String regionName)
+    {
+        LitematicaBlockStateContainer blockContainer = this.blockContainers.get(regionName);
+        Map<BlockPos, NBTTagCompound> tileMap = this.tileEntities.get(regionName);
+        List<EntityInfo> entityList = this.entities.get(regionName);
+        Map<BlockPos, NextTickListEntry> pendingTicks = this.pendingBlockTicks.get(regionName);
 
-                // The entity list will not exist, if takeEntities is false when creating the schematic
-                if (entityList != null)
-                {
-                    tag.setTag("Entities", this.writeEntitiesToNBT(entityList));
-                }
+        NBTTagCompound tag = new NBTTagCompound();
 
-                BlockPos pos = this.subRegionPositions.get(regionName);
-                tag.setTag("Position", NBTUtils.createBlockPosTag(pos));
+        tag.setTag("BlockStatePalette", blockContainer.getPalette().writeToNBT());
+        tag.setTag("BlockStates", new NBTTagLongArray(blockContainer.getBackingLongArray()));
+        tag.setTag("TileEntities", this.writeTileEntitiesToNBT(tileMap));
 
-                pos = this.subRegionSizes.get(regionName);
-                tag.setTag("Size", NBTUtils.createBlockPosTag(pos));
+        if (pendingTicks != null)
+        {
+            tag.setTag("PendingBlockTicks", this.writeBlockTicksToNBT(pendingTicks));
+        }
 
-                wrapper.setTag(regionName, tag);
-            }
+        // The entity list will not exist, if takeEntities is false when creating the schematic
+        if (entityList != null)
+        {
+            tag.setTag("Entities", this.writeEntitiesToNBT(entityList));
         }
 
-        return wrapper;
+        BlockPos pos = this.subRegionPositions.get(regionName);
+        tag.setTag("Position", NBTUtils.createBlockPosTag(pos));
+
+        pos = this.subRegionSizes.get(regionName);
+        tag.setTag("Size", NBTUtils.createBlockPosTag(pos));
+
+        return tag;
     }
 
     private NBTTagList writeEntitiesToNBT(List<EntityInfo> entityList)
@@ -1163,7 +1280,7 @@ public class LitematicaSchematic
         return tagList;
     }
 
-    private boolean readFromNBT(NBTTagCompound nbt)
+    private boolean readFromNBT(NBTTagCompound nbt, @Nullable ISchematicLoadProgress progress)
     {
         this.blockContainers.clear();
         this.tileEntities.clear();
@@ -1180,73 +1297,114 @@ public class LitematicaSchematic
             if (version >= 1 && version <= SCHEMATIC_VERSION)
             {
                 this.metadata.readFromNBT(nbt.getCompoundTag("Metadata"));
-                this.readSubRegionsFromNBT(nbt.getCompoundTag("Regions"), version);
-
-                return true;
+                return this.readSubRegionsFromNBT(nbt.getCompoundTag("Regions"), version, progress);
             }
             else
             {
-                InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_load.unsupported_schematic_version", version);
+                showMessage(MessageType.ERROR, "litematica.error.schematic_load.unsupported_schematic_version", version);
             }
         }
         else
         {
-            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_load.no_schematic_version_information");
+            showMessage(MessageType.ERROR, "litematica.error.schematic_load.no_schematic_version_information");
         }
 
         return false;
     }
 
-    private void readSubRegionsFromNBT(NBTTagCompound tag, int version)
+    private boolean readSubRegionsFromNBT(NBTTagCompound tag, int version, @Nullable ISchematicLoadProgress progress)
     {
-        for (String regionName : tag.getKeySet())
+        List<String> regionNames = new ArrayList<>(tag.getKeySet());
+        final int regionCount = regionNames.size();
+        AtomicInteger regionsDone = new AtomicInteger();
+
+        // The sub-regions don't share any data, so they are decoded in parallel on the common
+        // fork-join pool. The results are only added to the maps on this thread afterwards.
+        List<SubRegionData> regions = regionNames.parallelStream().map((regionName) ->
         {
-            if (tag.getTag(regionName).getId() == Constants.NBT.TAG_COMPOUND)
+            if (progress != null && progress.isCancelled())
             {
-                NBTTagCompound regionTag = tag.getCompoundTag(regionName);
-                BlockPos regionPos = NBTUtils.readBlockPos(regionTag.getCompoundTag("Position"));
-                BlockPos regionSize = NBTUtils.readBlockPos(regionTag.getCompoundTag("Size"));
+                return null;
+            }
 
-                if (regionPos != null && regionSize != null)
-                {
-                    this.subRegionPositions.put(regionName, regionPos);
-                    this.subRegionSizes.put(regionName, regionSize);
+            SubRegionData data = this.readSubRegionFromNBT(regionName, tag, version);
 
-                    if (version >= 2)
-                    {
-                        this.tileEntities.put(regionName, this.readTileEntitiesFromNBT(regionTag.getTagList("TileEntities", Constants.NBT.TAG_COMPOUND)));
-                        this.entities.put(regionName, this.readEntitiesFromNBT(regionTag.getTagList("Entities", Constants.NBT.TAG_COMPOUND)));
-                    }
-                    else if (version == 1)
-                    {
-                        this.tileEntities.put(regionName, this.readTileEntitiesFromNBT_v1(regionTag.getTagList("TileEntities", Constants.NBT.TAG_COMPOUND)));
-                        this.entities.put(regionName, this.readEntitiesFromNBT_v1(regionTag.getTagList("Entities", Constants.NBT.TAG_COMPOUND)));
-                    }
+            if (progress != null)
+            {
+                progress.setProgress(READ_PROGRESS_FRACTION + (1.0 - READ_PROGRESS_FRACTION) * regionsDone.incrementAndGet() / regionCount);
+            }
 
-                    if (version >= 3)
-                    {
-                        this.pendingBlockTicks.put(regionName, this.readBlockTicksFromNBT(regionTag.getTagList("PendingBlockTicks", Constants.NBT.TAG_COMPOUND)));
-                    }
+            return data;
+        }).collect(Collectors.toList());
 
-                    NBTBase nbtBase = regionTag.getTag("BlockStates");
+        if (progress != null && progress.isCancelled())
+        {
+            return false;
+        }
 
-                    // There are no convenience methods in NBTTagCompound yet in 1.12, so we'll have to do it the ugly way...
-                    if (nbtBase != null && nbtBase.getId() == Constants.NBT.TAG_LONG_ARRAY)
-                    {
-                        NBTTagList palette = regionTag.getTagList("BlockStatePalette", Constants.NBT.TAG_COMPOUND);
-                        long[] blockStateArr = ((IMixinNBTTagLongArray) nbtBase).getArray();
+        for (SubRegionData data : regions)
+        {
+            if (data != null)
+            {
+                data.addTo(this);
+            }
+        }
 
-                        BlockPos posEndRel = PositionUtils.getRelativeEndPositionFromAreaSize(regionSize).add(regionPos);
-                        BlockPos posMin = PositionUtils.getMinCorner(regionPos, posEndRel);
-                        BlockPos posMax = PositionUtils.getMaxCorner(regionPos, posEndRel);
-                        BlockPos size = posMax.subtract(posMin).add(1, 1, 1);
+        return true;
+    }
 
-                        LitematicaBlockStateContainer container = LitematicaBlockStateContainer.createFrom(palette, blockStateArr, size);
-                        this.blockContainers.put(regionName, container);
-                    }
-                }
-            }
+    @Nullable
+    private SubRegionData readSubRegionFromNBT(String regionName, NBTTagCompound tag, int version)
+    {
+        if (tag.getTag(regionName).getId() != Constants.NBT.TAG_COMPOUND)
+        {
+            return null;
+        }
+
+        NBTTagCompound regionTag = tag.getCompoundTag(regionName);
+        BlockPos regionPos = NBTUtils.readBlockPos(regionTag.getCompoundTag("Position"));
+        BlockPos regionSize = NBTUtils.readBlockPos(regionTag.getCompoundTag("Size"));
+
+        if (regionPos == null || regionSize == null)
+        {
+            return null;
+        }
+
+        SubRegionData data = new SubRegionData(regionName, regionPos, regionSize);
+
+        if (version >= 2)
+        {
+            data.tileEntities = this.readTileEntitiesFromNBT(regionTag.getTagList("TileEntities", Constants.NBT.TAG_COMPOUND));
+            data.entities = this.readEntitiesFromNBT(regionTag.getTagList("Entities", Constants.NBT.TAG_COMPOUND));
+        }
+        else if (version == 1)
+        {
+            data.tileEntities = this.readTileEntitiesFromNBT_v1(regionTag.getTagList("TileEntities", Constants.NBT.TAG_COMPOUND));
+            data.entities = this.readEntitiesFromNBT_v1(regionTag.getTagList("Entities", Constants.NBT.TAG_COMPOUND));
+        }
+
+        if (version >= 3)
+        {
+            data.pendingBlockTicks = this.readBlockTicksFromNBT(regionTag.getTagList("PendingBlockTicks", Constants.NBT.TAG_COMPOUND));
+        }
+
+        NBTBase nbtBase = regionTag.getTag("BlockStates");
+
+        // There are no convenience methods in NBTTagCompound yet in 1.12, so we'll have to do it the ugly way...
+        if (nbtBase != null && nbtBase.getId() == Constants.NBT.TAG_LONG_ARRAY)
+        {
+            NBTTagList palette = regionTag.getTagList("BlockStatePalette", Constants.NBT.TAG_COMPOUND);
+            long[] blockStateArr = ((IMixinNBTTagLongArray) nbtBase).getArray();
+
+            BlockPos posEndRel = PositionUtils.getRelativeEndPositionFromAreaSize(regionSize).add(regionPos);
+            BlockPos posMin = PositionUtils.getMinCorner(regionPos, posEndRel);
+            BlockPos posMax = PositionUtils.getMaxCorner(regionPos, posEndRel);
+            BlockPos size = posMax.subtract(posMin).add(1, 1, 1);
+
+            data.container = LitematicaBlockStateContainer.createFrom(palette, blockStateArr, size);
         }
+
+        return data;
     }
 
     private List<EntityInfo> readEntitiesFromNBT(NBTTagList tagList)
@@ -1393,6 +1551,8 @@ public class LitematicaSchematic
             CompressedStreamTools.writeCompressed(this.writeToNBT(), os);
             os.close();
 
+            SchematicMetadataCache.getInstance().invalidate(fileSchematic);
+
             return true;
         }
         catch (Exception e)
@@ -1405,10 +1565,21 @@ public class LitematicaSchematic
     }
 
     public boolean readFromFile()
+    {
+        return this.readFromFile(null);
+    }
+
+    /**
+     * Reads the schematic from its file. This can be called from a worker thread,
+     * as long as the schematic is not yet visible to the main thread.
+     * @param progress an optional progress listener, which can also be used to cancel the loading
+     * @return true if the schematic was successfully read
+     */
+    public boolean readFromFile(@Nullable ISchematicLoadProgress progress)
     {
         if (this.schematicFile == null)
         {
-            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.no_file");
+            showMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.no_file");
             return false;
         }
 
@@ -1416,21 +1587,30 @@ public class LitematicaSchematic
 
         if (file.exists() == false || file.canRead() == false)
         {
-            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.cant_read", file.getAbsolutePath());
+            showMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.cant_read", file.getAbsolutePath());
             return false;
         }
 
         try
         {
-            FileInputStream is = new FileInputStream(file);
+            InputStream is = new FileInputStream(file);
+
+            if (progress != null)
+            {
+                is = new ProgressInputStream(is, file.length(), progress);
+            }
+
             NBTTagCompound nbt = CompressedStreamTools.readCompressed(is);
             is.close();
 
-            return nbt != null && this.readFromNBT(nbt);
+            return nbt != null && this.readFromNBT(nbt, progress);
         }
         catch (Exception e)
         {
-            InfoUtils.showGuiOrInGameMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.exception", file.getAbsolutePath());
+            if (progress == null || progress.isCancelled() == false)
+            {
+                showMessage(MessageType.ERROR, "litematica.error.schematic_read_from_file_failed.exception", file.getAbsolutePath());
+            }
         }
 
         return false;
@@ -1438,6 +1618,12 @@ public class LitematicaSchematic
 
     @Nullable
     public static LitematicaSchematic createFromFile(File dir, String fileName)
+    {
+        return createFromFile(dir, fileName, null);
+    }
+
+    @Nullable
+    public static LitematicaSchematic createFromFile(File dir, String fileName, @Nullable ISchematicLoadProgress progress)
     {
         if (fileName.endsWith(FILE_EXTENSION) == false)
         {
@@ -1447,7 +1633,121 @@ public class LitematicaSchematic
         File file = new File(dir, fileName);
         LitematicaSchematic schematic = new LitematicaSchematic(file);
 
-        return schematic.readFromFile() ? schematic : null;
+        return schematic.readFromFile(progress) ? schematic : null;
+    }
+
+    /**
+     * Shows the message directly when called from the main thread,
+     * otherwise schedules it to be shown on the main thread.
+     */
+    private static void showMessage(MessageType type, String translationKey, Object... args)
+    {
+        Minecraft mc = Minecraft.getMinecraft();
+
+        if (mc.isCallingFromMinecraftThread())
+        {
+            InfoUtils.showGuiOrInGameMessage(type, translationKey, args);
+        }
+        else
+        {
+            mc.addScheduledTask(() -> InfoUtils.showGuiOrInGameMessage(type, translationKey, args));
+        }
+    }
+
+    /**
+     * Reports the progress of reading the compressed file,
+     * and aborts the reading if the loading gets cancelled.
+     */
+    private static class ProgressInputStream extends FilterInputStream
+    {
+        private final ISchematicLoadProgress progress;
+        private final double length;
+        private long bytesRead;
+
+        private ProgressInputStream(InputStream in, long length, ISchematicLoadProgress progress)
+        {
+            super(in);
+
+            this.length = Math.max(1L, length);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int value = super.read();
+            this.onRead(value != -1 ? 1 : 0);
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int count = super.read(b, off, len);
+            this.onRead(count);
+            return count;
+        }
+
+        private void onRead(int count) throws IOException
+        {
+            if (this.progress.isCancelled())
+            {
+                throw new InterruptedIOException("Schematic loading cancelled");
+            }
+
+            if (count > 0)
+            {
+                this.bytesRead += count;
+                this.progress.setProgress(READ_PROGRESS_FRACTION * Math.min(1.0, this.bytesRead / this.length));
+            }
+        }
+    }
+
+    /**
+     * Holds the decoded data of one sub-region, until it gets added to the schematic
+     */
+    private static class SubRegionData
+    {
+        private final String name;
+        private final BlockPos pos;
+        private final BlockPos size;
+        @Nullable private Map<BlockPos, NBTTagCompound> tileEntities;
+        @Nullable private List<EntityInfo> entities;
+        @Nullable private Map<BlockPos, NextTickListEntry> pendingBlockTicks;
+        @Nullable private LitematicaBlockStateContainer container;
+
+        private SubRegionData(String name, BlockPos pos, BlockPos size)
+        {
+            this.name = name;
+            this.pos = pos;
+            this.size = size;
+        }
+
+        private void addTo(LitematicaSchematic schematic)
+        {
+            schematic.subRegionPositions.put(this.name, this.pos);
+            schematic.subRegionSizes.put(this.name, this.size);
+
+            if (this.tileEntities != null)
+            {
+                schematic.tileEntities.put(this.name, this.tileEntities);
+            }
+
+            if (this.entities != null)
+            {
+                schematic.entities.put(this.name, this.entities);
+            }
+
+            if (this.pendingBlockTicks != null)
+            {
+                schematic.pendingBlockTicks.put(this.name, this.pendingBlockTicks);
+            }
+
+            if (this.container != null)
+            {
+                schematic.blockContainers.put(this.name, this.container);
+            }
+        }
     }
 
     public static class EntityInfo
@@ -1,9 +1,13 @@
 package fi.dy.masa.litematica.schematic;
 
+import java.io.File;
 import javax.annotation.Nullable;
+import com.google.common.collect.ImmutableSet;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3i;
+import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.util.NBTStreamUtils;
 import fi.dy.masa.malilib.util.Constants;
 import fi.dy.masa.malilib.util.NBTUtils;
 
@@ -192,4 +196,45 @@ public class SchematicMetadata
             this.thumbnailPixelData = null;
         }
     }
+
+    /**
+     * Reads only the metadata from the given Litematica schematic file,
+     * without decompressing and decoding the sub-region data
+     * (as long as the metadata is stored before the regions in the file).
+     * @param file
+     * @return the metadata, or null if the file could not be read or is not a supported schematic
+     */
+    @Nullable
+    public static SchematicMetadata readFromFile(File file)
+    {
+        if (file.exists() == false || file.canRead() == false)
+        {
+            return null;
+        }
+
+        try
+        {
+            NBTTagCompound nbt = NBTStreamUtils.readTopLevelTagsFromFile(file, ImmutableSet.of("Version", "Metadata"));
+
+            if (nbt != null &&
+                nbt.hasKey("Version", Constants.NBT.TAG_INT) &&
+                nbt.hasKey("Metadata", Constants.NBT.TAG_COMPOUND))
+            {
+                final int version = nbt.getInteger("Version");
+
+                if (version >= 1 && version <= LitematicaSchematic.SCHEMATIC_VERSION)
+                {
+                    SchematicMetadata metadata = new SchematicMetadata();
+                    metadata.readFromNBT(nbt.getCompoundTag("Metadata"));
+                    return metadata;
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to read the schematic metadata from file '{}'", file.getAbsolutePath(), e);
+        }
+
+        return null;
+    }
 }
@@ -0,0 +1,421 @@
+package fi.dy.masa.litematica.schematic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import fi.dy.masa.litematica.Litematica;
+import fi.dy.masa.litematica.Reference;
+import fi.dy.masa.malilib.util.Constants;
+import fi.dy.masa.malilib.util.FileUtils;
+
+/**
+ * A persistent per-directory index of the metadata (including the preview images)
+ * of the Litematica schematics in that directory. The entries are validated lazily
+ * against the file size and the last modified time, and only the changed files
+ * are re-read when the index is accessed.
+ * Only the most recently used directories are kept in memory, and the index files
+ * are written on a background thread when the schematic browser is closed.
+ */
+public class SchematicMetadataCache
+{
+    private static final SchematicMetadataCache INSTANCE = new SchematicMetadataCache();
+    private static final int INDEX_VERSION = 1;
+    private static final int MAX_CACHED_DIRECTORIES = 4;
+
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(
+            (new ThreadFactoryBuilder()).setNameFormat("Litematica Schematic Index Writer").setDaemon(true).build());
+    /** The directory indexes in access order, for evicting the least recently used ones */
+    private final LinkedHashMap<File, DirectoryIndex> directories = new LinkedHashMap<>(16, 0.75f, true);
+    @Nullable private Future<?> pendingWrite;
+
+    public static SchematicMetadataCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the metadata for the given schematic file, either from the index,
+     * or by reading it from the file if the index entry is missing or stale.
+     * @param file
+     * @return the metadata, or null if the file is not a valid schematic
+     */
+    @Nullable
+    public synchronized SchematicMetadata getMetadata(File file)
+    {
+        File dir = file.getParentFile();
+
+        if (dir == null)
+        {
+            return SchematicMetadata.readFromFile(file);
+        }
+
+        DirectoryIndex index = this.getIndexForDirectory(dir);
+        String fileName = file.getName();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        IndexEntry entry = index.entries.get(fileName);
+
+        if (entry == null || entry.size != size || entry.lastModified != lastModified)
+        {
+            SchematicMetadata metadata = SchematicMetadata.readFromFile(file);
+
+            // Failed reads are not stored, so that they get retried the next time
+            if (metadata == null)
+            {
+                if (entry != null)
+                {
+                    index.entries.remove(fileName);
+                    index.dirty = true;
+                }
+
+                return null;
+            }
+
+            entry = new IndexEntry(size, lastModified, metadata);
+            index.entries.put(fileName, entry);
+            index.dirty = true;
+        }
+
+        return entry.metadata;
+    }
+
+    /**
+     * Removes the index entry of the given file, so that its metadata gets re-read the next time.
+     * This should be called whenever a schematic file is written, as the size and
+     * the modification time alone might not change.
+     */
+    public synchronized void invalidate(File file)
+    {
+        File dir = file.getParentFile();
+        DirectoryIndex index = dir != null ? this.directories.get(dir) : null;
+
+        if (index != null && index.entries.remove(file.getName()) != null)
+        {
+            index.dirty = true;
+        }
+    }
+
+    /**
+     * Writes all the modified directory indexes to their files, and waits for the writes to finish
+     */
+    public synchronized void writeToFile()
+    {
+        // Don't let an older background write overwrite the newer data
+        this.waitForPendingWrite();
+
+        for (PendingIndexWrite write : this.collectDirtyIndexes(false))
+        {
+            write.run();
+        }
+    }
+
+    /**
+     * Writes all the modified directory indexes to their files on a background thread,
+     * and then drops all the directory indexes from memory
+     */
+    public synchronized void writeToFileAsync()
+    {
+        final List<PendingIndexWrite> writes = this.collectDirtyIndexes(true);
+
+        if (writes.isEmpty() == false)
+        {
+            this.submitWrites(writes);
+        }
+    }
+
+    private synchronized List<PendingIndexWrite> collectDirtyIndexes(boolean clear)
+    {
+        List<PendingIndexWrite> writes = new ArrayList<>();
+
+        for (Map.Entry<File, DirectoryIndex> entry : this.directories.entrySet())
+        {
+            PendingIndexWrite write = this.createWrite(entry.getKey(), entry.getValue());
+
+            if (write != null)
+            {
+                writes.add(write);
+            }
+        }
+
+        if (clear)
+        {
+            this.directories.clear();
+        }
+
+        return writes;
+    }
+
+    @Nullable
+    private PendingIndexWrite createWrite(File dir, DirectoryIndex index)
+    {
+        if (index.dirty == false)
+        {
+            return null;
+        }
+
+        index.removeMissingFiles(dir);
+        index.dirty = false;
+
+        // The NBT data is created here, so that the writer thread doesn't access the index entries
+        NBTTagCompound nbt = index.writeToNBT();
+        nbt.setInteger("Version", INDEX_VERSION);
+        nbt.setString("Directory", dir.getAbsolutePath());
+
+        return new PendingIndexWrite(this.getIndexFile(dir), nbt);
+    }
+
+    private synchronized void submitWrites(final List<PendingIndexWrite> writes)
+    {
+        this.pendingWrite = this.writeExecutor.submit(() -> {
+            for (PendingIndexWrite write : writes)
+            {
+                write.run();
+            }
+        });
+    }
+
+    private DirectoryIndex getIndexForDirectory(File dir)
+    {
+        DirectoryIndex index = this.directories.get(dir);
+
+        if (index == null)
+        {
+            index = this.readIndexFromFile(dir);
+            this.directories.put(dir, index);
+            this.evictDirectories();
+        }
+
+        return index;
+    }
+
+    private void evictDirectories()
+    {
+        List<PendingIndexWrite> writes = new ArrayList<>();
+        Iterator<Map.Entry<File, DirectoryIndex>> iter = this.directories.entrySet().iterator();
+
+        while (this.directories.size() > MAX_CACHED_DIRECTORIES && iter.hasNext())
+        {
+            Map.Entry<File, DirectoryIndex> entry = iter.next();
+            PendingIndexWrite write = this.createWrite(entry.getKey(), entry.getValue());
+
+            if (write != null)
+            {
+                writes.add(write);
+            }
+
+            iter.remove();
+        }
+
+        if (writes.isEmpty() == false)
+        {
+            this.submitWrites(writes);
+        }
+    }
+
+    protected File getCacheDir()
+    {
+        return new File(new File(FileUtils.getConfigDirectory(), Reference.MOD_ID), "schematic_index");
+    }
+
+    protected File getIndexFile(File dir)
+    {
+        String hash = Hashing.sha1().hashString(dir.getAbsolutePath(), StandardCharsets.UTF_8).toString();
+        return new File(this.getCacheDir(), hash + ".nbt");
+    }
+
+    private DirectoryIndex readIndexFromFile(File dir)
+    {
+        DirectoryIndex index = new DirectoryIndex();
+        File file = this.getIndexFile(dir);
+
+        this.waitForPendingWrite();
+
+        if (file.exists() == false || file.canRead() == false)
+        {
+            return index;
+        }
+
+        try
+        {
+            FileInputStream is = new FileInputStream(file);
+            NBTTagCompound nbt = CompressedStreamTools.readCompressed(is);
+            is.close();
+
+            // The index file name is only a hash of the path, so verify that it's really for this directory
+            if (nbt != null &&
+                nbt.getInteger("Version") == INDEX_VERSION &&
+                dir.getAbsolutePath().equals(nbt.getString("Directory")))
+            {
+                index.readFromNBT(nbt);
+            }
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to read the schematic metadata index from file '{}'", file.getAbsolutePath(), e);
+        }
+
+        return index;
+    }
+
+    /**
+     * Waits for the previous background write to finish, so that a partially written index file won't be read
+     */
+    private void waitForPendingWrite()
+    {
+        if (this.pendingWrite != null)
+        {
+            try
+            {
+                this.pendingWrite.get();
+            }
+            catch (Exception e)
+            {
+                Litematica.logger.warn("Exception while writing the schematic metadata index", e);
+            }
+
+            this.pendingWrite = null;
+        }
+    }
+
+    private class PendingIndexWrite implements Runnable
+    {
+        private final File file;
+        private final NBTTagCompound nbt;
+
+        private PendingIndexWrite(File file, NBTTagCompound nbt)
+        {
+            this.file = file;
+            this.nbt = nbt;
+        }
+
+        @Override
+        public void run()
+        {
+            File cacheDir = SchematicMetadataCache.this.getCacheDir();
+
+            try
+            {
+                if (cacheDir.exists() == false && cacheDir.mkdirs() == false)
+                {
+                    Litematica.logger.warn("Failed to write the schematic metadata index to file '{}'", this.file.getAbsolutePath());
+                    return;
+                }
+
+                // Write to a temporary file first, so that a crash or a concurrent read never sees a partial index
+                File tmpFile = new File(cacheDir, this.file.getName() + ".tmp");
+                FileOutputStream os = new FileOutputStream(tmpFile);
+                CompressedStreamTools.writeCompressed(this.nbt, os);
+                os.close();
+
+                try
+                {
+                    Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+                catch (AtomicMoveNotSupportedException e)
+                {
+                    Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            catch (Exception e)
+            {
+                Litematica.logger.warn("Failed to write the schematic metadata index to file '{}'", this.file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    private static class DirectoryIndex
+    {
+        private final Map<String, IndexEntry> entries = new HashMap<>();
+        private boolean dirty;
+
+        private void removeMissingFiles(File dir)
+        {
+            Iterator<String> iter = this.entries.keySet().iterator();
+
+            while (iter.hasNext())
+            {
+                if (new File(dir, iter.next()).isFile() == false)
+                {
+                    iter.remove();
+                }
+            }
+        }
+
+        private NBTTagCompound writeToNBT()
+        {
+            NBTTagCompound nbt = new NBTTagCompound();
+            NBTTagList list = new NBTTagList();
+
+            for (Map.Entry<String, IndexEntry> mapEntry : this.entries.entrySet())
+            {
+                IndexEntry entry = mapEntry.getValue();
+                NBTTagCompound tag = new NBTTagCompound();
+
+                tag.setString("File", mapEntry.getKey());
+                tag.setLong("Size", entry.size);
+                tag.setLong("LastModified", entry.lastModified);
+                tag.setTag("Metadata", entry.metadata.writeToNBT());
+
+                list.appendTag(tag);
+            }
+
+            nbt.setTag("Files", list);
+
+            return nbt;
+        }
+
+        private void readFromNBT(NBTTagCompound nbt)
+        {
+            NBTTagList list = nbt.getTagList("Files", Constants.NBT.TAG_COMPOUND);
+            final int count = list.tagCount();
+
+            for (int i = 0; i < count; ++i)
+            {
+                NBTTagCompound tag = list.getCompoundTagAt(i);
+
+                if (tag.hasKey("Metadata", Constants.NBT.TAG_COMPOUND) == false)
+                {
+                    continue;
+                }
+
+                SchematicMetadata metadata = new SchematicMetadata();
+                metadata.readFromNBT(tag.getCompoundTag("Metadata"));
+
+                this.entries.put(tag.getString("File"), new IndexEntry(tag.getLong("Size"), tag.getLong("LastModified"), metadata));
+            }
+        }
+    }
+
+    private static class IndexEntry
+    {
+        private final long size;
+        private final long lastModified;
+        private final SchematicMetadata metadata;
+
+        private IndexEntry(long size, long lastModified, SchematicMetadata metadata)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+        }
+    }
+}
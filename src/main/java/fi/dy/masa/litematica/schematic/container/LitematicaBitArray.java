@@ -1,8 +1,8 @@
 package fi.dy.masa.litematica.schematic.container;
 
+import java.util.Arrays;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.Validate;
-import net.minecraft.util.math.MathHelper;
 
 public class LitematicaBitArray
 {
@@ -36,7 +36,8 @@ public class LitematicaBitArray
         }
         else
         {
-            this.longArray = new long[MathHelper.roundUp(arraySizeIn * bitsPerEntryIn, 64) / 64];
+            // Use long math, the total bit count overflows an int for large arrays
+            this.longArray = new long[(int) (((long) arraySizeIn * (long) bitsPerEntryIn + 63L) >> 6)];
         }
     }
 
@@ -44,46 +45,274 @@ public class LitematicaBitArray
     {
         Validate.inclusiveBetween(0L, (long) (this.arraySize - 1), (long) index);
         Validate.inclusiveBetween(0L, this.maxEntryValue, (long) value);
-        int startOffset = index * this.bitsPerEntry;
-        int startArrIndex = startOffset >> 6; // startOffset / 64
-        int endArrIndex = ((index + 1) * this.bitsPerEntry - 1) >> 6;
-        int startBitOffset = startOffset & 0x3F; // startOffset % 64
-        this.longArray[startArrIndex] = this.longArray[startArrIndex] & ~(this.maxEntryValue << startBitOffset) | ((long) value & this.maxEntryValue) << startBitOffset;
 
-        if (startArrIndex != endArrIndex)
+        this.setAtUnchecked(index, value);
+    }
+
+    public int getAt(int index)
+    {
+        Validate.inclusiveBetween(0L, (long) (this.arraySize - 1), (long) index);
+
+        return this.getAtUnchecked(index);
+    }
+
+    /**
+     * Sets the value at the given index, without validating the index or the value.
+     * Only use this from hot loops where the caller already guarantees that both are in range.
+     */
+    public void setAtUnchecked(int index, int value)
+    {
+        long startOffset = (long) index * (long) this.bitsPerEntry;
+        int startArrIndex = (int) (startOffset >> 6); // startOffset / 64
+        int startBitOffset = (int) (startOffset & 0x3F); // startOffset % 64
+        long valueMasked = (long) value & this.maxEntryValue;
+        this.longArray[startArrIndex] = this.longArray[startArrIndex] & ~(this.maxEntryValue << startBitOffset) | valueMasked << startBitOffset;
+
+        // The entry spans two longs
+        if (startBitOffset + this.bitsPerEntry > 64)
         {
             int endOffset = 64 - startBitOffset;
             int j1 = this.bitsPerEntry - endOffset;
-            this.longArray[endArrIndex] = this.longArray[endArrIndex] >>> j1 << j1 | ((long) value & this.maxEntryValue) >> endOffset;
+            int endArrIndex = startArrIndex + 1;
+            this.longArray[endArrIndex] = this.longArray[endArrIndex] >>> j1 << j1 | valueMasked >> endOffset;
         }
     }
 
-    public int getAt(int index)
+    /**
+     * Gets the value at the given index, without validating the index.
+     * Only use this from hot loops where the caller already guarantees that the index is in range.
+     */
+    public int getAtUnchecked(int index)
     {
-        Validate.inclusiveBetween(0L, (long) (this.arraySize - 1), (long) index);
-        int startOffset = index * this.bitsPerEntry;
-        int startArrIndex = startOffset >> 6; // startOffset / 64
-        int endArrIndex = ((index + 1) * this.bitsPerEntry - 1) >> 6;
-        int startBitOffset = startOffset & 0x3F; // startOffset % 64
+        long startOffset = (long) index * (long) this.bitsPerEntry;
+        int startArrIndex = (int) (startOffset >> 6); // startOffset / 64
+        int startBitOffset = (int) (startOffset & 0x3F); // startOffset % 64
 
-        if (startArrIndex == endArrIndex)
+        // The entry is fully within one long
+        if (startBitOffset + this.bitsPerEntry <= 64)
         {
             return (int) (this.longArray[startArrIndex] >>> startBitOffset & this.maxEntryValue);
         }
         else
         {
             int endOffset = 64 - startBitOffset;
-            return (int) ((this.longArray[startArrIndex] >>> startBitOffset | this.longArray[endArrIndex] << endOffset) & this.maxEntryValue);
+            return (int) ((this.longArray[startArrIndex] >>> startBitOffset | this.longArray[startArrIndex + 1] << endOffset) & this.maxEntryValue);
+        }
+    }
+
+    /**
+     * Decodes <b>count</b> consecutive entries starting from <b>startIndex</b> into the given array.
+     * This walks the backing array sequentially, so it's a lot faster than calling getAt() for each entry.
+     * @param startIndex the first entry index to read
+     * @param count the number of entries to read
+     * @param out the array to write the values to
+     * @param outOffset the starting index in the output array
+     */
+    public void getRange(int startIndex, int count, int[] out, int outOffset)
+    {
+        if (count <= 0)
+        {
+            return;
+        }
+
+        Validate.inclusiveBetween(0L, (long) (this.arraySize - 1), (long) startIndex);
+        Validate.inclusiveBetween(0L, (long) this.arraySize, (long) startIndex + count);
+        Validate.inclusiveBetween(0L, (long) (out.length - 1), (long) outOffset);
+        Validate.inclusiveBetween(0L, (long) out.length, (long) outOffset + count);
+
+        final long[] arr = this.longArray;
+        final int bits = this.bitsPerEntry;
+        final long mask = this.maxEntryValue;
+        long startOffset = (long) startIndex * (long) bits;
+        int arrIndex = (int) (startOffset >> 6);
+        int bitOffset = (int) (startOffset & 0x3F);
+        long word = arr[arrIndex];
+        final int end = outOffset + count;
+
+        for (int i = outOffset; i < end; ++i)
+        {
+            if (bitOffset + bits <= 64)
+            {
+                out[i] = (int) (word >>> bitOffset & mask);
+                bitOffset += bits;
+            }
+            else
+            {
+                // The entry spans two longs
+                long next = arr[++arrIndex];
+                out[i] = (int) ((word >>> bitOffset | next << (64 - bitOffset)) & mask);
+                word = next;
+                bitOffset += bits - 64;
+            }
+
+            if (bitOffset == 64 && i < end - 1)
+            {
+                word = arr[++arrIndex];
+                bitOffset = 0;
+            }
         }
     }
 
+    /**
+     * Sets all the entries in the range <b>startIndex</b> (inclusive) to <b>endIndex</b> (exclusive) to the given value.
+     */
+    public void fill(int startIndex, int endIndex, int value)
+    {
+        if (endIndex <= startIndex)
+        {
+            return;
+        }
+
+        Validate.inclusiveBetween(0L, (long) (this.arraySize - 1), (long) startIndex);
+        Validate.inclusiveBetween(0L, (long) this.arraySize, (long) endIndex);
+        Validate.inclusiveBetween(0L, this.maxEntryValue, (long) value);
+
+        final int bits = this.bitsPerEntry;
+        int index = startIndex;
+
+        // When no entry spans two longs, all the longs fully inside the range can be filled at once
+        if ((64 % bits) == 0)
+        {
+            final int entriesPerLong = 64 / bits;
+
+            while (index < endIndex && (index % entriesPerLong) != 0)
+            {
+                this.setAtUnchecked(index++, value);
+            }
+
+            final int fullLongs = (endIndex - index) / entriesPerLong;
+
+            if (fullLongs > 0)
+            {
+                long pattern = 0L;
+
+                for (int i = 0; i < entriesPerLong; ++i)
+                {
+                    pattern |= (long) value << (i * bits);
+                }
+
+                final int arrIndex = index / entriesPerLong;
+                Arrays.fill(this.longArray, arrIndex, arrIndex + fullLongs, pattern);
+                index += fullLongs * entriesPerLong;
+            }
+        }
+
+        for (; index < endIndex; ++index)
+        {
+            this.setAtUnchecked(index, value);
+        }
+    }
+
+    /**
+     * Calls the consumer for every entry in this array, in index order.
+     * This walks the backing array sequentially, without any per-entry validation.
+     */
+    public void forEach(IEntryConsumer consumer)
+    {
+        final long[] arr = this.longArray;
+        final int bits = this.bitsPerEntry;
+        final long mask = this.maxEntryValue;
+        final int size = this.arraySize;
+        int arrIndex = 0;
+        int bitOffset = 0;
+
+        for (int index = 0; index < size; ++index)
+        {
+            int value;
+
+            if (bitOffset + bits <= 64)
+            {
+                value = (int) (arr[arrIndex] >>> bitOffset & mask);
+                bitOffset += bits;
+
+                if (bitOffset == 64)
+                {
+                    ++arrIndex;
+                    bitOffset = 0;
+                }
+            }
+            else
+            {
+                // The entry spans two longs
+                value = (int) ((arr[arrIndex] >>> bitOffset | arr[arrIndex + 1] << (64 - bitOffset)) & mask);
+                ++arrIndex;
+                bitOffset += bits - 64;
+            }
+
+            consumer.accept(index, value);
+        }
+    }
+
+    /**
+     * Counts the number of occurrences of each value in this array, in one linear pass over the backing array.
+     * The count for each value is added to the corresponding index in <b>counts</b>.
+     * @param counts the array to add the counts to
+     * @return the number of entries whose value was outside of the counts array
+     */
+    public int addValueCounts(final int[] counts)
+    {
+        final long[] arr = this.longArray;
+        final int bits = this.bitsPerEntry;
+        final long mask = this.maxEntryValue;
+        final int size = this.arraySize;
+        final int maxCountIndex = counts.length;
+        int outOfRange = 0;
+        int arrIndex = 0;
+        int bitOffset = 0;
+
+        for (int index = 0; index < size; ++index)
+        {
+            int value;
+
+            if (bitOffset + bits <= 64)
+            {
+                value = (int) (arr[arrIndex] >>> bitOffset & mask);
+                bitOffset += bits;
+
+                if (bitOffset == 64)
+                {
+                    ++arrIndex;
+                    bitOffset = 0;
+                }
+            }
+            else
+            {
+                // The entry spans two longs
+                value = (int) ((arr[arrIndex] >>> bitOffset | arr[arrIndex + 1] << (64 - bitOffset)) & mask);
+                ++arrIndex;
+                bitOffset += bits - 64;
+            }
+
+            if (value >= 0 && value < maxCountIndex)
+            {
+                ++counts[value];
+            }
+            else
+            {
+                ++outOfRange;
+            }
+        }
+
+        return outOfRange;
+    }
+
     public long[] getBackingLongArray()
     {
         return this.longArray;
     }
 
+    public int getBitsPerEntry()
+    {
+        return this.bitsPerEntry;
+    }
+
     public int size()
     {
         return this.arraySize;
     }
+
+    public interface IEntryConsumer
+    {
+        void accept(int index, int value);
+    }
 }
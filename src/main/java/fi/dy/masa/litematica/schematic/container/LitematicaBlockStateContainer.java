@@ -3,8 +3,12 @@ package fi.dy.masa.litematica.schematic.container;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.Mirror;
+import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3i;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 public class LitematicaBlockStateContainer implements ILitematicaBlockStatePaletteResizer
 {
@@ -16,6 +20,7 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
     protected final int sizeZ;
     protected final int sizeLayer;
     protected int bits;
+    protected final Int2ObjectOpenHashMap<IBlockState[]> transformedStatesCache = new Int2ObjectOpenHashMap<>();
 
     public LitematicaBlockStateContainer(int sizeX, int sizeY, int sizeZ)
     {
@@ -55,6 +60,64 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
         this.storage.setAt(index, id);
     }
 
+    /**
+     * Returns the raw palette id at the given position.
+     * Use getPalette().getBlockState(id) to get the actual state.
+     */
+    public int getPaletteId(int x, int y, int z)
+    {
+        return this.storage.getAt(this.getIndex(x, y, z));
+    }
+
+    /**
+     * Same as {@link #get(int, int, int)}, but without validating the position.
+     * Only use this from loops that already guarantee that the position is within the container.
+     */
+    public IBlockState getUnchecked(int x, int y, int z)
+    {
+        IBlockState state = this.palette.getBlockState(this.storage.getAtUnchecked(this.getIndex(x, y, z)));
+        return state == null ? AIR_BLOCK_STATE : state;
+    }
+
+    /**
+     * Same as {@link #set(int, int, int, IBlockState)}, but without validating the position.
+     * Only use this from loops that already guarantee that the position is within the container.
+     */
+    public void setUnchecked(int x, int y, int z, IBlockState state)
+    {
+        int id = this.palette.idFor(state);
+        this.storage.setAtUnchecked(this.getIndex(x, y, z), id);
+    }
+
+    /**
+     * Same as {@link #getPaletteId(int, int, int)}, but without validating the position.
+     * Only use this from loops that already guarantee that the position is within the container.
+     */
+    public int getPaletteIdUnchecked(int x, int y, int z)
+    {
+        return this.storage.getAtUnchecked(this.getIndex(x, y, z));
+    }
+
+    /**
+     * Decodes the palette ids of <b>count</b> blocks along the x-axis,
+     * starting from the given position, into the given array.
+     * Use getPalette().getBlockState(id) to get the actual states.
+     */
+    public void getPaletteIdsInRow(int startX, int y, int z, int count, int[] out)
+    {
+        this.storage.getRange(this.getIndex(startX, y, z), count, out, 0);
+    }
+
+    /**
+     * Fills a row of blocks along the x-axis, starting from the given position, with the given state
+     */
+    public void fillRow(int startX, int y, int z, int count, IBlockState state)
+    {
+        int id = this.palette.idFor(state);
+        int index = this.getIndex(startX, y, z);
+        this.storage.fill(index, index + count, id);
+    }
+
     protected int getIndex(int x, int y, int z)
     {
         return (y * this.sizeLayer) + z * this.sizeX + x;
@@ -96,19 +159,110 @@ public class LitematicaBlockStateContainer implements ILitematicaBlockStatePalet
         ILitematicaBlockStatePalette statePaletteOld = this.palette;
         this.setBits(bits, null);
 
-        for (int id = 0; id < bitArray.size(); ++id)
+        synchronized (this.transformedStatesCache)
         {
-            IBlockState stateTmp = statePaletteOld.getBlockState(bitArray.getAt(id));
+            this.transformedStatesCache.clear();
+        }
+
+        final LitematicaBitArray storageNew = this.storage;
+        final int paletteSize = statePaletteOld.getPaletteSize();
+        final int[] idMap = new int[paletteSize];
 
-            if (stateTmp != null)
+        // Map the old ids to the new palette once, instead of doing the state lookups per block
+        for (int id = 0; id < paletteSize; ++id)
+        {
+            IBlockState stateTmp = statePaletteOld.getBlockState(id);
+            idMap[id] = stateTmp != null ? this.palette.idFor(stateTmp) : -1;
+        }
+
+        bitArray.forEach((index, id) ->
+        {
+            if (id < paletteSize && idMap[id] != -1)
             {
-                this.set(id, stateTmp);
+                storageNew.setAtUnchecked(index, idMap[id]);
             }
-        }
+        });
 
         return this.palette.idFor(state);
     }
 
+    /**
+     * Returns the number of blocks for each palette id in this container.
+     * The index in the returned array is the palette id. The last element
+     * holds the number of blocks whose id is not in the palette (those read as air).
+     */
+    public int[] getPaletteIdCounts()
+    {
+        final int paletteSize = this.palette.getPaletteSize();
+        int[] counts = new int[paletteSize + 1];
+
+        // An id equal to the palette size gets counted into the last element directly,
+        // and any larger ids are returned as out of range
+        counts[paletteSize] += this.storage.addValueCounts(counts);
+
+        return counts;
+    }
+
+    /**
+     * Adds the number of blocks of each block state in this container to the given map.
+     * The counting is done per palette id, and the ids are only mapped to the states at the end.
+     */
+    public void addBlockStateCountsTo(Object2IntOpenHashMap<IBlockState> countsOut)
+    {
+        int[] counts = this.getPaletteIdCounts();
+
+        for (int id = 0; id < counts.length; ++id)
+        {
+            if (counts[id] > 0)
+            {
+                IBlockState state = this.palette.getBlockState(id);
+                countsOut.addTo(state != null ? state : AIR_BLOCK_STATE, counts[id]);
+            }
+        }
+    }
+
+    /**
+     * Returns the block states of the palette with the given mirrors and rotation applied (in that order),
+     * indexed by the palette id. Ids that are not in the palette map to air.
+     * The arrays are cached per transformation, and they get rebuilt when the palette changes.
+     */
+    public IBlockState[] getTransformedPaletteStates(Mirror mirrorMain, Mirror mirrorSub, Rotation rotation)
+    {
+        final int key = (mirrorMain.ordinal() * Mirror.values().length + mirrorSub.ordinal()) * Rotation.values().length + rotation.ordinal();
+
+        synchronized (this.transformedStatesCache)
+        {
+            final int paletteSize = this.palette.getPaletteSize();
+            IBlockState[] states = this.transformedStatesCache.get(key);
+
+            if (states == null || states.length != paletteSize)
+            {
+                states = new IBlockState[paletteSize];
+
+                for (int id = 0; id < paletteSize; ++id)
+                {
+                    IBlockState state = this.palette.getBlockState(id);
+
+                    if (state == null)
+                    {
+                        states[id] = AIR_BLOCK_STATE;
+                        continue;
+                    }
+
+                    if (mirrorMain != Mirror.NONE) { state = state.withMirror(mirrorMain); }
+                    if (mirrorSub != Mirror.NONE)  { state = state.withMirror(mirrorSub); }
+                    if (rotation != Rotation.NONE) { state = state.withRotation(rotation); }
+
+                    states[id] = state;
+                }
+
+                this.transformedStatesCache.put(key, states);
+            }
+
+            return states;
+        }
+    }
+
     public long[] getBackingLongArray()
     {
         return this.storage.getBackingLongArray();
@@ -127,6 +127,26 @@ public class SchematicPlacement
         return placement;
     }
 
+    /**
+     * Creates a detached copy of the placement values, which is safe to read
+     * on the chunk builder threads while this placement gets modified on the main thread.
+     * The copy is not registered anywhere and it does not get a bounding box color.
+     */
+    SchematicPlacement copyForChunkBuild()
+    {
+        SchematicPlacement copy = new SchematicPlacement(this.schematic, this.origin, this.name, this.enabled, this.enableRender);
+        copy.rotation = this.rotation;
+        copy.mirror = this.mirror;
+        copy.ignoreEntities = this.ignoreEntities;
+
+        for (Map.Entry<String, SubRegionPlacement> entry : this.relativeSubRegionPlacements.entrySet())
+        {
+            copy.relativeSubRegionPlacements.put(entry.getKey(), entry.getValue().copy());
+        }
+
+        return copy;
+    }
+
     public boolean isEnabled()
     {
         return this.enabled;
@@ -1,15 +1,22 @@
 package fi.dy.masa.litematica.schematic.placement;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.annotation.Nullable;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -23,6 +30,7 @@ import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.RayTraceResult;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import fi.dy.masa.litematica.Litematica;
 import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.config.Hotkeys;
 import fi.dy.masa.litematica.data.DataManager;
@@ -31,6 +39,7 @@ import fi.dy.masa.litematica.render.LitematicaRenderer;
 import fi.dy.masa.litematica.render.OverlayRenderer;
 import fi.dy.masa.litematica.render.infohud.StatusInfoRenderer;
 import fi.dy.masa.litematica.scheduler.TaskScheduler;
+import fi.dy.masa.litematica.scheduler.TickBudget;
 import fi.dy.masa.litematica.scheduler.tasks.TaskPasteSchematicSetblock;
 import fi.dy.masa.litematica.schematic.LitematicaSchematic;
 import fi.dy.masa.litematica.schematic.placement.SubRegionPlacement.RequiredEnabled;
@@ -38,6 +47,8 @@ import fi.dy.masa.litematica.util.PositionUtils;
 import fi.dy.masa.litematica.util.RayTraceUtils;
 import fi.dy.masa.litematica.util.RayTraceUtils.RayTraceWrapper;
 import fi.dy.masa.litematica.util.RayTraceUtils.RayTraceWrapper.HitType;
+import fi.dy.masa.litematica.world.ChunkProviderSchematic;
+import fi.dy.masa.litematica.world.ChunkSchematic;
 import fi.dy.masa.litematica.world.SchematicWorldHandler;
 import fi.dy.masa.litematica.world.WorldSchematic;
 import fi.dy.masa.malilib.config.options.ConfigHotkey;
@@ -59,6 +70,10 @@ public class SchematicPlacementManager
     private final Set<ChunkPos> chunksToRebuild = new HashSet<>();
     private final Set<ChunkPos> chunksToUnload = new HashSet<>();
     private final Set<ChunkPos> chunksPreChange = new HashSet<>();
+    private final List<PendingPlacement> pendingPlacements = new ArrayList<>();
+    private final Map<ChunkPos, ChunkBuildTask> chunkBuildTasks = new LinkedHashMap<>();
+    @Nullable private static ExecutorService chunkBuildExecutor;
+    private static int chunkBuildThreads;
 
     @Nullable
     private SchematicPlacement selectedPlacement;
@@ -83,6 +98,7 @@ public class SchematicPlacementManager
             {
                 for (ChunkPos pos : this.chunksToUnload)
                 {
+                    this.cancelChunkBuild(pos);
                     this.unloadSchematicChunk(worldSchematic, pos.x, pos.z);
                 }
             }
@@ -98,72 +114,268 @@ public class SchematicPlacementManager
             if (worldClient == null)
             {
                 this.chunksToRebuild.clear();
+                this.cancelAllChunkBuilds();
+                shutdownChunkBuildExecutor();
                 return true;
             }
 
             WorldSchematic worldSchematic = SchematicWorldHandler.getSchematicWorld();
-            Iterator<ChunkPos> iter = this.chunksToRebuild.iterator();
 
-            while (iter.hasNext())
+            if (Configs.Generic.SCHEMATIC_CHUNK_THREADS.getIntegerValue() > 0)
             {
-                if ((System.nanoTime() - DataManager.getClientTickStartTime()) >= 45000000L)
+                this.processQueuedChunksThreaded(worldClient, worldSchematic);
+            }
+            else
+            {
+                this.cancelAllChunkBuilds();
+                shutdownChunkBuildExecutor();
+                this.processQueuedChunksOnMainThread(worldClient, worldSchematic);
+            }
+
+            LitematicaRenderer.getInstance().getWorldRenderer().markNeedsUpdate();
+
+            if (this.chunksToRebuild.isEmpty())
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void processQueuedChunksOnMainThread(WorldClient worldClient, WorldSchematic worldSchematic)
+    {
+        Iterator<ChunkPos> iter = this.chunksToRebuild.iterator();
+
+        while (iter.hasNext())
+        {
+            if (TickBudget.getInstance().hasTimeLeft() == false)
+            {
+                break;
+            }
+
+            ChunkPos pos = iter.next();
+
+            if (this.schematicsTouchingChunk.containsKey(pos) == false)
+            {
+                iter.remove();
+                continue;
+            }
+
+            if (Configs.Generic.LOAD_ENTIRE_SCHEMATICS.getBooleanValue() ||
+                worldClient.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
+            {
+                // Wipe the old chunk if it exists
+                if (worldSchematic.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
                 {
-                    break;
+                    //System.out.printf("wiping chunk at %s\n", pos);
+                    this.unloadSchematicChunk(worldSchematic, pos.x, pos.z);
                 }
 
-                ChunkPos pos = iter.next();
+                //System.out.printf("loading chunk at %s\n", pos);
+                worldSchematic.getChunkProvider().loadChunk(pos.x, pos.z);
+            }
 
-                if (this.schematicsTouchingChunk.containsKey(pos) == false)
+            if (worldSchematic.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
+            {
+                //System.out.printf("placing at %s\n", pos);
+                Collection<SchematicPlacement> placements = this.schematicsTouchingChunk.get(pos);
+
+                if (placements.isEmpty() == false)
                 {
-                    iter.remove();
-                    continue;
+                    for (SchematicPlacement placement : placements)
+                    {
+                        if (placement.isEnabled())
+                        {
+                            placement.getSchematic().placeToWorldWithinChunk(worldSchematic, pos, placement, false);
+                        }
+                    }
+
+                    worldSchematic.markBlockRangeForRenderUpdate(pos.x << 4, 0, pos.z << 4, (pos.x << 4) + 15, 256, (pos.z << 4) + 15);
                 }
 
-                if (Configs.Generic.LOAD_ENTIRE_SCHEMATICS.getBooleanValue() ||
-                    worldClient.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Populates the chunks into detached ChunkSchematic instances on worker threads,
+     * and then swaps the finished chunks into the schematic world on the main thread.
+     */
+    private void processQueuedChunksThreaded(WorldClient worldClient, WorldSchematic worldSchematic)
+    {
+        ExecutorService executor = getChunkBuildExecutor(Configs.Generic.SCHEMATIC_CHUNK_THREADS.getIntegerValue());
+        final int maxInFlight = Configs.Generic.SCHEMATIC_CHUNK_THREADS.getIntegerValue() * 4;
+        Iterator<ChunkPos> iter = this.chunksToRebuild.iterator();
+
+        while (iter.hasNext() && this.chunkBuildTasks.size() < maxInFlight)
+        {
+            ChunkPos pos = iter.next();
+
+            if (this.schematicsTouchingChunk.containsKey(pos) == false)
+            {
+                iter.remove();
+                this.cancelChunkBuild(pos);
+                continue;
+            }
+
+            if (this.chunkBuildTasks.containsKey(pos))
+            {
+                continue;
+            }
+
+            if (Configs.Generic.LOAD_ENTIRE_SCHEMATICS.getBooleanValue() ||
+                worldClient.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z) ||
+                worldSchematic.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
+            {
+                // The workers only get copies of the placements, so that the main thread
+                // is free to move or remove the placements while the chunk is being built.
+                final List<SchematicPlacement> placements = new ArrayList<>();
+
+                for (SchematicPlacement placement : this.schematicsTouchingChunk.get(pos))
                 {
-                    // Wipe the old chunk if it exists
-                    if (worldSchematic.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
+                    if (placement.isEnabled())
                     {
-                        //System.out.printf("wiping chunk at %s\n", pos);
-                        this.unloadSchematicChunk(worldSchematic, pos.x, pos.z);
+                        placements.add(placement.copyForChunkBuild());
                     }
-
-                    //System.out.printf("loading chunk at %s\n", pos);
-                    worldSchematic.getChunkProvider().loadChunk(pos.x, pos.z);
                 }
 
+                ChunkBuildTask task = new ChunkBuildTask();
+                task.future = executor.submit(() -> buildDetachedChunk(worldSchematic, pos, placements, task));
+                this.chunkBuildTasks.put(pos, task);
+            }
+        }
+
+        ChunkProviderSchematic provider = (ChunkProviderSchematic) worldSchematic.getChunkProvider();
+        final int swapLimit = Configs.Generic.SCHEMATIC_CHUNK_SWAP_LIMIT.getIntegerValue();
+        Iterator<Map.Entry<ChunkPos, ChunkBuildTask>> taskIter = this.chunkBuildTasks.entrySet().iterator();
+        int swapped = 0;
+
+        while (taskIter.hasNext() && swapped < swapLimit)
+        {
+            if (TickBudget.getInstance().hasTimeLeft() == false)
+            {
+                break;
+            }
+
+            Map.Entry<ChunkPos, ChunkBuildTask> entry = taskIter.next();
+            ChunkBuildTask task = entry.getValue();
+
+            if (task.future.isDone() == false)
+            {
+                continue;
+            }
+
+            ChunkPos pos = entry.getKey();
+            taskIter.remove();
+
+            // A build that was started before the latest change must never be swapped in
+            if (task.cancelled)
+            {
+                continue;
+            }
+
+            ChunkSchematic chunk = null;
+
+            try
+            {
+                chunk = task.future.get();
+            }
+            catch (Exception e)
+            {
+                Litematica.logger.warn("Exception while populating the schematic world chunk at {}", pos, e);
+            }
+
+            // The failed chunks are dropped, they will get rebuilt on the next change
+            this.chunksToRebuild.remove(pos);
+
+            if (chunk != null)
+            {
                 if (worldSchematic.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
                 {
-                    //System.out.printf("placing at %s\n", pos);
-                    Collection<SchematicPlacement> placements = this.schematicsTouchingChunk.get(pos);
+                    this.unloadSchematicChunk(worldSchematic, pos.x, pos.z);
+                }
 
-                    if (placements.isEmpty() == false)
-                    {
-                        for (SchematicPlacement placement : placements)
-                        {
-                            if (placement.isEnabled())
-                            {
-                                placement.getSchematic().placeToWorldWithinChunk(worldSchematic, pos, placement, false);
-                            }
-                        }
+                provider.setChunk(chunk);
 
-                        worldSchematic.markBlockRangeForRenderUpdate(pos.x << 4, 0, pos.z << 4, (pos.x << 4) + 15, 256, (pos.z << 4) + 15);
+                for (SchematicPlacement placement : this.schematicsTouchingChunk.get(pos))
+                {
+                    if (placement.isEnabled())
+                    {
+                        placement.getSchematic().placeEntitiesToWorldWithinChunk(worldSchematic, pos, placement);
                     }
-
-                    iter.remove();
                 }
+
+                worldSchematic.markBlockRangeForRenderUpdate((pos.x << 4) - 1, 0, (pos.z << 4) - 1, (pos.x << 4) + 16, 256, (pos.z << 4) + 16);
+                ++swapped;
             }
+        }
+    }
 
-            LitematicaRenderer.getInstance().getWorldRenderer().markNeedsUpdate();
+    @Nullable
+    private static ChunkSchematic buildDetachedChunk(WorldSchematic world, ChunkPos pos, List<SchematicPlacement> placements, ChunkBuildTask task)
+    {
+        ChunkSchematic chunk = new ChunkSchematic(world, pos.x, pos.z);
 
-            if (this.chunksToRebuild.isEmpty())
+        for (SchematicPlacement placement : placements)
+        {
+            if (task.cancelled)
             {
-                return true;
+                return null;
             }
+
+            placement.getSchematic().placeBlocksToDetachedChunk(chunk, placement);
         }
 
-        return false;
+        return chunk;
+    }
+
+    private static ExecutorService getChunkBuildExecutor(int threads)
+    {
+        if (chunkBuildExecutor == null || chunkBuildThreads != threads)
+        {
+            if (chunkBuildExecutor != null)
+            {
+                chunkBuildExecutor.shutdown();
+            }
+
+            ThreadFactory factory = (new ThreadFactoryBuilder()).setNameFormat("Litematica Schematic Chunk Builder %d").setDaemon(true).build();
+            chunkBuildExecutor = Executors.newFixedThreadPool(threads, factory);
+            chunkBuildThreads = threads;
+        }
+
+        return chunkBuildExecutor;
+    }
+
+    private static void shutdownChunkBuildExecutor()
+    {
+        if (chunkBuildExecutor != null)
+        {
+            chunkBuildExecutor.shutdown();
+            chunkBuildExecutor = null;
+            chunkBuildThreads = 0;
+        }
+    }
+
+    private void cancelChunkBuild(ChunkPos pos)
+    {
+        ChunkBuildTask task = this.chunkBuildTasks.remove(pos);
+
+        if (task != null)
+        {
+            task.cancel();
+        }
+    }
+
+    private void cancelAllChunkBuilds()
+    {
+        for (ChunkBuildTask task : this.chunkBuildTasks.values())
+        {
+            task.cancel();
+        }
+
+        this.chunkBuildTasks.clear();
     }
 
     public void onClientChunkUnload(int chunkX, int chunkZ)
@@ -175,7 +387,7 @@ public class SchematicPlacementManager
             if (worldSchematic != null)
             {
                 this.unloadSchematicChunk(worldSchematic, chunkX, chunkZ);
-                this.chunksToRebuild.add(new ChunkPos(chunkX, chunkZ));
+                this.markChunkForRebuild(new ChunkPos(chunkX, chunkZ));
             }
         }
     }
@@ -529,11 +741,18 @@ public class SchematicPlacementManager
     {
         //System.out.printf("rebuilding %d chunks: %s\n", chunks.size(), chunks);
         this.chunksToRebuild.addAll(chunks);
+
+        // Any builds in progress used the old placement data
+        for (ChunkPos pos : chunks)
+        {
+            this.cancelChunkBuild(pos);
+        }
     }
 
     public void markChunkForRebuild(ChunkPos pos)
     {
         this.chunksToRebuild.add(pos);
+        this.cancelChunkBuild(pos);
     }
 
     private void onPlacementModified(SchematicPlacement placement)
@@ -756,6 +975,9 @@ public class SchematicPlacementManager
         this.chunksPreChange.clear();
         this.chunksToRebuild.clear();
         this.chunksToUnload.clear();
+        this.pendingPlacements.clear();
+        this.cancelAllChunkBuilds();
+        shutdownChunkBuildExecutor();
 
         SchematicHolder.getInstance().clearLoadedSchematics();
     }
@@ -764,7 +986,7 @@ public class SchematicPlacementManager
     {
         JsonObject obj = new JsonObject();
 
-        if (this.schematicPlacements.size() > 0)
+        if (this.schematicPlacements.size() > 0 || this.pendingPlacements.isEmpty() == false)
         {
             JsonArray arr = new JsonArray();
             int selectedIndex = 0;
@@ -796,6 +1018,18 @@ public class SchematicPlacementManager
                 }
             }
 
+            // Placements whose schematics are still being loaded, or which are waiting for the earlier ones
+            for (PendingPlacement pending : this.pendingPlacements)
+            {
+                arr.add(pending.json);
+
+                if (pending.select && this.selectedPlacement == null)
+                {
+                    selectedIndex = arr.size() - 1;
+                    indexValid = true;
+                }
+            }
+
             obj.add("placements", arr);
 
             if (indexValid)
@@ -824,27 +1058,87 @@ public class SchematicPlacementManager
 
                 if (el.isJsonObject())
                 {
-                    SchematicPlacement placement = SchematicPlacement.fromJson(el.getAsJsonObject());
+                    JsonObject placementObj = el.getAsJsonObject();
 
-                    if (placement != null)
+                    // The schematics are loaded on worker threads, and the placements get added once they are done
+                    if (JsonUtils.hasString(placementObj, "schematic"))
                     {
-                        this.addSchematicPlacement(placement, false, true);
+                        final PendingPlacement pending = new PendingPlacement(placementObj, i == index);
+                        File file = new File(placementObj.get("schematic").getAsString());
+                        this.pendingPlacements.add(pending);
+                        SchematicHolder.getInstance().getOrLoadAsync(file, (schematic) -> this.onPlacementSchematicLoaded(pending, schematic));
                     }
                 }
-                else
-                {
-                    // Invalid data in the array, don't select an entry
-                    index = -1;
-                }
             }
+        }
+
+        OverlayRenderer.getInstance().updatePlacementCache();
+    }
+
+    private void onPlacementSchematicLoaded(PendingPlacement pending, @Nullable LitematicaSchematic schematic)
+    {
+        // The placements may have been cleared (for example by a dimension change) while the schematic was loading
+        if (this.pendingPlacements.contains(pending) == false)
+        {
+            return;
+        }
+
+        // Placements whose schematic failed to load or whose loading got cancelled get dropped
+        pending.placement = schematic != null ? SchematicPlacement.fromJson(pending.json) : null;
+        pending.loaded = true;
+
+        if (pending.placement == null)
+        {
+            Litematica.logger.warn("Failed to load the schematic placement '{}'", pending.json.get("schematic").getAsString());
+        }
+
+        this.addLoadedPendingPlacements();
+    }
+
+    /**
+     * Adds the loaded pending placements in their saved order. A placement whose schematic
+     * finished loading early waits until all the placements before it have been loaded.
+     */
+    private void addLoadedPendingPlacements()
+    {
+        boolean added = false;
 
-            if (index >= 0 && index < this.schematicPlacements.size())
+        while (this.pendingPlacements.isEmpty() == false && this.pendingPlacements.get(0).loaded)
+        {
+            PendingPlacement pending = this.pendingPlacements.remove(0);
+
+            if (pending.placement != null)
             {
-                this.selectedPlacement = this.schematicPlacements.get(index);
+                this.addSchematicPlacement(pending.placement, false, true);
+
+                // Don't override a selection that the player has made while the placements were loading
+                if (pending.select && this.selectedPlacement == null)
+                {
+                    this.selectedPlacement = pending.placement;
+                }
+
+                added = true;
             }
         }
 
-        OverlayRenderer.getInstance().updatePlacementCache();
+        if (added)
+        {
+            OverlayRenderer.getInstance().updatePlacementCache();
+        }
+    }
+
+    private static class PendingPlacement
+    {
+        private final JsonObject json;
+        private final boolean select;
+        @Nullable private SchematicPlacement placement;
+        private boolean loaded;
+
+        private PendingPlacement(JsonObject json, boolean select)
+        {
+            this.json = json;
+            this.select = select;
+        }
     }
 
     public static class PlacementPart
@@ -875,4 +1169,18 @@ public class SchematicPlacementManager
             return this.bb;
         }
     }
+
+    private static class ChunkBuildTask
+    {
+        private Future<ChunkSchematic> future;
+        private volatile boolean cancelled;
+
+        private void cancel()
+        {
+            // The worker checks the flag between the placements, and a cancelled
+            // result is never swapped into the world even if the build had already finished.
+            this.cancelled = true;
+            this.future.cancel(false);
+        }
+    }
 }
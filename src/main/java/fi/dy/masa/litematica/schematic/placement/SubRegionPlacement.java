@@ -141,6 +141,20 @@ public class SubRegionPlacement
         this.mirror = mirror;
     }
 
+    SubRegionPlacement copy()
+    {
+        SubRegionPlacement copy = new SubRegionPlacement(this.defaultPos, this.name);
+        copy.pos = this.pos;
+        copy.rotation = this.rotation;
+        copy.mirror = this.mirror;
+        copy.enabled = this.enabled;
+        copy.renderingEnabled = this.renderingEnabled;
+        copy.ignoreEntities = this.ignoreEntities;
+        copy.coordinateLockMask = this.coordinateLockMask;
+
+        return copy;
+    }
+
     void resetToOriginalValues()
     {
         this.pos = this.defaultPos;
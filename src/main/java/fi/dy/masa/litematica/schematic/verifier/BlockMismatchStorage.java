@@ -0,0 +1,560 @@
+package fi.dy.masa.litematica.schematic.verifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang3.tuple.MutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import fi.dy.masa.litematica.schematic.verifier.SchematicVerifier.BlockMismatch;
+import fi.dy.masa.litematica.schematic.verifier.SchematicVerifier.MismatchType;
+import fi.dy.masa.litematica.util.PositionUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Stores the mismatched positions of the schematic verifier using primitive collections.
+ * Each distinct (expected state, found state) pair gets an int id, and the positions
+ * are stored as packed longs ({@link BlockPos#toLong()}) in one bucket per chunk,
+ * together with their pair ids. A position map holds the pair id and the bucket index
+ * of each mismatched position, so that single positions can be looked up and removed
+ * in constant time, without allocating any objects per mismatched block.
+ * The chunk buckets also work as a spatial index for the nearest position searches.
+ */
+public class BlockMismatchStorage
+{
+    private final MutablePair<IBlockState, IBlockState> mutablePair = new MutablePair<>();
+    private final Object2IntOpenHashMap<Pair<IBlockState, IBlockState>> pairIds = new Object2IntOpenHashMap<>();
+    private final List<IBlockState> statesExpected = new ArrayList<>();
+    private final List<IBlockState> statesFound = new ArrayList<>();
+    private final List<MismatchType> mismatchTypes = new ArrayList<>();
+    private final IntArrayList pairCounts = new IntArrayList();
+    private final Long2ObjectOpenHashMap<ChunkBucket> chunkBuckets = new Long2ObjectOpenHashMap<>();
+    /** The pair id in the upper 32 bits, and the index in the chunk bucket in the lower 32 bits */
+    private final Long2LongOpenHashMap positionEntries = new Long2LongOpenHashMap();
+    private final int[] typeCounts = new int[MismatchType.values().length];
+
+    public BlockMismatchStorage()
+    {
+        this.pairIds.defaultReturnValue(-1);
+        this.positionEntries.defaultReturnValue(-1L);
+    }
+
+    public void clear()
+    {
+        this.pairIds.clear();
+        this.statesExpected.clear();
+        this.statesFound.clear();
+        this.mismatchTypes.clear();
+        this.pairCounts.clear();
+        this.chunkBuckets.clear();
+        this.positionEntries.clear();
+        this.pairIds.trim();
+        this.chunkBuckets.trim();
+        this.positionEntries.trim();
+
+        for (int i = 0; i < this.typeCounts.length; ++i)
+        {
+            this.typeCounts[i] = 0;
+        }
+    }
+
+    /**
+     * @return the id of the given state pair, or -1 if there hasn't been any mismatches of that pair
+     */
+    public int getPairId(IBlockState stateExpected, IBlockState stateFound)
+    {
+        this.mutablePair.setLeft(stateExpected);
+        this.mutablePair.setRight(stateFound);
+
+        return this.pairIds.getInt(this.mutablePair);
+    }
+
+    /**
+     * @return the id of the given state pair, registering it first if necessary
+     */
+    public int getOrCreatePairId(MismatchType type, IBlockState stateExpected, IBlockState stateFound)
+    {
+        int id = this.getPairId(stateExpected, stateFound);
+
+        if (id < 0)
+        {
+            id = this.pairCounts.size();
+            this.pairIds.put(Pair.of(stateExpected, stateFound), id);
+            this.statesExpected.add(stateExpected);
+            this.statesFound.add(stateFound);
+            this.mismatchTypes.add(type);
+            this.pairCounts.add(0);
+        }
+
+        return id;
+    }
+
+    public int getPairCount()
+    {
+        return this.pairCounts.size();
+    }
+
+    public MismatchType getMismatchType(int pairId)
+    {
+        return this.mismatchTypes.get(pairId);
+    }
+
+    public IBlockState getStateExpected(int pairId)
+    {
+        return this.statesExpected.get(pairId);
+    }
+
+    public IBlockState getStateFound(int pairId)
+    {
+        return this.statesFound.get(pairId);
+    }
+
+    public int getCount(int pairId)
+    {
+        return this.pairCounts.getInt(pairId);
+    }
+
+    public int getCount(MismatchType type)
+    {
+        return this.typeCounts[type.ordinal()];
+    }
+
+    public BlockMismatch getMismatch(int pairId)
+    {
+        return new BlockMismatch(this.getMismatchType(pairId), this.getStateExpected(pairId), this.getStateFound(pairId), this.getCount(pairId));
+    }
+
+    /**
+     * @return the pair id of the mismatch at the given packed position, or -1 if there is no mismatch there
+     */
+    public int getPairIdAt(long pos)
+    {
+        long entry = this.positionEntries.get(pos);
+        return entry != -1L ? (int) (entry >>> 32) : -1;
+    }
+
+    public void addPosition(long pos, int pairId)
+    {
+        this.removePosition(pos);
+
+        long chunkKey = getChunkKey(pos);
+        ChunkBucket bucket = this.chunkBuckets.get(chunkKey);
+
+        if (bucket == null)
+        {
+            bucket = new ChunkBucket();
+            this.chunkBuckets.put(chunkKey, bucket);
+        }
+
+        this.positionEntries.put(pos, ((long) pairId << 32) | (long) bucket.positions.size());
+        bucket.positions.add(pos);
+        bucket.pairIds.add(pairId);
+        this.pairCounts.set(pairId, this.pairCounts.getInt(pairId) + 1);
+        ++this.typeCounts[this.mismatchTypes.get(pairId).ordinal()];
+    }
+
+    /**
+     * Removes the mismatch at the given packed position, if any
+     * @return the pair id of the removed mismatch, or -1 if there was no mismatch at that position
+     */
+    public int removePosition(long pos)
+    {
+        long entry = this.positionEntries.remove(pos);
+
+        if (entry == -1L)
+        {
+            return -1;
+        }
+
+        int pairId = (int) (entry >>> 32);
+        int index = (int) entry;
+        long chunkKey = getChunkKey(pos);
+        ChunkBucket bucket = this.chunkBuckets.get(chunkKey);
+        int lastIndex = bucket.positions.size() - 1;
+
+        // Move the last position into the removed slot, to avoid shifting the lists
+        if (index != lastIndex)
+        {
+            long posLast = bucket.positions.getLong(lastIndex);
+            int pairIdLast = bucket.pairIds.getInt(lastIndex);
+            bucket.positions.set(index, posLast);
+            bucket.pairIds.set(index, pairIdLast);
+            this.positionEntries.put(posLast, ((long) pairIdLast << 32) | (long) index);
+        }
+
+        bucket.positions.removeLong(lastIndex);
+        bucket.pairIds.removeInt(lastIndex);
+
+        if (bucket.positions.isEmpty())
+        {
+            this.chunkBuckets.remove(chunkKey);
+        }
+
+        this.pairCounts.set(pairId, this.pairCounts.getInt(pairId) - 1);
+        --this.typeCounts[this.mismatchTypes.get(pairId).ordinal()];
+
+        return pairId;
+    }
+
+    /**
+     * Removes all the positions of the given pair. The pair id itself stays registered.
+     */
+    public void removeAllPositions(int pairId)
+    {
+        LongArrayList toRemove = new LongArrayList(this.getCount(pairId));
+
+        for (ChunkBucket bucket : this.chunkBuckets.values())
+        {
+            final int size = bucket.positions.size();
+
+            for (int i = 0; i < size; ++i)
+            {
+                if (bucket.pairIds.getInt(i) == pairId)
+                {
+                    toRemove.add(bucket.positions.getLong(i));
+                }
+            }
+        }
+
+        LongIterator iter = toRemove.iterator();
+
+        while (iter.hasNext())
+        {
+            this.removePosition(iter.nextLong());
+        }
+    }
+
+    /**
+     * Removes all the mismatch positions within the given chunk section. The pair ids stay registered.
+     */
+    public void removeSection(int chunkX, int chunkZ, int sectionY)
+    {
+        ChunkBucket bucket = this.chunkBuckets.get(ChunkPos.asLong(chunkX, chunkZ));
+
+        if (bucket == null)
+        {
+            return;
+        }
+
+        LongArrayList toRemove = new LongArrayList();
+        final int size = bucket.positions.size();
+
+        for (int i = 0; i < size; ++i)
+        {
+            long pos = bucket.positions.getLong(i);
+
+            if ((PositionUtils.unpackY(pos) >> 4) == sectionY)
+            {
+                toRemove.add(pos);
+            }
+        }
+
+        LongIterator iter = toRemove.iterator();
+
+        while (iter.hasNext())
+        {
+            this.removePosition(iter.nextLong());
+        }
+    }
+
+    /**
+     * Calls the consumer for every stored mismatch position
+     */
+    public void forEachPosition(IPositionConsumer consumer)
+    {
+        for (ChunkBucket bucket : this.chunkBuckets.values())
+        {
+            final int size = bucket.positions.size();
+
+            for (int i = 0; i < size; ++i)
+            {
+                consumer.accept(bucket.positions.getLong(i), bucket.pairIds.getInt(i));
+            }
+        }
+    }
+
+    /**
+     * Finds the closest mismatch positions of the selected pairs, by searching the
+     * chunk buckets in expanding square rings of chunks around the center position.
+     * The search stops once the closest possible position in the next ring is farther
+     * away than the farthest of the <b>maxCount</b> closest positions found so far,
+     * so the cost depends on the number of mismatches near the center, not on the total count.
+     * @param selectedPairs the pairs to include, indexed by the pair id
+     * @param positionsOut the found packed positions, closest first
+     * @param pairIdsOut the pair ids of the found positions
+     */
+    public void findClosest(BlockPos center, int maxCount, boolean[] selectedPairs, LongArrayList positionsOut, IntArrayList pairIdsOut)
+    {
+        positionsOut.clear();
+        pairIdsOut.clear();
+
+        if (maxCount <= 0 || this.chunkBuckets.isEmpty())
+        {
+            return;
+        }
+
+        int minCX = Integer.MAX_VALUE;
+        int minCZ = Integer.MAX_VALUE;
+        int maxCX = Integer.MIN_VALUE;
+        int maxCZ = Integer.MIN_VALUE;
+        LongIterator keyIter = this.chunkBuckets.keySet().iterator();
+
+        while (keyIter.hasNext())
+        {
+            long key = keyIter.nextLong();
+            int cx = (int) key;
+            int cz = (int) (key >> 32);
+            minCX = Math.min(minCX, cx);
+            minCZ = Math.min(minCZ, cz);
+            maxCX = Math.max(maxCX, cx);
+            maxCZ = Math.max(maxCZ, cz);
+        }
+
+        final int centerCX = center.getX() >> 4;
+        final int centerCZ = center.getZ() >> 4;
+        // The distance to the edge of the center chunk, ie. the closest distance to any block in the first ring
+        final int edge = Math.min(Math.min((center.getX() & 0xF) + 1, 16 - (center.getX() & 0xF)),
+                                  Math.min((center.getZ() & 0xF) + 1, 16 - (center.getZ() & 0xF)));
+        // The rings closer than this don't touch any of the buckets
+        final int startRing = Math.max(0, Math.max(Math.max(minCX - centerCX, centerCX - maxCX), Math.max(minCZ - centerCZ, centerCZ - maxCZ)));
+        final int endRing = Math.max(Math.max(Math.abs(minCX - centerCX), Math.abs(maxCX - centerCX)),
+                                     Math.max(Math.abs(minCZ - centerCZ), Math.abs(maxCZ - centerCZ)));
+        NearestPositions nearest = new NearestPositions(maxCount);
+
+        for (int ring = startRing; ring <= endRing; ++ring)
+        {
+            if (ring > 0 && nearest.isFull())
+            {
+                long ringDist = (long) (ring - 1) * 16L + edge;
+
+                if (ringDist * ringDist >= nearest.getMaxDistance())
+                {
+                    break;
+                }
+            }
+
+            final int cxMin = Math.max(minCX, centerCX - ring);
+            final int cxMax = Math.min(maxCX, centerCX + ring);
+
+            for (int cx = cxMin; cx <= cxMax; ++cx)
+            {
+                if (cx == centerCX - ring || cx == centerCX + ring)
+                {
+                    final int czMin = Math.max(minCZ, centerCZ - ring);
+                    final int czMax = Math.min(maxCZ, centerCZ + ring);
+
+                    for (int cz = czMin; cz <= czMax; ++cz)
+                    {
+                        this.searchChunk(cx, cz, center, selectedPairs, nearest);
+                    }
+                }
+                else
+                {
+                    if (centerCZ - ring >= minCZ)
+                    {
+                        this.searchChunk(cx, centerCZ - ring, center, selectedPairs, nearest);
+                    }
+
+                    if (centerCZ + ring <= maxCZ)
+                    {
+                        this.searchChunk(cx, centerCZ + ring, center, selectedPairs, nearest);
+                    }
+                }
+            }
+        }
+
+        nearest.getSorted(positionsOut, pairIdsOut);
+    }
+
+    private void searchChunk(int cx, int cz, BlockPos center, boolean[] selectedPairs, NearestPositions nearest)
+    {
+        ChunkBucket bucket = this.chunkBuckets.get(ChunkPos.asLong(cx, cz));
+
+        if (bucket == null)
+        {
+            return;
+        }
+
+        final int x = center.getX();
+        final int y = center.getY();
+        final int z = center.getZ();
+
+        if (nearest.isFull())
+        {
+            long dx = Math.max(0, Math.max((cx << 4) - x, x - ((cx << 4) + 15)));
+            long dz = Math.max(0, Math.max((cz << 4) - z, z - ((cz << 4) + 15)));
+
+            if (dx * dx + dz * dz >= nearest.getMaxDistance())
+            {
+                return;
+            }
+        }
+
+        final int size = bucket.positions.size();
+
+        for (int i = 0; i < size; ++i)
+        {
+            int pairId = bucket.pairIds.getInt(i);
+
+            if (pairId < selectedPairs.length && selectedPairs[pairId])
+            {
+                long pos = bucket.positions.getLong(i);
+                long dx = PositionUtils.unpackX(pos) - x;
+                long dy = PositionUtils.unpackY(pos) - y;
+                long dz = PositionUtils.unpackZ(pos) - z;
+
+                nearest.offer(pos, pairId, dx * dx + dy * dy + dz * dz);
+            }
+        }
+    }
+
+    private static long getChunkKey(long pos)
+    {
+        return ChunkPos.asLong(PositionUtils.unpackX(pos) >> 4, PositionUtils.unpackZ(pos) >> 4);
+    }
+
+    private static class ChunkBucket
+    {
+        private final LongArrayList positions = new LongArrayList();
+        private final IntArrayList pairIds = new IntArrayList();
+    }
+
+    /**
+     * A bounded max-heap by distance, which keeps the given number of closest positions
+     */
+    private static class NearestPositions
+    {
+        private final long[] distances;
+        private final long[] positions;
+        private final int[] pairIds;
+        private int size;
+
+        private NearestPositions(int capacity)
+        {
+            this.distances = new long[capacity];
+            this.positions = new long[capacity];
+            this.pairIds = new int[capacity];
+        }
+
+        private boolean isFull()
+        {
+            return this.size >= this.distances.length;
+        }
+
+        private long getMaxDistance()
+        {
+            return this.distances[0];
+        }
+
+        private void offer(long pos, int pairId, long distance)
+        {
+            if (this.size < this.distances.length)
+            {
+                // Sift up
+                int index = this.size++;
+
+                while (index > 0)
+                {
+                    int parent = (index - 1) >> 1;
+
+                    if (this.distances[parent] >= distance)
+                    {
+                        break;
+                    }
+
+                    this.set(index, parent);
+                    index = parent;
+                }
+
+                this.set(index, pos, pairId, distance);
+            }
+            else if (distance < this.distances[0])
+            {
+                this.replaceTop(pos, pairId, distance);
+            }
+        }
+
+        private void replaceTop(long pos, int pairId, long distance)
+        {
+            // Sift down
+            int index = 0;
+
+            while (true)
+            {
+                int child = (index << 1) + 1;
+
+                if (child >= this.size)
+                {
+                    break;
+                }
+
+                if (child + 1 < this.size && this.distances[child + 1] > this.distances[child])
+                {
+                    ++child;
+                }
+
+                if (this.distances[child] <= distance)
+                {
+                    break;
+                }
+
+                this.set(index, child);
+                index = child;
+            }
+
+            this.set(index, pos, pairId, distance);
+        }
+
+        private void set(int index, int fromIndex)
+        {
+            this.set(index, this.positions[fromIndex], this.pairIds[fromIndex], this.distances[fromIndex]);
+        }
+
+        private void set(int index, long pos, int pairId, long distance)
+        {
+            this.positions[index] = pos;
+            this.pairIds[index] = pairId;
+            this.distances[index] = distance;
+        }
+
+        /**
+         * Empties the heap into the given lists, closest position first
+         */
+        private void getSorted(LongArrayList positionsOut, IntArrayList pairIdsOut)
+        {
+            final int count = this.size;
+            long[] positions = new long[count];
+            int[] pairIds = new int[count];
+
+            for (int i = count - 1; i >= 0; --i)
+            {
+                positions[i] = this.positions[0];
+                pairIds[i] = this.pairIds[0];
+
+                long lastPos = this.positions[this.size - 1];
+                int lastPairId = this.pairIds[this.size - 1];
+                long lastDistance = this.distances[this.size - 1];
+                --this.size;
+
+                if (this.size > 0)
+                {
+                    this.replaceTop(lastPos, lastPairId, lastDistance);
+                }
+            }
+
+            positionsOut.addElements(0, positions);
+            pairIdsOut.addElements(0, pairIds);
+        }
+    }
+
+    public interface IPositionConsumer
+    {
+        void accept(long pos, int pairId);
+    }
+}
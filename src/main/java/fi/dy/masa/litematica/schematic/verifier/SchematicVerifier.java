@@ -4,17 +4,23 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
@@ -24,17 +30,21 @@ import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import fi.dy.masa.litematica.Litematica;
 import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.data.DataManager;
 import fi.dy.masa.litematica.render.infohud.IInfoHudRenderer;
 import fi.dy.masa.litematica.render.infohud.InfoHud;
 import fi.dy.masa.litematica.render.infohud.RenderPhase;
 import fi.dy.masa.litematica.scheduler.TaskScheduler;
+import fi.dy.masa.litematica.scheduler.TickBudget;
 import fi.dy.masa.litematica.scheduler.tasks.TaskBase;
 import fi.dy.masa.litematica.schematic.placement.SchematicPlacement;
+import fi.dy.masa.litematica.schematic.placement.SubRegionPlacement.RequiredEnabled;
+import fi.dy.masa.litematica.selection.Box;
 import fi.dy.masa.litematica.util.BlockInfoListType;
 import fi.dy.masa.litematica.util.ItemUtils;
-import fi.dy.masa.litematica.util.PositionUtils;
 import fi.dy.masa.litematica.world.WorldSchematic;
 import fi.dy.masa.malilib.gui.GuiBase;
 import fi.dy.masa.malilib.gui.Message.MessageType;
@@ -43,31 +53,32 @@ import fi.dy.masa.malilib.util.Color4f;
 import fi.dy.masa.malilib.util.IntBoundingBox;
 import fi.dy.masa.malilib.util.LayerRange;
 import fi.dy.masa.malilib.util.StringUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 
 public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
 {
     private static final MutablePair<IBlockState, IBlockState> MUTABLE_PAIR = new MutablePair<>();
-    private static final BlockPos.MutableBlockPos MUTABLE_POS = new BlockPos.MutableBlockPos();
     private static final IBlockState AIR = Blocks.AIR.getDefaultState();
     private static final List<SchematicVerifier> ACTIVE_VERIFIERS = new ArrayList<>();
+    private static final int ALL_SECTIONS = 0xFFFF;
 
-    private final ArrayListMultimap<Pair<IBlockState, IBlockState>, BlockPos> missingBlocksPositions = ArrayListMultimap.create();
-    private final ArrayListMultimap<Pair<IBlockState, IBlockState>, BlockPos> extraBlocksPositions = ArrayListMultimap.create();
-    private final ArrayListMultimap<Pair<IBlockState, IBlockState>, BlockPos> wrongBlocksPositions = ArrayListMultimap.create();
-    private final ArrayListMultimap<Pair<IBlockState, IBlockState>, BlockPos> wrongStatesPositions = ArrayListMultimap.create();
+    private final BlockMismatchStorage mismatches = new BlockMismatchStorage();
     private final Object2IntOpenHashMap<IBlockState> correctStateCounts = new Object2IntOpenHashMap<>();
-    private final Object2ObjectOpenHashMap<BlockPos, BlockMismatch> blockMismatches = new Object2ObjectOpenHashMap<>();
     private final HashSet<Pair<IBlockState, IBlockState>> ignoredMismatches = new HashSet<>();
-    private final List<BlockPos> missingBlocksPositionsClosest = new ArrayList<>();
-    private final List<BlockPos> extraBlocksPositionsClosest = new ArrayList<>();
-    private final List<BlockPos> mismatchedBlocksPositionsClosest = new ArrayList<>();
-    private final List<BlockPos> mismatchedStatesPositionsClosest = new ArrayList<>();
     private final Set<MismatchType> selectedCategories = new HashSet<>();
     private final HashMultimap<MismatchType, BlockMismatch> selectedEntries = HashMultimap.create();
     private final Set<ChunkPos> requiredChunks = new HashSet<>();
-    private final Set<BlockPos> recheckQueue = new HashSet<>();
+    /** The changed sections of the already verified chunks, as a bit mask of the section y-indices per chunk */
+    private final Map<ChunkPos, Integer> changedSections = new LinkedHashMap<>();
+    /** The results of each verified section per chunk, so that they can be replaced when a section gets verified again */
+    private final Map<ChunkPos, VerifierChunkTask.Result[]> chunkResults = new HashMap<>();
+    private final Map<ChunkPos, Future<List<VerifierChunkTask.Result>>> chunkVerifyTasks = new LinkedHashMap<>();
+    private final List<IntBoundingBox> placementBoxes = new ArrayList<>();
+    @Nullable private static ExecutorService verifierExecutor;
+    private static int verifierThreads;
     private WorldClient worldClient;
     private WorldSchematic worldSchematic;
     private SchematicPlacement schematicPlacement;
@@ -90,7 +101,13 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
 
     public static void clearActiveVerifiers()
     {
+        for (int i = 0; i < ACTIVE_VERIFIERS.size(); ++i)
+        {
+            ACTIVE_VERIFIERS.get(i).cancelChunkVerifications();
+        }
+
         ACTIVE_VERIFIERS.clear();
+        shutdownVerifierExecutor();
     }
 
     public static void markVerifierBlockChanges(BlockPos pos)
@@ -101,6 +118,14 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         }
     }
 
+    public static void markVerifierChunkChanges(int chunkX, int chunkZ)
+    {
+        for (int i = 0; i < ACTIVE_VERIFIERS.size(); ++i)
+        {
+            ACTIVE_VERIFIERS.get(i).markChunkChanged(new ChunkPos(chunkX, chunkZ));
+        }
+    }
+
     @Override
     public boolean getShouldRenderText(RenderPhase phase)
     {
@@ -150,22 +175,22 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
 
     public int getMissingBlocks()
     {
-        return this.missingBlocksPositions.size();
+        return this.mismatches.getCount(MismatchType.MISSING);
     }
 
     public int getExtraBlocks()
     {
-        return this.extraBlocksPositions.size();
+        return this.mismatches.getCount(MismatchType.EXTRA);
     }
 
     public int getMismatchedBlocks()
     {
-        return this.wrongBlocksPositions.size();
+        return this.mismatches.getCount(MismatchType.WRONG_BLOCK);
     }
 
     public int getMismatchedStates()
     {
-        return this.wrongStatesPositions.size();
+        return this.mismatches.getCount(MismatchType.WRONG_STATE);
     }
 
     public int getCorrectStatesCount()
@@ -295,7 +320,7 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     public boolean execute()
     {
         this.verifyChunks();
-        this.checkChangedPositions();
+        this.verifyChangedChunks();
         return false;
     }
 
@@ -316,6 +341,13 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
 
         this.setCompletionListener(completionListener);
         this.requiredChunks.addAll(schematicPlacement.getTouchedChunks());
+
+        for (Box box : schematicPlacement.getSubRegionBoxes(RequiredEnabled.PLACEMENT_ENABLED).values())
+        {
+            this.placementBoxes.add(IntBoundingBox.createProper(box.getPos1().getX(), box.getPos1().getY(), box.getPos1().getZ(),
+                                                                box.getPos2().getX(), box.getPos2().getY(), box.getPos2().getZ()));
+        }
+
         this.totalRequiredChunks = this.requiredChunks.size();
         this.verificationStarted = true;
 
@@ -366,13 +398,12 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         this.schematicBlocks = 0;
         this.clientBlocks = 0;
         this.requiredChunks.clear();
-        this.recheckQueue.clear();
+        this.changedSections.clear();
+        this.chunkResults.clear();
+        this.placementBoxes.clear();
+        this.cancelChunkVerifications();
 
-        this.missingBlocksPositions.clear();
-        this.extraBlocksPositions.clear();
-        this.wrongBlocksPositions.clear();
-        this.wrongStatesPositions.clear();
-        this.blockMismatches.clear();
+        this.mismatches.clear();
         this.correctStateCounts.clear();
         this.selectedCategories.clear();
         this.selectedEntries.clear();
@@ -386,146 +417,447 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         this.clearActiveMismatchRenderPositions();
     }
 
+    /**
+     * Marks the chunk section of the given position to be verified again.
+     * A block change on the edge of a section can also change the actual state
+     * of the neighboring block in the adjacent section, so that section is also marked.
+     * Positions outside of all the placement boxes are ignored.
+     */
     public void markBlockChanged(BlockPos pos)
     {
-        if (this.finished)
+        final int x = pos.getX();
+        final int y = pos.getY();
+        final int z = pos.getZ();
+
+        this.markPositionChanged(x, y, z);
+
+        if ((x & 0xF) == 0 || (x & 0xF) == 15)
+        {
+            this.markPositionChanged((x & 0xF) == 0 ? x - 1 : x + 1, y, z);
+        }
+
+        if ((y & 0xF) == 0 || (y & 0xF) == 15)
+        {
+            this.markPositionChanged(x, (y & 0xF) == 0 ? y - 1 : y + 1, z);
+        }
+
+        if ((z & 0xF) == 0 || (z & 0xF) == 15)
+        {
+            this.markPositionChanged(x, y, (z & 0xF) == 0 ? z - 1 : z + 1);
+        }
+    }
+
+    private void markPositionChanged(int x, int y, int z)
+    {
+        if (y < 0 || y > 255)
         {
-            BlockMismatch mismatch = this.blockMismatches.get(pos);
+            return;
+        }
 
-            if (mismatch != null)
+        for (IntBoundingBox box : this.placementBoxes)
+        {
+            if (x >= box.minX && x <= box.maxX && y >= box.minY && y <= box.maxY && z >= box.minZ && z <= box.maxZ)
             {
-                this.recheckQueue.add(pos);
+                this.markSectionsChanged(new ChunkPos(x >> 4, z >> 4), 1 << (y >> 4));
+                return;
             }
         }
     }
 
-    private void checkChangedPositions()
+    /**
+     * Marks all the sections of the given chunk to be verified again
+     */
+    public void markChunkChanged(ChunkPos pos)
+    {
+        this.markSectionsChanged(pos, ALL_SECTIONS);
+    }
+
+    /**
+     * Marks the given sections of the chunk to be verified again, if the chunk has already been verified.
+     * The old results of the sections are kept until the new results replace them.
+     * A verification of the chunk that is in progress on the worker threads
+     * is using outdated data, so it gets cancelled and re-queued.
+     * @param sectionMask the sections to mark, one bit per section y-index
+     */
+    private void markSectionsChanged(ChunkPos pos, int sectionMask)
+    {
+        if (this.verificationStarted == false && this.finished == false)
+        {
+            return;
+        }
+
+        Future<List<VerifierChunkTask.Result>> task = this.chunkVerifyTasks.remove(pos);
+
+        if (task != null)
+        {
+            task.cancel(false);
+        }
+
+        if (this.chunkResults.containsKey(pos))
+        {
+            Integer mask = this.changedSections.get(pos);
+            this.changedSections.put(pos, mask != null ? mask | sectionMask : sectionMask);
+        }
+    }
+
+    private void verifyChangedChunks()
     {
-        if (this.finished && this.recheckQueue.isEmpty() == false)
+        if ((this.finished || this.verificationActive) && this.changedSections.isEmpty() == false)
         {
-            Iterator<BlockPos> iter = this.recheckQueue.iterator();
+            final int threads = Configs.Generic.VERIFIER_THREADS.getIntegerValue();
 
-            while (iter.hasNext())
+            if (threads > 0)
+            {
+                this.verifyChunksThreaded(threads, this.changedSections.keySet());
+            }
+            else
             {
-                BlockPos pos = iter.next();
+                this.cancelChunkVerifications();
+                shutdownVerifierExecutor();
+                this.verifyChunksOnMainThread(this.changedSections.keySet());
+            }
 
-                if (this.worldClient.isAreaLoaded(pos, 1, false) &&
-                    this.worldSchematic.isBlockLoaded(pos, false))
-                {
-                    BlockMismatch mismatch = this.blockMismatches.get(pos);
+            if (this.changedSections.isEmpty())
+            {
+                this.updateMismatchOverlays();
+            }
+        }
+    }
 
-                    if (mismatch != null)
-                    {
-                        this.blockMismatches.remove(pos);
+    private boolean verifyChunks()
+    {
+        if (this.verificationActive)
+        {
+            final int threads = Configs.Generic.VERIFIER_THREADS.getIntegerValue();
+            boolean checkedSome;
 
-                        IBlockState stateFound = this.worldClient.getBlockState(pos).getActualState(this.worldClient, pos);
-                        MUTABLE_PAIR.setLeft(mismatch.stateExpected);
-                        MUTABLE_PAIR.setRight(mismatch.stateFound);
+            if (threads > 0)
+            {
+                checkedSome = this.verifyChunksThreaded(threads, this.requiredChunks);
+            }
+            else
+            {
+                this.cancelChunkVerifications();
+                shutdownVerifierExecutor();
+                checkedSome = this.verifyChunksOnMainThread(this.requiredChunks);
+            }
 
-                        this.getMapForMismatchType(mismatch.mismatchType).remove(MUTABLE_PAIR, pos);
-                        this.checkBlockStates(pos.getX(), pos.getY(), pos.getZ(), mismatch.stateExpected, stateFound);
+            if (checkedSome)
+            {
+                this.updateRequiredChunksStringList();
+            }
 
-                        if (stateFound != AIR && mismatch.stateFound == AIR)
-                        {
-                            this.clientBlocks++;
-                        }
-                    }
-                    else
-                    {
-                        IBlockState stateExpected = this.worldSchematic.getBlockState(pos);
-                        IBlockState stateFound = this.worldClient.getBlockState(pos).getActualState(this.worldClient, pos);
-                        this.checkBlockStates(pos.getX(), pos.getY(), pos.getZ(), stateExpected, stateFound);
-                    }
+            if (this.requiredChunks.isEmpty())
+            {
+                this.verificationActive = false;
+                this.verificationStarted = false;
+                this.finished = true;
+
+                this.notifyListener();
+            }
+        }
+
+        return this.verificationActive == false; // finished or stopped
+    }
 
-                    iter.remove();
+    private boolean isChunkReadyForVerification(ChunkPos pos)
+    {
+        int count = 0;
+
+        for (int cx = pos.x - 1; cx <= pos.x + 1; ++cx)
+        {
+            for (int cz = pos.z - 1; cz <= pos.z + 1; ++cz)
+            {
+                if (this.worldClient.getChunkProvider().isChunkGeneratedAt(cx, cz))
+                {
+                    ++count;
                 }
             }
+        }
+
+        // Require the surrounding chunks in the client world to be loaded as well
+        return count == 9 && this.worldSchematic.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z);
+    }
+
+    /**
+     * Verifies the ready chunks from the given set on the main thread.
+     * This uses the same snapshots and comparison as the worker threads, just without the executor.
+     */
+    private boolean verifyChunksOnMainThread(Set<ChunkPos> chunks)
+    {
+        Iterator<ChunkPos> iter = chunks.iterator();
+        boolean checkedSome = false;
+
+        while (iter.hasNext())
+        {
+            if (TickBudget.getInstance().hasTimeLeft() == false)
+            {
+                break;
+            }
 
-            if (this.recheckQueue.isEmpty())
+            ChunkPos pos = iter.next();
+
+            if (this.isChunkReadyForVerification(pos))
             {
-                this.updateMismatchOverlays();
+                this.mergeChunkResults(this.createChunkVerifyTask(pos).call());
+                iter.remove();
+                checkedSome = true;
             }
         }
+
+        return checkedSome;
     }
 
-    private ArrayListMultimap<Pair<IBlockState, IBlockState>, BlockPos> getMapForMismatchType(MismatchType mismatchType)
+    /**
+     * Captures snapshots of the ready chunks from the given set and compares them on the worker threads,
+     * and merges the results of the finished chunks on the main thread.
+     */
+    private boolean verifyChunksThreaded(int threads, Set<ChunkPos> chunks)
     {
-        switch (mismatchType)
+        boolean checkedSome = false;
+        Iterator<Map.Entry<ChunkPos, Future<List<VerifierChunkTask.Result>>>> taskIter = this.chunkVerifyTasks.entrySet().iterator();
+
+        while (taskIter.hasNext())
+        {
+            if (TickBudget.getInstance().hasTimeLeft() == false)
+            {
+                break;
+            }
+
+            Map.Entry<ChunkPos, Future<List<VerifierChunkTask.Result>>> entry = taskIter.next();
+
+            if (entry.getValue().isDone() == false)
+            {
+                continue;
+            }
+
+            ChunkPos pos = entry.getKey();
+            taskIter.remove();
+
+            try
+            {
+                this.mergeChunkResults(entry.getValue().get());
+            }
+            catch (Exception e)
+            {
+                // Keep the chunk queued, so that it gets submitted again
+                Litematica.logger.warn("Exception while verifying the chunk at {}", pos, e);
+                continue;
+            }
+
+            this.requiredChunks.remove(pos);
+            this.changedSections.remove(pos);
+            checkedSome = true;
+        }
+
+        ExecutorService executor = getVerifierExecutor(threads);
+        final int maxInFlight = threads * 4;
+        Iterator<ChunkPos> iter = chunks.iterator();
+
+        while (iter.hasNext() && this.chunkVerifyTasks.size() < maxInFlight)
         {
-            case MISSING:
-                return this.missingBlocksPositions;
-            case EXTRA:
-                return this.extraBlocksPositions;
-            case WRONG_BLOCK:
-                return this.wrongBlocksPositions;
-            case WRONG_STATE:
-                return this.wrongStatesPositions;
-            default:
-                return null;
+            if (TickBudget.getInstance().hasTimeLeft() == false)
+            {
+                break;
+            }
+
+            ChunkPos pos = iter.next();
+
+            if (this.chunkVerifyTasks.containsKey(pos) == false && this.isChunkReadyForVerification(pos))
+            {
+                this.chunkVerifyTasks.put(pos, executor.submit(this.createChunkVerifyTask(pos)));
+            }
         }
+
+        return checkedSome;
     }
 
-    private boolean verifyChunks()
+    /**
+     * Captures the snapshots for verifying the chunk. If the chunk has already been verified,
+     * then only its changed sections are captured, otherwise all of its sections are.
+     */
+    private VerifierChunkTask createChunkVerifyTask(ChunkPos pos)
     {
-        if (this.verificationActive)
+        Chunk chunkClient = this.worldClient.getChunk(pos.x, pos.z);
+        Chunk chunkSchematic = this.worldSchematic.getChunk(pos.x, pos.z);
+        Map<String, IntBoundingBox> boxes = this.schematicPlacement.getBoxesWithinChunk(pos.x, pos.z);
+        Integer changedMask = this.changedSections.get(pos);
+        final int sectionMask = changedMask != null ? changedMask : ALL_SECTIONS;
+        VerifierChunkTask task = new VerifierChunkTask(pos, sectionMask, Configs.Visuals.IGNORE_FLUIDS_AS_EXTRA.getBooleanValue());
+
+        for (IntBoundingBox box : boxes.values())
         {
-            Iterator<ChunkPos> iter = this.requiredChunks.iterator();
-            boolean checkedSome = false;
+            IntBoundingBox area = this.getVerificationArea(box);
+
+            if (area == null)
+            {
+                continue;
+            }
 
-            while (iter.hasNext())
+            for (int sectionY = Math.max(0, area.minY >> 4); sectionY <= Math.min(15, area.maxY >> 4); ++sectionY)
             {
-                if ((System.nanoTime() - DataManager.getClientTickStartTime()) >= 50000000L)
+                if ((sectionMask & (1 << sectionY)) == 0)
                 {
-                    break;
+                    continue;
                 }
 
-                ChunkPos pos = iter.next();
-                int count = 0;
+                final int minY = Math.max(area.minY, sectionY << 4);
+                final int maxY = Math.min(area.maxY, (sectionY << 4) + 15);
+                VerifierSectionSnapshot snapshotClient = VerifierSectionSnapshot.capture(getSection(chunkClient, sectionY),
+                        chunkClient.getWorld(), area.minX, minY, area.minZ, area.maxX, maxY, area.maxZ);
+                VerifierSectionSnapshot snapshotSchematic = VerifierSectionSnapshot.capture(getSection(chunkSchematic, sectionY),
+                        null, area.minX, minY, area.minZ, area.maxX, maxY, area.maxZ);
 
-                for (int cx = pos.x - 1; cx <= pos.x + 1; ++cx)
-                {
-                    for (int cz = pos.z - 1; cz <= pos.z + 1; ++cz)
-                    {
-                        if (this.worldClient.getChunkProvider().isChunkGeneratedAt(cx, cz))
-                        {
-                            ++count;
-                        }
-                    }
-                }
+                task.addArea(snapshotClient, snapshotSchematic, area.minX, minY, area.minZ, area.maxX, maxY, area.maxZ);
+            }
+        }
 
-                // Require the surrounding chunks in the client world to be loaded as well
-                if (count == 9 && this.worldSchematic.getChunkProvider().isChunkGeneratedAt(pos.x, pos.z))
-                {
-                    Chunk chunkClient = this.worldClient.getChunk(pos.x, pos.z);
-                    Chunk chunkSchematic = this.worldSchematic.getChunk(pos.x, pos.z);
-                    Map<String, IntBoundingBox> boxes = this.schematicPlacement.getBoxesWithinChunk(pos.x, pos.z);
+        return task;
+    }
 
-                    for (IntBoundingBox box : boxes.values())
-                    {
-                        this.verifyChunk(chunkClient, chunkSchematic, box);
-                    }
+    private void mergeChunkResults(List<VerifierChunkTask.Result> results)
+    {
+        for (VerifierChunkTask.Result result : results)
+        {
+            this.mergeSectionResult(result);
+        }
+    }
 
-                    iter.remove();
-                    checkedSome = true;
-                }
+    private void mergeSectionResult(VerifierChunkTask.Result result)
+    {
+        // Replace the previous results of a section that was verified again
+        this.removeSectionResult(result.chunkPos, result.sectionY);
+
+        BlockMismatchStorage chunkMismatches = result.mismatches;
+        final int pairCount = chunkMismatches.getPairCount();
+        // Maps the pair ids of the chunk's storage to the pair ids of the main storage, -1 for ignored pairs
+        final int[] pairIdMap = new int[pairCount];
+        final boolean[] itemsCached = new boolean[pairCount];
+
+        for (int chunkPairId = 0; chunkPairId < pairCount; ++chunkPairId)
+        {
+            IBlockState stateExpected = chunkMismatches.getStateExpected(chunkPairId);
+            IBlockState stateFound = chunkMismatches.getStateFound(chunkPairId);
+            MUTABLE_PAIR.setLeft(stateExpected);
+            MUTABLE_PAIR.setRight(stateFound);
+
+            if (chunkMismatches.getCount(chunkPairId) == 0 || this.ignoredMismatches.contains(MUTABLE_PAIR))
+            {
+                pairIdMap[chunkPairId] = -1;
+            }
+            else
+            {
+                pairIdMap[chunkPairId] = this.mismatches.getOrCreatePairId(chunkMismatches.getMismatchType(chunkPairId), stateExpected, stateFound);
             }
+        }
 
-            if (checkedSome)
+        chunkMismatches.forEachPosition((pos, chunkPairId) -> {
+            int pairId = pairIdMap[chunkPairId];
+
+            if (pairId >= 0)
             {
-                this.updateRequiredChunksStringList();
+                this.mismatches.addPosition(pos, pairId);
+
+                if (itemsCached[chunkPairId] == false)
+                {
+                    BlockPos blockPos = BlockPos.fromLong(pos);
+                    ItemUtils.setItemForBlock(this.worldClient, blockPos, chunkMismatches.getStateFound(chunkPairId));
+                    ItemUtils.setItemForBlock(this.worldSchematic, blockPos, chunkMismatches.getStateExpected(chunkPairId));
+                    itemsCached[chunkPairId] = true;
+                }
             }
+        });
 
-            if (this.requiredChunks.isEmpty())
+        for (Object2IntMap.Entry<IBlockState> entry : result.correctStateCounts.object2IntEntrySet())
+        {
+            IBlockState state = entry.getKey();
+            BlockPos pos = BlockPos.fromLong(result.correctStatePositions.getLong(state));
+
+            ItemUtils.setItemForBlock(this.worldClient, pos, state);
+            this.correctStateCounts.addTo(state, entry.getIntValue());
+        }
+
+        this.correctStatesCount += result.correctStatesCount;
+        this.schematicBlocks += result.schematicBlocks;
+        this.clientBlocks += result.clientBlocks;
+
+        // The mismatches are now in the main storage, only the counts are kept for the section
+        chunkMismatches.clear();
+        result.correctStatePositions.clear();
+        VerifierChunkTask.Result[] sectionResults = this.chunkResults.get(result.chunkPos);
+
+        if (sectionResults == null)
+        {
+            sectionResults = new VerifierChunkTask.Result[16];
+            this.chunkResults.put(result.chunkPos, sectionResults);
+        }
+
+        sectionResults[result.sectionY] = result;
+    }
+
+    private void removeSectionResult(ChunkPos pos, int sectionY)
+    {
+        VerifierChunkTask.Result[] sectionResults = this.chunkResults.get(pos);
+        VerifierChunkTask.Result result = sectionResults != null ? sectionResults[sectionY] : null;
+
+        if (result == null)
+        {
+            return;
+        }
+
+        sectionResults[sectionY] = null;
+        this.mismatches.removeSection(pos.x, pos.z, sectionY);
+
+        for (Object2IntMap.Entry<IBlockState> entry : result.correctStateCounts.object2IntEntrySet())
+        {
+            IBlockState state = entry.getKey();
+
+            if (this.correctStateCounts.addTo(state, -entry.getIntValue()) <= entry.getIntValue())
             {
-                this.verificationActive = false;
-                this.verificationStarted = false;
-                this.finished = true;
+                this.correctStateCounts.removeInt(state);
+            }
+        }
 
-                this.notifyListener();
+        this.correctStatesCount -= result.correctStatesCount;
+        this.schematicBlocks -= result.schematicBlocks;
+        this.clientBlocks -= result.clientBlocks;
+    }
+
+    private void cancelChunkVerifications()
+    {
+        for (Future<List<VerifierChunkTask.Result>> future : this.chunkVerifyTasks.values())
+        {
+            future.cancel(false);
+        }
+
+        this.chunkVerifyTasks.clear();
+    }
+
+    private static ExecutorService getVerifierExecutor(int threads)
+    {
+        if (verifierExecutor == null || verifierThreads != threads)
+        {
+            if (verifierExecutor != null)
+            {
+                verifierExecutor.shutdown();
             }
+
+            ThreadFactory factory = (new ThreadFactoryBuilder()).setNameFormat("Litematica Schematic Verifier %d").setDaemon(true).build();
+            verifierExecutor = Executors.newFixedThreadPool(threads, factory);
+            verifierThreads = threads;
         }
 
-        return this.verificationActive == false; // finished or stopped
+        return verifierExecutor;
+    }
+
+    private static void shutdownVerifierExecutor()
+    {
+        if (verifierExecutor != null)
+        {
+            verifierExecutor.shutdown();
+            verifierExecutor = null;
+            verifierThreads = 0;
+        }
     }
 
     public void ignoreStateMismatch(BlockMismatch mismatch)
@@ -540,18 +872,12 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         if (this.ignoredMismatches.contains(ignore) == false)
         {
             this.ignoredMismatches.add(ignore);
-            this.getMapForMismatchType(mismatch.mismatchType).removeAll(ignore);
 
-            Iterator<Map.Entry<BlockPos, BlockMismatch>> iter = this.blockMismatches.entrySet().iterator();
+            int pairId = this.mismatches.getPairId(mismatch.stateExpected, mismatch.stateFound);
 
-            while (iter.hasNext())
+            if (pairId >= 0)
             {
-                Map.Entry<BlockPos, BlockMismatch> entry = iter.next();
-
-                if (entry.getValue().equals(mismatch))
-                {
-                    iter.remove();
-                }
+                this.mismatches.removeAllPositions(pairId);
             }
         }
 
@@ -589,7 +915,8 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     @Nullable
     public BlockMismatch getMismatchForPosition(BlockPos pos)
     {
-        return this.blockMismatches.get(pos);
+        int pairId = this.mismatches.getPairIdAt(pos.toLong());
+        return pairId >= 0 ? this.mismatches.getMismatch(pairId) : null;
     }
 
     public List<BlockMismatch> getMismatchOverviewFor(MismatchType type)
@@ -602,7 +929,7 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         }
         else
         {
-            this.addCountFor(type, this.getMapForMismatchType(type), list);
+            this.addCountFor(type, list);
         }
 
         return list;
@@ -612,21 +939,26 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     {
         List<BlockMismatch> list = new ArrayList<>();
 
-        this.addCountFor(MismatchType.MISSING, this.missingBlocksPositions, list);
-        this.addCountFor(MismatchType.EXTRA, this.extraBlocksPositions, list);
-        this.addCountFor(MismatchType.WRONG_BLOCK, this.wrongBlocksPositions, list);
-        this.addCountFor(MismatchType.WRONG_STATE, this.wrongStatesPositions, list);
+        this.addCountFor(MismatchType.MISSING, list);
+        this.addCountFor(MismatchType.EXTRA, list);
+        this.addCountFor(MismatchType.WRONG_BLOCK, list);
+        this.addCountFor(MismatchType.WRONG_STATE, list);
 
         Collections.sort(list);
 
         return list;
     }
 
-    private void addCountFor(MismatchType mismatchType, ArrayListMultimap<Pair<IBlockState, IBlockState>, BlockPos> map, List<BlockMismatch> list)
+    private void addCountFor(MismatchType mismatchType, List<BlockMismatch> list)
     {
-        for (Pair<IBlockState, IBlockState> pair : map.keySet())
+        final int pairCount = this.mismatches.getPairCount();
+
+        for (int pairId = 0; pairId < pairCount; ++pairId)
         {
-            list.add(new BlockMismatch(mismatchType, pair.getLeft(), pair.getRight(), map.get(pair).size()));
+            if (this.mismatches.getMismatchType(pairId) == mismatchType && this.mismatches.getCount(pairId) > 0)
+            {
+                list.add(this.mismatches.getMismatch(pairId));
+            }
         }
     }
 
@@ -671,7 +1003,12 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         return list;
     }
 
-    private boolean verifyChunk(Chunk chunkClient, Chunk chunkSchematic, IntBoundingBox box)
+    /**
+     * @return the part of the given box that should be verified, clamped to
+     * the render layer range if necessary, or null if nothing should be verified
+     */
+    @Nullable
+    private IntBoundingBox getVerificationArea(IntBoundingBox box)
     {
         LayerRange range = DataManager.getRenderLayerRange();
         EnumFacing.Axis axis = range.getAxis();
@@ -684,93 +1021,51 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         final int endY = ranged && axis == EnumFacing.Axis.Y ? Math.min(box.maxY, range.getLayerMax()) : box.maxY;
         final int endZ = ranged && axis == EnumFacing.Axis.Z ? Math.min(box.maxZ, range.getLayerMax()) : box.maxZ;
 
-        for (int y = startY; y <= endY; ++y)
+        // The box is outside of the render layer range
+        if (startX > endX || startY > endY || startZ > endZ)
         {
-            for (int z = startZ; z <= endZ; ++z)
-            {
-                for (int x = startX; x <= endX; ++x)
-                {
-                    MUTABLE_POS.setPos(x, y, z);
-                    IBlockState stateClient = chunkClient.getBlockState(x, y, z).getActualState(chunkClient.getWorld(), MUTABLE_POS);
-                    IBlockState stateSchematic = chunkSchematic.getBlockState(x, y, z);
-
-                    this.checkBlockStates(x, y, z, stateSchematic, stateClient);
-
-                    if (stateSchematic != AIR)
-                    {
-                        this.schematicBlocks++;
-                    }
-
-                    if (stateClient != AIR)
-                    {
-                        this.clientBlocks++;
-                    }
-                }
-            }
+            return null;
         }
 
-        return true;
+        return new IntBoundingBox(startX, startY, startZ, endX, endY, endZ);
     }
 
-    private void checkBlockStates(int x, int y, int z, IBlockState stateSchematic, IBlockState stateClient)
+    @Nullable
+    private static ExtendedBlockStorage getSection(Chunk chunk, int sectionY)
     {
-        BlockPos pos = new BlockPos(x, y, z);
+        ExtendedBlockStorage[] sections = chunk.getBlockStorageArray();
+        return sectionY >= 0 && sectionY < sections.length ? sections[sectionY] : null;
+    }
 
-        if (stateClient != stateSchematic)
+    /**
+     * Returns the type of mismatch between the two different states.
+     * This only reads the given values, so it can be called from the verifier worker threads.
+     * @return the mismatch type, or null if the difference is not counted as a mismatch
+     */
+    @Nullable
+    public static MismatchType getMismatchType(IBlockState stateSchematic, IBlockState stateClient, boolean ignoreFluidsAsExtra)
+    {
+        if (stateSchematic != AIR)
         {
-            MUTABLE_PAIR.setLeft(stateSchematic);
-            MUTABLE_PAIR.setRight(stateClient);
-
-            if (this.ignoredMismatches.contains(MUTABLE_PAIR) == false)
+            if (stateClient == AIR)
             {
-                BlockMismatch mismatch = null;
-
-                if (stateSchematic != AIR)
-                {
-                    if (stateClient == AIR)
-                    {
-                        mismatch = new BlockMismatch(MismatchType.MISSING, stateSchematic, stateClient, 1);
-                        this.missingBlocksPositions.put(Pair.of(stateSchematic, stateClient), pos);
-                    }
-                    else
-                    {
-                        if (stateSchematic.getBlock() != stateClient.getBlock())
-                        {
-                            mismatch = new BlockMismatch(MismatchType.WRONG_BLOCK, stateSchematic, stateClient, 1);
-                            this.wrongBlocksPositions.put(Pair.of(stateSchematic, stateClient), pos);
-                        }
-                        else
-                        {
-                            mismatch = new BlockMismatch(MismatchType.WRONG_STATE, stateSchematic, stateClient, 1);
-                            this.wrongStatesPositions.put(Pair.of(stateSchematic, stateClient), pos);
-                        }
-                    }
-                }
-                else if (Configs.Visuals.IGNORE_FLUIDS_AS_EXTRA.getBooleanValue() == false || stateClient.getMaterial().isLiquid() == false)
-                {
-                    mismatch = new BlockMismatch(MismatchType.EXTRA, stateSchematic, stateClient, 1);
-                    this.extraBlocksPositions.put(Pair.of(stateSchematic, stateClient), pos);
-                }
-
-                if (mismatch != null)
-                {
-                    this.blockMismatches.put(pos, mismatch);
-
-                    ItemUtils.setItemForBlock(this.worldClient, pos, stateClient);
-                    ItemUtils.setItemForBlock(this.worldSchematic, pos, stateSchematic);
-                }
+                return MismatchType.MISSING;
             }
-        }
-        else
-        {
-            ItemUtils.setItemForBlock(this.worldClient, pos, stateClient);
-            this.correctStateCounts.addTo(stateClient, 1);
-
-            if (stateSchematic != AIR)
+            else if (stateSchematic.getBlock() != stateClient.getBlock())
+            {
+                return MismatchType.WRONG_BLOCK;
+            }
+            else
             {
-                ++this.correctStatesCount;
+                return MismatchType.WRONG_STATE;
             }
         }
+        else if (ignoreFluidsAsExtra == false || stateClient.getMaterial().isLiquid() == false)
+        {
+            return MismatchType.EXTRA;
+        }
+
+        return null;
     }
 
     private void updateMismatchOverlays()
@@ -784,7 +1079,6 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
             // This needs to happen first
             BlockPos centerPos = new BlockPos(mc.player.getPositionVector());
             this.updateClosestPositions(centerPos, maxEntries);
-            this.combineClosestPositions(centerPos, maxEntries);
 
             // Only one category selected, show the title
             if (this.selectedCategories.size() == 1 && this.selectedEntries.size() == 0)
@@ -800,101 +1094,51 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
     }
 
     private void updateClosestPositions(BlockPos centerPos, int maxEntries)
-    {
-        PositionUtils.BLOCK_POS_COMPARATOR.setReferencePosition(centerPos);
-        PositionUtils.BLOCK_POS_COMPARATOR.setClosestFirst(true);
-
-        this.addAndSortPositions(MismatchType.WRONG_BLOCK,  this.wrongBlocksPositions, this.mismatchedBlocksPositionsClosest, maxEntries);
-        this.addAndSortPositions(MismatchType.WRONG_STATE,  this.wrongStatesPositions, this.mismatchedStatesPositionsClosest, maxEntries);
-        this.addAndSortPositions(MismatchType.EXTRA,        this.extraBlocksPositions, this.extraBlocksPositionsClosest, maxEntries);
-        this.addAndSortPositions(MismatchType.MISSING,      this.missingBlocksPositions, this.missingBlocksPositionsClosest, maxEntries);
-    }
-
-    private void addAndSortPositions(MismatchType type,
-            ArrayListMultimap<Pair<IBlockState, IBlockState>, BlockPos> sourceMap,
-            List<BlockPos> listOut, int maxEntries)
-    {
-        listOut.clear();
-
-        //List<BlockPos> tempList = new ArrayList<>();
-
-        if (this.selectedCategories.contains(type))
-        {
-            listOut.addAll(sourceMap.values());
-        }
-        else
-        {
-            Collection<BlockMismatch> mismatches = this.selectedEntries.get(type);
-
-            for (BlockMismatch mismatch : mismatches)
-            {
-                MUTABLE_PAIR.setLeft(mismatch.stateExpected);
-                MUTABLE_PAIR.setRight(mismatch.stateFound);
-                listOut.addAll(sourceMap.get(MUTABLE_PAIR));
-            }
-        }
-
-        Collections.sort(listOut, PositionUtils.BLOCK_POS_COMPARATOR);
-
-        /*
-        final int max = Math.min(maxEntries, tempList.size());
-
-        for (int i = 0; i < max; ++i)
-        {
-            listOut.add(tempList.get(i));
-        }
-        */
-    }
-
-    private void combineClosestPositions(BlockPos centerPos, int maxEntries)
     {
         this.mismatchPositionsForRender.clear();
         this.mismatchBlockPositionsForRender.clear();
 
-        List<MismatchRenderPos> tempList = new ArrayList<>();
-
-        this.getMismatchRenderPositionFor(MismatchType.WRONG_BLOCK, tempList);
-        this.getMismatchRenderPositionFor(MismatchType.WRONG_STATE, tempList);
-        this.getMismatchRenderPositionFor(MismatchType.EXTRA, tempList);
-        this.getMismatchRenderPositionFor(MismatchType.MISSING, tempList);
+        LongArrayList positions = new LongArrayList();
+        IntArrayList pairIds = new IntArrayList();
 
-        Collections.sort(tempList, new RenderPosComparator(centerPos, true));
+        this.mismatches.findClosest(centerPos, maxEntries, this.getSelectedPairs(), positions, pairIds);
 
-        final int max = Math.min(maxEntries, tempList.size());
+        final int size = positions.size();
 
-        for (int i = 0; i < max; ++i)
+        for (int i = 0; i < size; ++i)
         {
-            MismatchRenderPos entry = tempList.get(i);
-            this.mismatchPositionsForRender.add(entry);
-            this.mismatchBlockPositionsForRender.add(entry.pos);
+            BlockPos pos = BlockPos.fromLong(positions.getLong(i));
+            MismatchType type = this.mismatches.getMismatchType(pairIds.getInt(i));
+            this.mismatchPositionsForRender.add(new MismatchRenderPos(type, pos));
+            this.mismatchBlockPositionsForRender.add(pos);
         }
     }
 
-    private void getMismatchRenderPositionFor(MismatchType type, List<MismatchRenderPos> listOut)
+    /**
+     * @return the selected state pairs, indexed by the pair id. A whole selected category
+     * includes all the pairs of that type, otherwise only the individually selected entries are included.
+     */
+    private boolean[] getSelectedPairs()
     {
-        List<BlockPos> list = this.getClosestMismatchedPositionsFor(type);
+        final int pairCount = this.mismatches.getPairCount();
+        boolean[] selected = new boolean[pairCount];
 
-        for (BlockPos pos : list)
+        for (int pairId = 0; pairId < pairCount; ++pairId)
         {
-            listOut.add(new MismatchRenderPos(type, pos));
+            selected[pairId] = this.selectedCategories.contains(this.mismatches.getMismatchType(pairId));
         }
-    }
 
-    private List<BlockPos> getClosestMismatchedPositionsFor(MismatchType type)
-    {
-        switch (type)
+        for (BlockMismatch mismatch : this.selectedEntries.values())
         {
-            case MISSING:
-                return this.missingBlocksPositionsClosest;
-            case EXTRA:
-                return this.extraBlocksPositionsClosest;
-            case WRONG_BLOCK:
-                return this.mismatchedBlocksPositionsClosest;
-            case WRONG_STATE:
-                return this.mismatchedStatesPositionsClosest;
-            default:
-                return Collections.emptyList();
+            int pairId = this.mismatches.getPairId(mismatch.stateExpected, mismatch.stateFound);
+
+            if (pairId >= 0 && this.mismatches.getMismatchType(pairId) == mismatch.mismatchType)
+            {
+                selected[pairId] = true;
+            }
         }
+
+        return selected;
     }
 
     private void updateMismatchPositionStringList(@Nullable MismatchType mismatchType, List<MismatchRenderPos> positionList)
@@ -1021,32 +1265,6 @@ public class SchematicVerifier extends TaskBase implements IInfoHudRenderer
         }
     }
 
-    private static class RenderPosComparator implements Comparator<MismatchRenderPos>
-    {
-        private final BlockPos posReference;
-        private final boolean closestFirst;
-
-        public RenderPosComparator(BlockPos posReference, boolean closestFirst)
-        {
-            this.posReference = posReference;
-            this.closestFirst = closestFirst;
-        }
-
-        @Override
-        public int compare(MismatchRenderPos pos1, MismatchRenderPos pos2)
-        {
-            double dist1 = pos1.pos.distanceSq(this.posReference);
-            double dist2 = pos2.pos.distanceSq(this.posReference);
-
-            if (dist1 == dist2)
-            {
-                return 0;
-            }
-
-            return dist1 < dist2 == this.closestFirst ? -1 : 1;
-        }
-    }
-
     public enum MismatchType
     {
         ALL             (0xFF0000, "litematica.gui.label.schematic_verifier_display_type.all", GuiBase.TXT_WHITE),
@@ -0,0 +1,228 @@
+package fi.dy.masa.litematica.schematic.verifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import fi.dy.masa.litematica.schematic.verifier.SchematicVerifier.MismatchType;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+/**
+ * Compares the captured section snapshots of one chunk on a verifier worker thread.
+ * The results are collected into a separate {@link Result} for each verified section,
+ * which then get merged into the verifier's results on the main thread.
+ */
+public class VerifierChunkTask implements Callable<List<VerifierChunkTask.Result>>
+{
+    private static final IBlockState AIR = Blocks.AIR.getDefaultState();
+
+    private final ChunkPos chunkPos;
+    private final int sectionMask;
+    private final boolean ignoreFluidsAsExtra;
+    private final List<SectionArea> areas = new ArrayList<>();
+
+    /**
+     * @param sectionMask the sections being verified, one bit per section y-index.
+     * A result is returned for each of these sections, also for the ones without any areas.
+     */
+    public VerifierChunkTask(ChunkPos chunkPos, int sectionMask, boolean ignoreFluidsAsExtra)
+    {
+        this.chunkPos = chunkPos;
+        this.sectionMask = sectionMask;
+        this.ignoreFluidsAsExtra = ignoreFluidsAsExtra;
+    }
+
+    /**
+     * Adds an area within one chunk section to be verified. The coordinates are world coordinates.
+     * The section must be one of the sections in the section mask.
+     */
+    public void addArea(VerifierSectionSnapshot client, VerifierSectionSnapshot schematic,
+            int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        this.areas.add(new SectionArea(client, schematic, minX, minY, minZ, maxX, maxY, maxZ));
+    }
+
+    @Override
+    public List<Result> call()
+    {
+        Result[] sectionResults = new Result[16];
+        List<Result> results = new ArrayList<>();
+
+        for (int sectionY = 0; sectionY < 16; ++sectionY)
+        {
+            if ((this.sectionMask & (1 << sectionY)) != 0)
+            {
+                sectionResults[sectionY] = new Result(this.chunkPos, sectionY);
+                results.add(sectionResults[sectionY]);
+            }
+        }
+
+        for (SectionArea area : this.areas)
+        {
+            this.verifyArea(area, sectionResults[area.minY >> 4]);
+        }
+
+        return results;
+    }
+
+    private void verifyArea(SectionArea area, Result result)
+    {
+        VerifierSectionSnapshot client = area.client;
+        VerifierSectionSnapshot schematic = area.schematic;
+
+        if (client.isEmpty() && schematic.isEmpty())
+        {
+            int volume = (area.maxX - area.minX + 1) * (area.maxY - area.minY + 1) * (area.maxZ - area.minZ + 1);
+            result.addCorrectStates(AIR, volume, new BlockPos(area.minX, area.minY, area.minZ).toLong());
+            return;
+        }
+
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+        if (VerifierSectionSnapshot.areIdenticalStatic(client, schematic))
+        {
+            int[] counts = new int[256];
+            int[] firstIndices = new int[256];
+
+            for (int y = area.minY; y <= area.maxY; ++y)
+            {
+                for (int z = area.minZ; z <= area.maxZ; ++z)
+                {
+                    for (int x = area.minX; x <= area.maxX; ++x)
+                    {
+                        int index = VerifierSectionSnapshot.getIndex(x, y, z);
+                        int id = client.getPaletteId(index);
+
+                        if (counts[id]++ == 0)
+                        {
+                            firstIndices[id] = index;
+                        }
+                    }
+                }
+            }
+
+            for (int id = 0; id < counts.length; ++id)
+            {
+                if (counts[id] > 0)
+                {
+                    IBlockState state = client.getPaletteEntry(id);
+                    int index = firstIndices[id];
+                    posMutable.setPos((area.minX & ~0xF) + (index & 0xF), (area.minY & ~0xF) + (index >> 8), (area.minZ & ~0xF) + ((index >> 4) & 0xF));
+                    result.addCorrectStates(state, counts[id], posMutable.toLong());
+
+                    if (state != AIR)
+                    {
+                        result.schematicBlocks += counts[id];
+                        result.clientBlocks += counts[id];
+                    }
+                }
+            }
+
+            return;
+        }
+
+        for (int y = area.minY; y <= area.maxY; ++y)
+        {
+            for (int z = area.minZ; z <= area.maxZ; ++z)
+            {
+                for (int x = area.minX; x <= area.maxX; ++x)
+                {
+                    int index = VerifierSectionSnapshot.getIndex(x, y, z);
+                    IBlockState stateClient = client.get(index);
+                    IBlockState stateSchematic = schematic.get(index);
+                    long pos = posMutable.setPos(x, y, z).toLong();
+
+                    if (stateClient == stateSchematic)
+                    {
+                        result.addCorrectStates(stateClient, 1, pos);
+                    }
+                    else
+                    {
+                        MismatchType type = SchematicVerifier.getMismatchType(stateSchematic, stateClient, this.ignoreFluidsAsExtra);
+
+                        if (type != null)
+                        {
+                            int pairId = result.mismatches.getOrCreatePairId(type, stateSchematic, stateClient);
+                            result.mismatches.addPosition(pos, pairId);
+                        }
+                    }
+
+                    if (stateSchematic != AIR)
+                    {
+                        result.schematicBlocks++;
+                    }
+
+                    if (stateClient != AIR)
+                    {
+                        result.clientBlocks++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static class SectionArea
+    {
+        private final VerifierSectionSnapshot client;
+        private final VerifierSectionSnapshot schematic;
+        private final int minX;
+        private final int minY;
+        private final int minZ;
+        private final int maxX;
+        private final int maxY;
+        private final int maxZ;
+
+        private SectionArea(VerifierSectionSnapshot client, VerifierSectionSnapshot schematic,
+                int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+        {
+            this.client = client;
+            this.schematic = schematic;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+    }
+
+    /**
+     * The partial verification results of one chunk section
+     */
+    public static class Result
+    {
+        public final ChunkPos chunkPos;
+        public final int sectionY;
+        /** The mismatches found in this chunk. The ignored mismatches are only filtered out when merging the results. */
+        public final BlockMismatchStorage mismatches = new BlockMismatchStorage();
+        public final Object2IntOpenHashMap<IBlockState> correctStateCounts = new Object2IntOpenHashMap<>();
+        /** The first position of each correct state, used for caching the items on the main thread */
+        public final Object2LongOpenHashMap<IBlockState> correctStatePositions = new Object2LongOpenHashMap<>();
+        public int correctStatesCount;
+        public int schematicBlocks;
+        public int clientBlocks;
+
+        public Result(ChunkPos chunkPos, int sectionY)
+        {
+            this.chunkPos = chunkPos;
+            this.sectionY = sectionY;
+        }
+
+        void addCorrectStates(IBlockState state, int count, long pos)
+        {
+            if (this.correctStateCounts.addTo(state, count) == 0)
+            {
+                this.correctStatePositions.put(state, pos);
+            }
+
+            if (state != AIR)
+            {
+                this.correctStatesCount += count;
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package fi.dy.masa.litematica.schematic.verifier;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.IBlockStatePalette;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import fi.dy.masa.litematica.mixin.IMixinBlockStateContainer;
+import fi.dy.masa.litematica.schematic.container.LitematicaBitArray;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * An immutable copy of the block data of one chunk section, for the parallel verification.
+ * This is captured on the main thread, and can then be read from the verifier worker threads.
+ * The section's palette and packed data array are copied as-is. If a world is given,
+ * the actual states of the blocks with a dynamic actual state are resolved during the capture,
+ * as that needs access to the neighboring blocks.
+ */
+public class VerifierSectionSnapshot
+{
+    private static final IBlockState AIR = Blocks.AIR.getDefaultState();
+    private static final int MAX_PALETTE_BITS = 8;
+    public static final VerifierSectionSnapshot EMPTY = new VerifierSectionSnapshot();
+
+    /** The local palette, or null if the section uses the global registry palette */
+    @Nullable private final IBlockState[] palette;
+    @Nullable private final LitematicaBitArray data;
+    @Nullable private final Int2ObjectOpenHashMap<IBlockState> actualStates;
+    private final boolean hasDynamicStates;
+
+    private VerifierSectionSnapshot()
+    {
+        this.palette = null;
+        this.data = null;
+        this.actualStates = null;
+        this.hasDynamicStates = false;
+    }
+
+    private VerifierSectionSnapshot(ExtendedBlockStorage section, @Nullable World world,
+            int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        IMixinBlockStateContainer container = (IMixinBlockStateContainer) section.getData();
+        final int bits = container.getBits();
+        boolean hasDynamicStates = false;
+
+        if (bits <= MAX_PALETTE_BITS)
+        {
+            IBlockStatePalette palette = container.getPalette();
+            this.palette = new IBlockState[1 << bits];
+
+            for (int id = 0; id < this.palette.length; ++id)
+            {
+                IBlockState state = palette.getBlockState(id);
+                this.palette[id] = state;
+
+                if (state != null && VerifierUtils.hasDynamicActualState(state.getBlock()))
+                {
+                    hasDynamicStates = true;
+                }
+            }
+        }
+        else
+        {
+            this.palette = null;
+            hasDynamicStates = true;
+        }
+
+        this.data = new LitematicaBitArray(bits, 4096, container.getStorage().getBackingLongArray().clone());
+        this.hasDynamicStates = hasDynamicStates;
+
+        if (world != null && hasDynamicStates)
+        {
+            this.actualStates = this.captureActualStates(world, minX, minY, minZ, maxX, maxY, maxZ);
+        }
+        else
+        {
+            this.actualStates = null;
+        }
+    }
+
+    /**
+     * Captures a snapshot of the given section. This must be called on the main thread.
+     * @param world the world to resolve the actual states from, or null to use the stored states
+     * @param minX the minimum corner of the area that will be verified, in world coordinates within the section
+     * @param maxX the maximum corner of the area that will be verified, in world coordinates within the section
+     */
+    public static VerifierSectionSnapshot capture(@Nullable ExtendedBlockStorage section, @Nullable World world,
+            int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        if (VerifierUtils.isEmpty(section))
+        {
+            return EMPTY;
+        }
+
+        return new VerifierSectionSnapshot(section, world, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    private Int2ObjectOpenHashMap<IBlockState> captureActualStates(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        Int2ObjectOpenHashMap<IBlockState> map = new Int2ObjectOpenHashMap<>();
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+        for (int y = minY; y <= maxY; ++y)
+        {
+            for (int z = minZ; z <= maxZ; ++z)
+            {
+                for (int x = minX; x <= maxX; ++x)
+                {
+                    int index = getIndex(x, y, z);
+                    IBlockState state = this.getStoredState(index);
+
+                    if (VerifierUtils.hasDynamicActualState(state.getBlock()))
+                    {
+                        posMutable.setPos(x, y, z);
+                        IBlockState stateActual = state.getActualState(world, posMutable);
+
+                        if (stateActual != state)
+                        {
+                            map.put(index, stateActual);
+                        }
+                    }
+                }
+            }
+        }
+
+        return map;
+    }
+
+    /**
+     * @return the index of the given world position within its section
+     */
+    public static int getIndex(int x, int y, int z)
+    {
+        return ((y & 0xF) << 8) | ((z & 0xF) << 4) | (x & 0xF);
+    }
+
+    public boolean isEmpty()
+    {
+        return this.data == null;
+    }
+
+    /**
+     * @return the (actual) block state at the given index within the section
+     */
+    public IBlockState get(int index)
+    {
+        if (this.actualStates != null)
+        {
+            IBlockState state = this.actualStates.get(index);
+
+            if (state != null)
+            {
+                return state;
+            }
+        }
+
+        return this.getStoredState(index);
+    }
+
+    private IBlockState getStoredState(int index)
+    {
+        if (this.data == null)
+        {
+            return AIR;
+        }
+
+        int id = this.data.getAtUnchecked(index);
+        IBlockState state;
+
+        if (this.palette != null)
+        {
+            state = id < this.palette.length ? this.palette[id] : null;
+        }
+        else
+        {
+            state = Block.BLOCK_STATE_IDS.getByValue(id);
+        }
+
+        return state != null ? state : AIR;
+    }
+
+    /**
+     * @return the local palette id at the given index, only valid if this snapshot has a local palette
+     */
+    public int getPaletteId(int index)
+    {
+        return this.data != null ? this.data.getAtUnchecked(index) : 0;
+    }
+
+    /**
+     * @return the local palette entry for the given id, or air
+     */
+    public IBlockState getPaletteEntry(int id)
+    {
+        IBlockState state = this.palette != null && id < this.palette.length ? this.palette[id] : null;
+        return state != null ? state : AIR;
+    }
+
+    /**
+     * Checks if the two snapshots have identical raw content using local palettes,
+     * and none of the blocks have a dynamic actual state.
+     * In that case every position in the sections is a correct state.
+     */
+    public static boolean areIdenticalStatic(VerifierSectionSnapshot snapshot1, VerifierSectionSnapshot snapshot2)
+    {
+        if (snapshot1.data == null || snapshot2.data == null ||
+            snapshot1.palette == null || snapshot2.palette == null ||
+            snapshot1.hasDynamicStates || snapshot2.hasDynamicStates ||
+            snapshot1.palette.length != snapshot2.palette.length)
+        {
+            return false;
+        }
+
+        for (int id = 0; id < snapshot1.palette.length; ++id)
+        {
+            if (snapshot1.palette[id] != snapshot2.palette[id])
+            {
+                return false;
+            }
+        }
+
+        return Arrays.equals(snapshot1.data.getBackingLongArray(), snapshot2.data.getBackingLongArray());
+    }
+}
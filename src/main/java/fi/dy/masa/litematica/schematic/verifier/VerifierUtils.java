@@ -0,0 +1,79 @@
+package fi.dy.masa.litematica.schematic.verifier;
+
+import java.lang.reflect.Method;
+import javax.annotation.Nullable;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraftforge.fml.relauncher.ReflectionHelper;
+import fi.dy.masa.litematica.Litematica;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+public class VerifierUtils
+{
+    @Nullable private static volatile ReferenceOpenHashSet<Block> dynamicStateBlocks;
+    private static volatile boolean allBlocksDynamic;
+
+    /**
+     * Returns whether the given block overrides <b>Block#getActualState()</b>,
+     * ie. whether the stored state of the block can differ from its actual state.
+     * For other blocks the getActualState() call can be skipped.
+     */
+    public static boolean hasDynamicActualState(Block block)
+    {
+        ReferenceOpenHashSet<Block> set = dynamicStateBlocks;
+
+        if (set == null)
+        {
+            set = createDynamicStateBlocksSet();
+        }
+
+        return allBlocksDynamic || set.contains(block);
+    }
+
+    private static synchronized ReferenceOpenHashSet<Block> createDynamicStateBlocksSet()
+    {
+        if (dynamicStateBlocks != null)
+        {
+            return dynamicStateBlocks;
+        }
+
+        ReferenceOpenHashSet<Block> set = new ReferenceOpenHashSet<>();
+
+        try
+        {
+            Method methodBase = ReflectionHelper.findMethod(Block.class, "getActualState", "func_176221_a",
+                    IBlockState.class, IBlockAccess.class, BlockPos.class);
+
+            for (Block block : Block.REGISTRY)
+            {
+                Method method = block.getClass().getMethod(methodBase.getName(), methodBase.getParameterTypes());
+
+                if (method.getDeclaringClass() != Block.class)
+                {
+                    set.add(block);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            // Fall back to calling getActualState() for every block
+            Litematica.logger.warn("Failed to check which blocks override getActualState()", e);
+            allBlocksDynamic = true;
+        }
+
+        dynamicStateBlocks = set;
+
+        return set;
+    }
+
+    /**
+     * @return true if the given section is missing or only contains air
+     */
+    public static boolean isEmpty(@Nullable ExtendedBlockStorage section)
+    {
+        return section == null || section.isEmpty();
+    }
+}
@@ -0,0 +1,263 @@
+package fi.dy.masa.litematica.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagByte;
+import net.minecraft.nbt.NBTTagByteArray;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagDouble;
+import net.minecraft.nbt.NBTTagFloat;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagLong;
+import net.minecraft.nbt.NBTTagLongArray;
+import net.minecraft.nbt.NBTTagShort;
+import net.minecraft.nbt.NBTTagString;
+import fi.dy.masa.malilib.util.Constants;
+
+/**
+ * A minimal streaming reader for GZIP compressed NBT files, which only
+ * decodes the requested top level tags and skips over everything else
+ * without creating any objects for them.
+ */
+public class NBTStreamUtils
+{
+    private static final int MAX_DEPTH = 512;
+
+    /**
+     * Reads the given top level tags from the compressed NBT file.
+     * The file is only read until all the requested tags have been found.
+     * @param file
+     * @param tagNames the names of the top level tags to read
+     * @return a compound containing those of the requested tags that were found,
+     * or null if the file is not a valid compressed NBT file
+     * @throws IOException
+     */
+    @Nullable
+    public static NBTTagCompound readTopLevelTagsFromFile(File file, Set<String> tagNames) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)))))
+        {
+            return readTopLevelTags(in, tagNames);
+        }
+    }
+
+    @Nullable
+    public static NBTTagCompound readTopLevelTags(DataInput in, Set<String> tagNames) throws IOException
+    {
+        // The root tag must be a named compound tag
+        if (in.readByte() != Constants.NBT.TAG_COMPOUND)
+        {
+            return null;
+        }
+
+        in.readUTF();
+
+        Set<String> remaining = new HashSet<>(tagNames);
+        NBTTagCompound result = new NBTTagCompound();
+
+        while (remaining.isEmpty() == false)
+        {
+            byte type;
+
+            try
+            {
+                type = in.readByte();
+            }
+            catch (EOFException e)
+            {
+                break;
+            }
+
+            if (type == Constants.NBT.TAG_END)
+            {
+                break;
+            }
+
+            String name = in.readUTF();
+
+            if (remaining.remove(name))
+            {
+                result.setTag(name, readTagPayload(in, type, 1));
+            }
+            else
+            {
+                skipTagPayload(in, type, 1);
+            }
+        }
+
+        return result;
+    }
+
+    public static NBTBase readTagPayload(DataInput in, byte type, int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IOException("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
+
+        switch (type)
+        {
+            case Constants.NBT.TAG_BYTE:        return new NBTTagByte(in.readByte());
+            case Constants.NBT.TAG_SHORT:       return new NBTTagShort(in.readShort());
+            case Constants.NBT.TAG_INT:         return new NBTTagInt(in.readInt());
+            case Constants.NBT.TAG_LONG:        return new NBTTagLong(in.readLong());
+            case Constants.NBT.TAG_FLOAT:       return new NBTTagFloat(in.readFloat());
+            case Constants.NBT.TAG_DOUBLE:      return new NBTTagDouble(in.readDouble());
+            case Constants.NBT.TAG_STRING:      return new NBTTagString(in.readUTF());
+
+            case Constants.NBT.TAG_BYTE_ARRAY:
+            {
+                byte[] arr = new byte[readLength(in)];
+                in.readFully(arr);
+                return new NBTTagByteArray(arr);
+            }
+
+            case Constants.NBT.TAG_INT_ARRAY:
+            {
+                int[] arr = new int[readLength(in)];
+
+                for (int i = 0; i < arr.length; ++i)
+                {
+                    arr[i] = in.readInt();
+                }
+
+                return new NBTTagIntArray(arr);
+            }
+
+            case Constants.NBT.TAG_LONG_ARRAY:
+            {
+                long[] arr = new long[readLength(in)];
+
+                for (int i = 0; i < arr.length; ++i)
+                {
+                    arr[i] = in.readLong();
+                }
+
+                return new NBTTagLongArray(arr);
+            }
+
+            case Constants.NBT.TAG_LIST:
+            {
+                byte elementType = in.readByte();
+                final int count = readLength(in);
+                NBTTagList list = new NBTTagList();
+
+                for (int i = 0; i < count; ++i)
+                {
+                    list.appendTag(readTagPayload(in, elementType, depth + 1));
+                }
+
+                return list;
+            }
+
+            case Constants.NBT.TAG_COMPOUND:
+            {
+                NBTTagCompound tag = new NBTTagCompound();
+                byte entryType;
+
+                while ((entryType = in.readByte()) != Constants.NBT.TAG_END)
+                {
+                    String name = in.readUTF();
+                    tag.setTag(name, readTagPayload(in, entryType, depth + 1));
+                }
+
+                return tag;
+            }
+
+            default:
+                throw new IOException("Invalid NBT tag type: " + type);
+        }
+    }
+
+    public static void skipTagPayload(DataInput in, byte type, int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IOException("Tried to skip NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
+
+        switch (type)
+        {
+            case Constants.NBT.TAG_BYTE:        skipFully(in, 1); break;
+            case Constants.NBT.TAG_SHORT:       skipFully(in, 2); break;
+            case Constants.NBT.TAG_INT:         skipFully(in, 4); break;
+            case Constants.NBT.TAG_LONG:        skipFully(in, 8); break;
+            case Constants.NBT.TAG_FLOAT:       skipFully(in, 4); break;
+            case Constants.NBT.TAG_DOUBLE:      skipFully(in, 8); break;
+            case Constants.NBT.TAG_STRING:      skipFully(in, in.readUnsignedShort()); break;
+            case Constants.NBT.TAG_BYTE_ARRAY:  skipFully(in, (long) readLength(in)); break;
+            case Constants.NBT.TAG_INT_ARRAY:   skipFully(in, (long) readLength(in) * 4L); break;
+            case Constants.NBT.TAG_LONG_ARRAY:  skipFully(in, (long) readLength(in) * 8L); break;
+
+            case Constants.NBT.TAG_LIST:
+            {
+                byte elementType = in.readByte();
+                final int count = readLength(in);
+
+                for (int i = 0; i < count; ++i)
+                {
+                    skipTagPayload(in, elementType, depth + 1);
+                }
+
+                break;
+            }
+
+            case Constants.NBT.TAG_COMPOUND:
+            {
+                byte entryType;
+
+                while ((entryType = in.readByte()) != Constants.NBT.TAG_END)
+                {
+                    skipFully(in, in.readUnsignedShort());
+                    skipTagPayload(in, entryType, depth + 1);
+                }
+
+                break;
+            }
+
+            default:
+                throw new IOException("Invalid NBT tag type: " + type);
+        }
+    }
+
+    private static int readLength(DataInput in) throws IOException
+    {
+        int length = in.readInt();
+
+        if (length < 0)
+        {
+            throw new IOException("Invalid NBT array or list length: " + length);
+        }
+
+        return length;
+    }
+
+    private static void skipFully(DataInput in, long count) throws IOException
+    {
+        while (count > 0)
+        {
+            int skipped = in.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+
+            if (skipped <= 0)
+            {
+                // DataInput.skipBytes() is allowed to skip fewer bytes, including none at all
+                in.readByte();
+                skipped = 1;
+            }
+
+            count -= skipped;
+        }
+    }
+}
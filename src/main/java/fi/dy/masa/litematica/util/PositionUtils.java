@@ -95,6 +95,30 @@ public class PositionUtils
         return null;
     }
 
+    /**
+     * Returns the x-coordinate of a position packed with <b>BlockPos#toLong()</b>
+     */
+    public static int unpackX(long packedPos)
+    {
+        return (int) (packedPos >> 38);
+    }
+
+    /**
+     * Returns the y-coordinate of a position packed with <b>BlockPos#toLong()</b>
+     */
+    public static int unpackY(long packedPos)
+    {
+        return (int) ((packedPos << 26) >> 52);
+    }
+
+    /**
+     * Returns the z-coordinate of a position packed with <b>BlockPos#toLong()</b>
+     */
+    public static int unpackZ(long packedPos)
+    {
+        return (int) ((packedPos << 38) >> 38);
+    }
+
     public static BlockPos getMinCorner(BlockPos pos1, BlockPos pos2)
     {
         return new BlockPos(Math.min(pos1.getX(), pos2.getX()), Math.min(pos1.getY(), pos2.getY()), Math.min(pos1.getZ(), pos2.getZ()));
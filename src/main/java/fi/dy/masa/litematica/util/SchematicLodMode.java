@@ -0,0 +1,87 @@
+package fi.dy.masa.litematica.util;
+
+import fi.dy.masa.malilib.config.IConfigOptionListEntry;
+import fi.dy.masa.malilib.util.StringUtils;
+
+/**
+ * The type of the coarse boxes used for the far away schematic sub-chunks in the LOD rendering
+ */
+public enum SchematicLodMode implements IConfigOptionListEntry
+{
+    COLUMNS     ("columns",     "litematica.gui.label.schematic_lod_mode.columns",  1),
+    CELLS_2     ("cells_2",     "litematica.gui.label.schematic_lod_mode.cells_2",  2),
+    CELLS_4     ("cells_4",     "litematica.gui.label.schematic_lod_mode.cells_4",  4);
+
+    private final String configString;
+    private final String translationKey;
+    private final int cellSize;
+
+    private SchematicLodMode(String configString, String translationKey, int cellSize)
+    {
+        this.configString = configString;
+        this.translationKey = translationKey;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the edge length of the cubic cells, or 1 for the column mode
+     */
+    public int getCellSize()
+    {
+        return this.cellSize;
+    }
+
+    @Override
+    public String getStringValue()
+    {
+        return this.configString;
+    }
+
+    @Override
+    public String getDisplayName()
+    {
+        return StringUtils.translate(this.translationKey);
+    }
+
+    @Override
+    public IConfigOptionListEntry cycle(boolean forward)
+    {
+        int id = this.ordinal();
+
+        if (forward)
+        {
+            if (++id >= values().length)
+            {
+                id = 0;
+            }
+        }
+        else
+        {
+            if (--id < 0)
+            {
+                id = values().length - 1;
+            }
+        }
+
+        return values()[id % values().length];
+    }
+
+    @Override
+    public SchematicLodMode fromString(String name)
+    {
+        return fromStringStatic(name);
+    }
+
+    public static SchematicLodMode fromStringStatic(String name)
+    {
+        for (SchematicLodMode val : SchematicLodMode.values())
+        {
+            if (val.configString.equalsIgnoreCase(name))
+            {
+                return val;
+            }
+        }
+
+        return SchematicLodMode.CELLS_2;
+    }
+}
@@ -1,5 +1,6 @@
 package fi.dy.masa.litematica.util;
 
+import fi.dy.masa.litematica.config.Configs;
 import fi.dy.masa.litematica.interfaces.IMixinChunkProviderClient;
 import fi.dy.masa.litematica.render.LitematicaRenderer;
 import fi.dy.masa.litematica.world.SchematicWorldHandler;
@@ -7,8 +8,10 @@ import fi.dy.masa.malilib.interfaces.IRangeChangeListener;
 import fi.dy.masa.malilib.util.LayerRange;
 import fi.dy.masa.malilib.util.SubChunkPos;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.RenderGlobal;
+import net.minecraft.init.Blocks;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
@@ -159,4 +162,38 @@ public class SchematicWorldRefresher implements IRangeChangeListener
             }
         }
     }
+
+    /**
+     * Marks the schematic render chunks around the given position for an update after a client world block change.
+     * The schematic block geometry only depends on the client world via whether the client has air
+     * in a position where the schematic has a block (unless colliding blocks are rendered),
+     * so any other changes only trigger the cheaper overlay-only rebuild.
+     */
+    public static void onClientBlockChange(BlockPos pos, IBlockState oldState, IBlockState newState)
+    {
+        World world = SchematicWorldHandler.getSchematicWorld();
+
+        if (world != null)
+        {
+            Long2ObjectMap<Chunk> schematicChunks = ((IMixinChunkProviderClient) (Object) world.getChunkProvider()).getLoadedChunks();
+            Long2ObjectMap<Chunk> clientChunks = ((IMixinChunkProviderClient) (Object) Minecraft.getMinecraft().world.getChunkProvider()).getLoadedChunks();
+            long key = ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+
+            if (schematicChunks.containsKey(key) && clientChunks.containsKey(key))
+            {
+                boolean airChanged = (oldState.getBlock() == Blocks.AIR) != (newState.getBlock() == Blocks.AIR);
+                boolean blocksChanged = Configs.Visuals.RENDER_COLLIDING_SCHEMATIC_BLOCKS.getBooleanValue() ||
+                                        (airChanged && world.getBlockState(pos).getBlock() != Blocks.AIR);
+
+                if (blocksChanged)
+                {
+                    LitematicaRenderer.getInstance().getWorldRenderer().markBlockRangeForRenderUpdate(pos.getX() - 1, pos.getY() - 1, pos.getZ() - 1, pos.getX() + 1, pos.getY() + 1, pos.getZ() + 1);
+                }
+                else
+                {
+                    LitematicaRenderer.getInstance().getWorldRenderer().markBlockRangeForOverlayUpdate(pos.getX() - 1, pos.getY() - 1, pos.getZ() - 1, pos.getX() + 1, pos.getY() + 1, pos.getZ() + 1);
+                }
+            }
+        }
+    }
 }
@@ -27,4 +27,15 @@ public class ChunkProviderSchematic extends ChunkProviderClient
 
         return chunk;
     }
+
+    /**
+     * Adds an already populated chunk to the world, replacing any existing chunk at that position.
+     * The existing chunk should be unloaded first.
+     */
+    public void setChunk(ChunkSchematic chunk)
+    {
+        ((IMixinChunkProviderClient) (Object) this).getLoadedChunks().put(ChunkPos.asLong(chunk.x, chunk.z), chunk);
+        chunk.markLoaded(true);
+        this.world.addTileEntities(chunk.getTileEntityMap().values());
+    }
 }
@@ -1,5 +1,6 @@
 package fi.dy.masa.litematica.world;
 
+import javax.annotation.Nullable;
 import net.minecraft.block.Block;
 import net.minecraft.block.ITileEntityProvider;
 import net.minecraft.block.state.IBlockState;
@@ -103,6 +104,82 @@ public class ChunkSchematic extends Chunk
         }
     }
 
+    /**
+     * Returns the block storage section for the given y-coordinate, creating it if it doesn't exist yet.
+     * Writing directly to the section skips all the old state and tile entity handling of
+     * setBlockState(), so it must only be used for blocks that don't have a tile entity,
+     * and for positions that don't currently have a tile entity block either.
+     * @param y the block y-coordinate
+     * @return the block storage section, or null if the y-coordinate is outside of the world
+     */
+    @Nullable
+    public ExtendedBlockStorage getOrCreateBlockStorage(int y)
+    {
+        if (y < 0 || y >= 256)
+        {
+            return null;
+        }
+
+        ExtendedBlockStorage storage = this.getBlockStorageArray()[y >> 4];
+
+        if (storage == NULL_BLOCK_STORAGE)
+        {
+            storage = new ExtendedBlockStorage(y >> 4 << 4, false);
+            this.getBlockStorageArray()[y >> 4] = storage;
+        }
+
+        return storage;
+    }
+
+    /**
+     * Sets the block state in this chunk while it's not yet added to the world,
+     * for example while it's being populated on a worker thread.
+     * Any tile entity is only created and added to this chunk, and not to the world.
+     * @return the tile entity of the new block, if it has one
+     */
+    @Nullable
+    public TileEntity setBlockStateDetached(BlockPos pos, IBlockState state)
+    {
+        ExtendedBlockStorage storage = this.getOrCreateBlockStorage(pos.getY());
+
+        if (storage == null)
+        {
+            return null;
+        }
+
+        int x = pos.getX() & 15;
+        int y = pos.getY() & 15;
+        int z = pos.getZ() & 15;
+        Block blockOld = storage.get(x, y, z).getBlock();
+        Block blockNew = state.getBlock();
+
+        if (blockOld != blockNew && blockOld instanceof ITileEntityProvider)
+        {
+            this.getTileEntityMap().remove(pos);
+        }
+
+        storage.set(x, y, z, state);
+
+        if (blockNew instanceof ITileEntityProvider)
+        {
+            TileEntity te = this.getTileEntity(pos, Chunk.EnumCreateEntityType.CHECK);
+
+            if (te == null)
+            {
+                te = ((ITileEntityProvider) blockNew).createNewTileEntity(this.getWorld(), blockNew.getMetaFromState(state));
+
+                if (te != null)
+                {
+                    this.addTileEntity(pos.toImmutable(), te);
+                }
+            }
+
+            return te;
+        }
+
+        return null;
+    }
+
     @Override
     public int getLightFor(EnumSkyBlock type, BlockPos pos)
     {